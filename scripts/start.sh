@@ -0,0 +1,11 @@
+#!/bin/sh
+# Starts the app with the Spring AOT initializers and the class data sharing
+# archive of mvn -P cds verify, further arguments are passed to the app
+# The archive only matches the class path it was recorded with, rebuild both together
+cd "$(dirname "$0")/.." || exit 1
+if [ ! -f target/app.jsa ] || [ ! -f target/classpath.txt ]; then
+    echo "target/app.jsa is missing, run mvn -P cds verify first" >&2
+    exit 1
+fi
+exec java -XX:SharedArchiveFile=target/app.jsa -Dspring.aot.enabled=true \
+    -classpath "target/classes:$(cat target/classpath.txt)" com.api.App "$@"
@@ -0,0 +1,67 @@
+#!/bin/sh
+# Time from JVM launch to the first successful POST /blood and the latency of
+# that request, over a number of runs in three modes:
+# cold without warm up, warm with the FHIR warm up, cds with warm up, AOT and CDS
+# All modes run the same classes and class path, built by mvn -P cds verify
+# Usage: scripts/startup-benchmark.sh [runs] [port]
+cd "$(dirname "$0")/.." || exit 1
+RUNS=${1:-5}
+PORT=${2:-18080}
+BODY='{"patient":"Patient/1","practitioner":"Practitioner/1","orderId":"Order/1","date":"2021-03-04","hemoglobin":"14.2","leukocytes":"6.1","crp":"<0.5"}'
+
+if [ ! -f target/app.jsa ] || [ ! -f target/classpath.txt ]; then
+    echo "target/app.jsa is missing, run mvn -P cds verify first" >&2
+    exit 1
+fi
+CLASSPATH="target/classes:$(cat target/classpath.txt)"
+
+millis() {
+    echo $(($(date +%s%N) / 1000000))
+}
+
+# prints "<millis to first response> <millis of that request>"
+run() {
+    started=$(millis)
+    java "$@" -classpath "$CLASSPATH" com.api.App --server.port="$PORT" --nlp.pool-size=0 \
+        --fhir.warm-up="$WARM_UP" >/dev/null 2>&1 &
+    pid=$!
+    while kill -0 "$pid" 2>/dev/null; do
+        result=$(curl -s -o /dev/null -w '%{http_code} %{time_total}' -X POST \
+            -H 'Content-Type: application/json' -d "$BODY" "http://localhost:$PORT/blood")
+        if [ "${result%% *}" = "200" ]; then
+            answered=$(millis)
+            request=$(echo "${result#* }" | awk '{ printf "%d", $1 * 1000 }')
+            kill "$pid"
+            wait "$pid" 2>/dev/null
+            echo "$((answered - started)) $request"
+            return 0
+        fi
+        sleep 0.05
+    done
+    echo "The app exited before answering" >&2
+    return 1
+}
+
+# prints the median of a column of the results
+median() {
+    cut -d ' ' -f "$1" | sort -n | awk '{ value[NR] = $1 } END { print value[int((NR + 1) / 2)] }'
+}
+
+for mode in cold warm cds; do
+    WARM_UP=$([ "$mode" = "cold" ] && echo false || echo true)
+    results=""
+    i=1
+    while [ "$i" -le "$RUNS" ]; do
+        if [ "$mode" = "cds" ]; then
+            line=$(run -XX:SharedArchiveFile=target/app.jsa -Dspring.aot.enabled=true) || exit 1
+        else
+            line=$(run) || exit 1
+        fi
+        echo "$mode run $i: ${line% *} ms to first response, ${line#* } ms first request"
+        results="$results$line
+"
+        i=$((i + 1))
+    done
+    echo "$mode: $(printf '%s' "$results" | median 1) ms to first response, \
+$(printf '%s' "$results" | median 2) ms first request (median of $RUNS runs)"
+done
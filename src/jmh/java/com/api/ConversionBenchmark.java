@@ -0,0 +1,148 @@
+package com.api;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.DiagnosticReport;
+import org.hl7.fhir.r4.model.Observation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.api.catalog.MappingPlan;
+import com.api.fhir.BundleWriter;
+import com.api.fhir.DirectBundleSerializer;
+import com.api.fhir.FhirProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/*
+ * The conversion from the LLM answer to the serialized FHIR Bundle, step by step
+ * Run with mvn -P benchmark verify, the results including the allocation rate
+ * of -prof gc are written to jmh-results/
+ * Every benchmark returns its result, so JMH keeps it from being optimized away
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConversionBenchmark {
+
+    /*
+     * Only the encoding depends on the format
+     */
+    @State(Scope.Benchmark)
+    public static class Format {
+
+        @Param({ "json", "xml" })
+        String format;
+
+    }
+
+    ObjectMapper objectMapper;
+    BundleWriter bundleWriter;
+    DirectBundleSerializer directBundleSerializer;
+    BloodDetails bloodDetails;
+    List<Observation> observations;
+    Bundle bundle;
+    String bloodDetailsJson;
+    String llmOutput;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = new ObjectMapper();
+        bundleWriter = new BundleWriter(FhirContext.forR4());
+        directBundleSerializer = new DirectBundleSerializer(new FhirProperties(), MappingPlan.getDefault());
+        bloodDetails = new BloodDetails();
+        bloodDetails.fillRandom();
+        observations = bloodDetails.toObservations();
+        bundle = bloodDetails.toBundle(observations);
+        bloodDetailsJson = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(bloodDetails);
+        // an answer the way GPT4All gives it, the OCR table echoed in front and a trailing comma
+        llmOutput = "GPT4All: Here is the converted table "
+                + Files.readString(AppUtils.resolveResourcePath("testinput.txt"))
+                + "\n```json\n" + bloodDetailsJson.substring(0, bloodDetailsJson.lastIndexOf('}'))
+                + ",\n}\n```\nLet me know if you need anything else.";
+    }
+
+    @Benchmark
+    public List<Observation> toObservations() {
+        return bloodDetails.toObservations();
+    }
+
+    @Benchmark
+    public DiagnosticReport toReport() {
+        return bloodDetails.toReport(observations);
+    }
+
+    @Benchmark
+    public String encodeBundle(Format format) throws IOException {
+        StringWriter writer = new StringWriter(32 * 1024);
+        bundleWriter.encode(bundle, "xml".equals(format.format), writer);
+        return writer.toString();
+    }
+
+    /*
+     * BloodDetails to JSON Bundle through HAPI resources, against directBundleJson
+     */
+    @Benchmark
+    public String hapiBundleJson() throws IOException {
+        StringWriter writer = new StringWriter(32 * 1024);
+        bundleWriter.encode(bloodDetails.toBundle(bloodDetails.toObservations()), false, writer);
+        return writer.toString();
+    }
+
+    @Benchmark
+    public String directBundleJson() throws IOException {
+        StringWriter writer = new StringWriter(32 * 1024);
+        directBundleSerializer.prepare(bloodDetails).writeTo(writer);
+        return writer.toString();
+    }
+
+    @Benchmark
+    public String fixJson() {
+        return AppUtils.fixJson(llmOutput);
+    }
+
+    /*
+     * The LLM answer to BloodDetails the way it was done before BloodDetailsParser,
+     * against parseLlmOutput
+     */
+    @Benchmark
+    public BloodDetails fixJsonAndDeserialize() throws IOException {
+        return objectMapper.readValue(AppUtils.fixJson(llmOutput), BloodDetails.class);
+    }
+
+    @Benchmark
+    public BloodDetails parseLlmOutput() {
+        return BloodDetailsParser.parse(llmOutput);
+    }
+
+    @Benchmark
+    public BloodDetails deserialize() throws IOException {
+        return objectMapper.readValue(bloodDetailsJson, BloodDetails.class);
+    }
+
+    @Benchmark
+    public BloodDetails fillRandom() {
+        BloodDetails random = new BloodDetails();
+        random.fillRandom();
+        return random;
+    }
+
+}
@@ -7,7 +7,17 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+import com.api.batch.BatchProperties;
+import com.api.cache.CacheProperties;
+import com.api.catalog.MappingPlan;
+import com.api.export.ExportProperties;
+import com.api.extraction.ExtractionProperties;
+import com.api.fhir.FhirProperties;
+import com.api.jobs.JobProperties;
+import com.api.nlp.NlpProperties;
+import com.api.ocr.OcrProperties;
 import com.api.storage.StorageProperties;
+import com.api.util.GenerateProperties;
 
 import ca.uhn.fhir.context.FhirContext;
 
@@ -19,10 +29,69 @@ public class AppConfig {
         return FhirContext.forR4();
     }
 
+    /*
+     * Compiled analyte catalog, built here so a broken analytes.json fails the startup
+     */
+    @Bean
+    public MappingPlan mappingPlan() {
+        return MappingPlan.getDefault();
+    }
+
     @Bean
     public StorageProperties storageProperties() {
         return new StorageProperties();
     }
+
+    @Bean
+    public NlpProperties nlpProperties() {
+        return new NlpProperties();
+    }
+
+    @Bean
+    public ExtractionProperties extractionProperties() {
+        return new ExtractionProperties();
+    }
+
+    @Bean
+    public BatchProperties batchProperties() {
+        return new BatchProperties();
+    }
+
+    @Bean
+    public ExportProperties exportProperties() {
+        return new ExportProperties();
+    }
+
+    @Bean
+    public JobProperties jobProperties() {
+        return new JobProperties();
+    }
+
+    @Bean
+    public OcrProperties ocrProperties() {
+        return new OcrProperties();
+    }
+
+    @Bean
+    public CacheProperties cacheProperties() {
+        return new CacheProperties();
+    }
+
+    @Bean
+    public GenerateProperties generateProperties() {
+        return new GenerateProperties();
+    }
+
+    @Bean
+    public FhirProperties fhirProperties() {
+        return new FhirProperties();
+    }
+
+    @Bean
+    public BlockingProperties blockingProperties() {
+        return new BlockingProperties();
+    }
+
     @Bean
     public InMemoryUserDetailsManager userDetailsService(PasswordEncoder passwordEncoder) {
         UserDetails user = User.withUsername("user")
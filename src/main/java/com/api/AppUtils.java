@@ -10,33 +10,18 @@ import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+import com.api.metrics.PipelineMetrics;
+
 public class AppUtils {
 
     private AppUtils() {
     }
 
-    /*
-     * Start the OCR process using ExtractTables which is a paid API
-     * This method is used to start the OCR process
-     * It returns a Process object
-     */
-    static Process startOCR() throws IOException {
-        ProcessBuilder processBuilder = new ProcessBuilder(
-                "python3",
-                AppUtils.resolveResourcePathToString("OCR.py"));
-        return processBuilder.start();
-    }
-
-    static Process startNLP(String message) throws IOException {
-        ProcessBuilder processBuilder = new ProcessBuilder(
-                "python3",
-                AppUtils.resolveResourcePathToString("GPT4ALL.py"),
-                message);
-        //processBuilder.redirectErrorStream(true);
-        return processBuilder.start();
+    static String fixJson(String json) {
+        return PipelineMetrics.time(PipelineMetrics.FIX_JSON, () -> repairJson(json));
     }
 
-    static String fixJson(String json) {
+    private static String repairJson(String json) {
         try {
             json = json.substring(json.indexOf("{"), json.lastIndexOf("}") + 1);
             String trimmedJson = json.replaceAll("\\s+", "");
@@ -0,0 +1,61 @@
+package com.api;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/*
+ * Runs OCR and LLM calls of request handlers off the servlet threads
+ * A handler returns the future and its Tomcat thread goes back to the pool
+ * right away, so a few long OCR or LLM calls cannot starve cheap requests
+ * like POST /blood. The pool and its queue are bounded, a full queue rejects
+ * instead of piling up work nobody waits for anymore
+ */
+@Component
+public class BlockingExecutor {
+
+    private final ThreadPoolExecutor executor;
+
+    public BlockingExecutor(BlockingProperties properties) {
+        int threads = Math.max(1, properties.getThreads());
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, properties.getQueueCapacity())),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "blocking-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /*
+     * The future fails with the exception of the call itself, not wrapped, so
+     * Spring MVC handles it like one thrown by the handler
+     * Throws RejectedExecutionException if the queue is full
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> call) throws RejectedExecutionException {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                result.complete(call.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+}
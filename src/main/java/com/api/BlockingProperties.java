@@ -0,0 +1,34 @@
+package com.api;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("blocking")
+public class BlockingProperties {
+
+    /**
+     * Threads for the OCR and LLM calls of GET /blood, GET /chat and GET /test
+     */
+    private int threads = 4;
+
+    /**
+     * Calls waiting for a thread, further ones are answered with 503
+     */
+    private int queueCapacity = 16;
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+}
@@ -1,38 +1,56 @@
 package com.api;
 
-import ca.uhn.fhir.context.FhirContext;
 import io.swagger.v3.oas.annotations.Operation;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
-import org.hl7.fhir.r4.model.Bundle;
-import org.hl7.fhir.r4.model.Bundle.BundleType;
 import org.slf4j.LoggerFactory;
-import org.hl7.fhir.r4.model.DiagnosticReport;
+import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Observation;
 
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.method.annotation.MvcUriComponentsBuilder;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import com.api.batch.BatchConverter;
+import com.api.export.ReportStore;
+import com.api.fhir.BundleWriter;
+import com.api.fhir.DirectBundleSerializer;
+import com.api.jobs.Job;
+import com.api.jobs.JobPipeline;
+import com.api.metrics.PipelineMetrics;
+import com.api.nlp.NlpClient;
 import com.api.storage.StorageException;
 import com.api.storage.StorageService;
-import com.api.util.DataGenerator;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.api.util.TestDataService;
 
 @RestController
 public class BloodController {
@@ -40,20 +58,41 @@ public class BloodController {
   private static final org.slf4j.Logger logger = LoggerFactory
       .getLogger(BloodController.class);
 
-  private FhirContext fhirContext;
-  private StorageService storageService;
+  private static final byte[] NO_OBSERVATIONS = "No observations".getBytes(StandardCharsets.UTF_8);
 
-  public BloodController(FhirContext fhirContext, StorageService storageService) {
-    this.fhirContext = fhirContext;
+  private StorageService storageService;
+  private NlpClient nlpClient;
+  private BloodService bloodService;
+  private BundleWriter bundleWriter;
+  private DirectBundleSerializer directBundleSerializer;
+  private BatchConverter batchConverter;
+  private JobPipeline jobPipeline;
+  private TestDataService testDataService;
+  private BlockingExecutor blockingExecutor;
+  private ReportStore reportStore;
+
+  public BloodController(StorageService storageService, NlpClient nlpClient,
+      BloodService bloodService, BundleWriter bundleWriter, DirectBundleSerializer directBundleSerializer,
+      BatchConverter batchConverter, JobPipeline jobPipeline, TestDataService testDataService,
+      BlockingExecutor blockingExecutor, ReportStore reportStore) {
     this.storageService = storageService;
+    this.nlpClient = nlpClient;
+    this.bloodService = bloodService;
+    this.bundleWriter = bundleWriter;
+    this.directBundleSerializer = directBundleSerializer;
+    this.batchConverter = batchConverter;
+    this.jobPipeline = jobPipeline;
+    this.testDataService = testDataService;
+    this.blockingExecutor = blockingExecutor;
+    this.reportStore = reportStore;
   }
 
   @GetMapping("/")
   public ModelAndView get(ModelAndView model) throws IOException {
     storageService.init();
-    storageService.deleteAll();
+    //no deleteAll here, the OCR stage of a running job may be using the upload folder
 
-    //load files, not necessary because we delete all files
+    //load files
     model.addObject("files", storageService.loadAll().map(
         path -> {
           return MvcUriComponentsBuilder.fromMethodName(BloodController.class,
@@ -80,78 +119,115 @@ public class BloodController {
       RedirectAttributes redirectAttributes, ModelAndView model)
        {
 
+    //Processing runs in the job pipeline, the browser is sent to the job status
+    Job job;
     try {
-      storageService.store(file);
-    } catch (StorageException | InterruptedException e) {
+      job = jobPipeline.submit(file.getOriginalFilename(), file.getBytes());
+    } catch (StorageException | IOException | RejectedExecutionException e) {
       redirectAttributes.addFlashAttribute("message",
           "You failed to upload " + file.getOriginalFilename() + " => " + e.getMessage());
       model.setViewName("redirect:/");
       return model;
     }
-    model.setViewName("redirect:/blood");
+    model.setViewName("redirect:/jobs/" + job.getId());
     return model;
   }
 
   @Operation(summary = "Convert BloodDetails POJOs to FHIR Bundle")
   @PostMapping("/blood")
-  String toBundleString(@RequestBody BloodDetails bloodDetails) {
-    Bundle bundle = new Bundle();
-    bundle.setType(BundleType.COLLECTION);
-
-    List<Observation> obs = bloodDetails.toObservations();
+  ResponseEntity<StreamingResponseBody> toBundle(@RequestBody BloodDetails bloodDetails,
+      @RequestHeader HttpHeaders headers) throws IOException {
+    //JSON without HAPI resources if enabled, XML always needs them
+    if (directBundleSerializer.isEnabled() && !BundleWriter.prefersXml(headers))
+      return toDirectBundle(bloodDetails, headers);
+    List<Observation> obs = PipelineMetrics.time(PipelineMetrics.MAP, bloodDetails::toObservations);
     logger.info("Mapped {} observations", obs.size());
-    DiagnosticReport dr = bloodDetails.toReport(obs);
-    bundle.addEntry().setResource(dr).setFullUrl("blood:tofhir:1");
+    PipelineMetrics.observations(obs.size());
     if (obs.isEmpty())
-      return "No observations";
-    int c = 2;
-    for (Observation o : obs) {
-      bundle.addEntry().setResource(o).setFullUrl("blood:tofhir:"+c++);
-    }
-    return fhirContext.newJsonParser().setPrettyPrint(false).encodeResourceToString(bundle);
+      return ResponseEntity.ok().contentType(MediaType.TEXT_PLAIN)
+          .body(out -> out.write(NO_OBSERVATIONS));
+    Bundle bundle = bloodDetails.toBundle(obs);
+    String json = store(writer -> bundleWriter.encode(bundle, false, writer));
+    //json or xml depending on the Accept header, the json is the text that was stored
+    if (BundleWriter.prefersXml(headers))
+      return bundleWriter.write(bundle, headers);
+    return bundleWriter.writeJson(writer -> writer.write(json), headers);
+  }
+
+  private ResponseEntity<StreamingResponseBody> toDirectBundle(BloodDetails bloodDetails, HttpHeaders headers)
+      throws IOException {
+    DirectBundleSerializer.Report report = PipelineMetrics.time(PipelineMetrics.MAP,
+        () -> directBundleSerializer.prepare(bloodDetails));
+    logger.info("Mapped {} observations", report.size());
+    PipelineMetrics.observations(report.size());
+    if (report.isEmpty())
+      return ResponseEntity.ok().contentType(MediaType.TEXT_PLAIN)
+          .body(out -> out.write(NO_OBSERVATIONS));
+    String json = store(report::writeTo);
+    return bundleWriter.writeJson(writer -> writer.write(json), headers);
+  }
+
+  /*
+   * Every Bundle handed out goes to the report store for the bulk export first
+   */
+  private String store(BundleWriter.Body body) throws IOException {
+    StringWriter json = new StringWriter(16 * 1024);
+    body.writeTo(json);
+    reportStore.append(json.toString().getBytes(StandardCharsets.UTF_8));
+    return json.toString();
+  }
+
+  @Operation(summary = "Convert newline delimited BloodDetails JSON to newline delimited FHIR Bundles")
+  @PostMapping("/blood/batch")
+  ResponseEntity<StreamingResponseBody> toBundles(InputStream body) {
+    //Records are read, converted and written while the request is still streaming in
+    return ResponseEntity.ok().contentType(BatchConverter.FHIR_NDJSON).body(out -> {
+      int records = batchConverter.convert(new InputStreamReader(body, StandardCharsets.UTF_8),
+          new OutputStreamWriter(out, StandardCharsets.UTF_8));
+      logger.info("Converted batch of {} records", records);
+    });
   }
 
   @Operation(summary = "Test the GPT lib")
   @GetMapping("/chat")
-  public String getChat(@RequestBody String message) throws IOException {
-    Process process = AppUtils.startNLP(message);
-    List<String> results = AppUtils.readProcessOutput(process.getInputStream());
-    return results.toString();
+  public CompletableFuture<String> getChat(@RequestBody String message) {
+    //the servlet thread is released while the LLM generates
+    return offload(() -> nlpClient.complete(message));
   }
 
   @Operation(summary = "Run the app on a PDF file in ./upload-dir")
   @GetMapping("/blood")
-  public String getBlood() throws IOException {
-    //Use ExtractTables
-    Process process = AppUtils.startOCR();
-    List<String> table = AppUtils.readProcessOutput(process.getInputStream());
-        String command = "Please convert this: "
-        + table.toString()
-        + "  into BloodDetails object with attributes:" +
-        Files.readString(
-            AppUtils.resolveResourcePath("command.txt"))
-        + " formatted as json in the right order.";
-    String result = getChat(command);
-    result = AppUtils.fixJson(result);
-    BloodDetails bloodDetails = new ObjectMapper().readValue(result, BloodDetails.class);
-    storageService.deleteAll();
-    return toBundleString(bloodDetails);
+  public CompletableFuture<ResponseEntity<StreamingResponseBody>> getBlood(@RequestHeader HttpHeaders headers) {
+    return offload(() -> {
+      //in flat mode this waits for the OCR stage of a running job and clears the upload folder
+      List<String> table = bloodService.ocr();
+      //Skip the LLM if the table could be read by rules
+      BloodDetails bloodDetails = bloodService.extract(table);
+      return toBundle(bloodDetails, headers);
+    });
   }
 
   @Operation(summary = "Generate Test Data")
   @GetMapping("/generate")
-  public void generateTestData() {
-    DataGenerator dg = new DataGenerator(fhirContext);
-    for (int i = 0; i < 100; i++) {
-        dg.generateAll();
-        dg.reset();
-    }
-    dg.convertHtmlToPdfInFolder();
+  public ResponseEntity<?> generateTestData(@RequestParam(defaultValue = "100") int count,
+      @RequestParam(required = false) Integer parallelism) throws IOException {
+    //one thread per CPU core unless asked otherwise
+    if (parallelism == null)
+      parallelism = testDataService.getMaxParallelism();
+    if (count < 1 || count > testDataService.getMaxCount())
+      return ResponseEntity.badRequest().body("count must be between 1 and " + testDataService.getMaxCount());
+    if (parallelism < 1 || parallelism > testDataService.getMaxParallelism())
+      return ResponseEntity.badRequest()
+          .body("parallelism must be between 1 and " + testDataService.getMaxParallelism());
+    //every thread has its own generator, files are numbered from a shared counter
+    Map<String, Object> run = testDataService.generate(count, parallelism);
+    return ResponseEntity.ok(run);
   }
 
   @Operation(summary = "Test the API")
   @GetMapping("/test")
-  public String test() throws IOException {
+  public CompletableFuture<ResponseEntity<StreamingResponseBody>> test(@RequestHeader HttpHeaders headers)
+      throws IOException {
     String command = "Please convert this: "
         + Files.readString(
             AppUtils.resolveResourcePath("testinput.txt"))
@@ -159,10 +235,18 @@ public class BloodController {
         Files.readString(
             AppUtils.resolveResourcePath("command.txt"))
         + " formatted as json in the right order.";
-    String result = getChat(command);
-    result = AppUtils.fixJson(result);
-    BloodDetails bloodDetails = new ObjectMapper().readValue(result, BloodDetails.class);
-    return toBundleString(bloodDetails);
+    return offload(() -> toBundle(BloodDetailsParser.parse(nlpClient.complete(command)), headers));
+  }
+
+  /*
+   * Blocking OCR and LLM work goes to the BlockingExecutor, a full queue is answered with 503
+   */
+  private <T> CompletableFuture<T> offload(Callable<T> call) {
+    try {
+      return blockingExecutor.submit(call);
+    } catch (RejectedExecutionException e) {
+      throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many OCR and LLM calls queued", e);
+    }
   }
 
 }
@@ -0,0 +1,283 @@
+package com.api;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.api.catalog.MappedAnalyte;
+import com.api.catalog.MappingPlan;
+import com.api.metrics.PipelineMetrics;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+
+/*
+ * Reads the BloodDetails JSON out of raw LLM output in a single pass
+ * Prose before and after the object is ignored, null values are skipped,
+ * stray and missing commas as well as decimal commas are repaired while the
+ * characters are streamed into the Jackson parser, and truncated output keeps
+ * all fields that were complete
+ */
+public final class BloodDetailsParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(BloodDetailsParser.class);
+
+    private static final JsonFactory FACTORY = JsonFactory.builder()
+            .enable(JsonReadFeature.ALLOW_TRAILING_COMMA)
+            .enable(JsonReadFeature.ALLOW_MISSING_VALUES)
+            .enable(JsonReadFeature.ALLOW_SINGLE_QUOTES)
+            .enable(JsonReadFeature.ALLOW_UNQUOTED_FIELD_NAMES)
+            .enable(JsonReadFeature.ALLOW_JAVA_COMMENTS)
+            .enable(JsonReadFeature.ALLOW_NON_NUMERIC_NUMBERS)
+            .enable(JsonReadFeature.ALLOW_LEADING_DECIMAL_POINT_FOR_NUMBERS)
+            .enable(JsonReadFeature.ALLOW_UNESCAPED_CONTROL_CHARS)
+            .build();
+
+    private static final String MATERIALS = "materials";
+
+    private static final Map<String, BiConsumer<BloodDetails, String>> SETTERS = new HashMap<>();
+    private static final Map<String, BiConsumer<BloodDetails, String>> SETTERS_IGNORE_CASE = new HashMap<>();
+
+    static {
+        SETTERS.put("practitioner", BloodDetails::setPractitioner);
+        SETTERS.put("patient", BloodDetails::setPatient);
+        SETTERS.put("orderId", BloodDetails::setOrderId);
+        SETTERS.put("date", BloodDetails::setDate);
+        for (MappedAnalyte analyte : MappingPlan.getDefault().getAnalytes()) {
+            SETTERS.put(analyte.getField(), analyte::write);
+        }
+        SETTERS.forEach((name, setter) -> SETTERS_IGNORE_CASE.put(name.toLowerCase(Locale.ROOT), setter));
+    }
+
+    private BloodDetailsParser() {
+    }
+
+    public static BloodDetails parse(String output) {
+        return PipelineMetrics.time(PipelineMetrics.PARSE, () -> read(output));
+    }
+
+    private static BloodDetails read(String output) {
+        BloodDetails bloodDetails = new BloodDetails();
+        int start = output == null ? -1 : output.indexOf('{');
+        if (start < 0) {
+            logger.warn("No JSON object found in LLM output");
+            return bloodDetails;
+        }
+        try (JsonParser parser = FACTORY.createParser(new RepairingReader(output, start))) {
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                readObject(parser, bloodDetails);
+            }
+        } catch (IOException e) {
+            logger.warn("LLM output is incomplete, keeping the fields read so far: {}", e.getMessage());
+        }
+        return bloodDetails;
+    }
+
+    /*
+     * Nested objects are flattened, some models wrap the fields in {"BloodDetails": {...}}
+     */
+    private static void readObject(JsonParser parser, BloodDetails bloodDetails) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value == null) {
+                return;
+            }
+            switch (value) {
+                case START_OBJECT:
+                    readObject(parser, bloodDetails);
+                    break;
+                case START_ARRAY:
+                    if (MATERIALS.equalsIgnoreCase(name)) {
+                        bloodDetails.setMaterials(readMaterials(parser));
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                case VALUE_STRING:
+                case VALUE_NUMBER_INT:
+                case VALUE_NUMBER_FLOAT:
+                    set(bloodDetails, name, parser.getText());
+                    break;
+                default:
+                    // null and boolean values carry no lab value
+            }
+        }
+    }
+
+    private static List<String> readMaterials(JsonParser parser) throws IOException {
+        List<String> materials = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (token.isScalarValue() && token != JsonToken.VALUE_NULL) {
+                materials.add(parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return materials;
+    }
+
+    private static void set(BloodDetails bloodDetails, String name, String value) {
+        BiConsumer<BloodDetails, String> setter = SETTERS.get(name);
+        if (setter == null) {
+            setter = SETTERS_IGNORE_CASE.get(name.toLowerCase(Locale.ROOT));
+        }
+        if (setter != null) {
+            setter.accept(bloodDetails, value);
+        } else if (MATERIALS.equalsIgnoreCase(name)) {
+            List<String> materials = new ArrayList<>();
+            for (String material : value.split(",")) {
+                materials.add(material.trim());
+            }
+            bloodDetails.setMaterials(materials);
+        }
+    }
+
+    /*
+     * Feeds the characters of the first JSON object to the parser and fixes
+     * the typical LLM defects on the way
+     * - duplicate commas and commas directly after { [ are dropped
+     * - a missing comma before a quote, { or [ is inserted
+     * - a missing value ("a": , or "a": }) becomes null
+     * - a decimal comma between two digits becomes a point
+     * Reading stops once the root object is closed, so trailing prose is never seen
+     */
+    static final class RepairingReader extends Reader {
+
+        private final String source;
+        private int position;
+
+        private final char[] containers = new char[64];
+        private int depth;
+        private boolean started;
+
+        private char quote;
+        private boolean escaped;
+        private char lastSignificant;
+
+        private final char[] pending = new char[8];
+        private int pendingStart;
+        private int pendingEnd;
+
+        RepairingReader(String source, int start) {
+            this.source = source;
+            this.position = start;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            int count = 0;
+            while (count < length) {
+                int c = next();
+                if (c < 0) {
+                    break;
+                }
+                buffer[offset + count++] = (char) c;
+            }
+            return count == 0 && length > 0 ? -1 : count;
+        }
+
+        private int next() {
+            if (pendingStart < pendingEnd) {
+                return pending[pendingStart++];
+            }
+            while (position < source.length()) {
+                if (started && depth == 0) {
+                    return -1;
+                }
+                char c = source.charAt(position++);
+                if (quote != 0) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (c == '\\') {
+                        escaped = true;
+                    } else if (c == quote) {
+                        quote = 0;
+                    }
+                    return c;
+                }
+                if (Character.isWhitespace(c)) {
+                    return c;
+                }
+                char last = lastSignificant;
+                lastSignificant = c;
+                switch (c) {
+                    case ',':
+                        if (last == ',' || last == '{' || last == '[') {
+                            lastSignificant = last;
+                            continue;
+                        }
+                        if (last == ':') {
+                            return emit("null", c);
+                        }
+                        if (top() == '{' && isDigit(position - 2) && isDigit(position)) {
+                            lastSignificant = '0';
+                            return '.';
+                        }
+                        return c;
+                    case '"':
+                    case '\'':
+                        quote = c;
+                        lastSignificant = '"';
+                        return endsValue(last) ? emit(",", c) : c;
+                    case '{':
+                    case '[':
+                        push(c);
+                        return endsValue(last) ? emit(",", c) : c;
+                    case '}':
+                    case ']':
+                        depth = Math.max(0, depth - 1);
+                        return last == ':' ? emit("null", c) : c;
+                    default:
+                        return c;
+                }
+            }
+            return -1;
+        }
+
+        private int emit(String insert, char c) {
+            pendingStart = 0;
+            pendingEnd = 0;
+            for (int i = 1; i < insert.length(); i++) {
+                pending[pendingEnd++] = insert.charAt(i);
+            }
+            pending[pendingEnd++] = c;
+            return insert.charAt(0);
+        }
+
+        private void push(char container) {
+            started = true;
+            if (depth < containers.length) {
+                containers[depth] = container;
+            }
+            depth++;
+        }
+
+        private char top() {
+            return depth == 0 || depth > containers.length ? 0 : containers[depth - 1];
+        }
+
+        private boolean isDigit(int index) {
+            return index >= 0 && index < source.length() && Character.isDigit(source.charAt(index));
+        }
+
+        private static boolean endsValue(char last) {
+            return last == '"' || last == '}' || last == ']' || Character.isLetterOrDigit(last);
+        }
+
+        @Override
+        public void close() {
+            // nothing to release, the source is a String
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.api.extraction.ExtractionResult;
+import com.api.extraction.LabTableExtractor;
+import com.api.metrics.PipelineMetrics;
+import com.api.nlp.NlpClient;
+import com.api.ocr.OcrProperties;
+import com.api.ocr.OcrRouter;
+import com.api.ocr.PdfText;
+import com.api.ocr.TextLayerReader;
+import com.api.storage.DocumentHandle;
+import com.api.storage.StorageService;
+
+/*
+ * The steps from a stored PDF to BloodDetails, shared by the synchronous
+ * endpoints and the job pipeline
+ */
+@Service
+public class BloodService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BloodService.class);
+
+    private final StorageService storageService;
+    private final NlpClient nlpClient;
+    private final LabTableExtractor labTableExtractor;
+    private final OcrRouter ocrRouter;
+    private final OcrProperties ocrProperties;
+    private final TextLayerReader textLayerReader;
+
+    /*
+     * In flat storage mode every document becomes upload-dir/data.pdf, GET /blood
+     * and the OCR stage of the job pipeline take turns on the upload folder
+     */
+    private final Object uploadFolder = new Object();
+
+    public BloodService(StorageService storageService, NlpClient nlpClient, LabTableExtractor labTableExtractor,
+            OcrRouter ocrRouter, OcrProperties ocrProperties, TextLayerReader textLayerReader) {
+        this.storageService = storageService;
+        this.nlpClient = nlpClient;
+        this.labTableExtractor = labTableExtractor;
+        this.ocrRouter = ocrRouter;
+        this.ocrProperties = ocrProperties;
+        this.textLayerReader = textLayerReader;
+    }
+
+    /*
+     * Run OCR on the PDF in the upload folder, in flat storage mode the folder
+     * is cleared once it was read
+     */
+    public List<String> ocr() throws IOException {
+        if (isConcurrent()) {
+            return recognize(storageService.load("data.pdf"));
+        }
+        synchronized (uploadFolder) {
+            List<String> lines = recognize(storageService.load("data.pdf"));
+            storageService.deleteAll();
+            return lines;
+        }
+    }
+
+    /*
+     * Run OCR on a stored document
+     */
+    public List<String> ocr(DocumentHandle document) throws IOException {
+        return recognize(document.getPath());
+    }
+
+    /*
+     * The text layer first, OCR only for the pages without one, the router
+     * picks the engine
+     * Engines return the lines of all pages they were given, so every run of
+     * consecutive pages without text is recognized in one call and put in
+     * place of those pages
+     */
+    private List<String> recognize(Path document) throws IOException {
+        PdfText text = null;
+        if (ocrProperties.isTextLayer()) {
+            try {
+                text = PipelineMetrics.time(PipelineMetrics.TEXT_LAYER, () -> textLayerReader.read(document.toFile()));
+            } catch (IOException e) {
+                // not a PDF or a broken one, OCR gets the whole file
+                logger.debug("No text layer in {}", document, e);
+            }
+        }
+        if (text != null && text.isComplete()) {
+            logger.info("Read {} pages of {} from the text layer", text.getPageCount(), document.getFileName());
+            return text.getLines();
+        }
+        if (text == null) {
+            return PipelineMetrics.time(PipelineMetrics.OCR, () -> ocrRouter.recognize(document, null, 1));
+        }
+        logger.info("OCR of pages {} of {}", text.getPagesWithoutTextAsRanges(), document.getFileName());
+        List<String> lines = new ArrayList<>();
+        List<Integer> pagesWithoutText = text.getPagesWithoutText();
+        int pageCount = text.getPageCount();
+        int next = 0;
+        for (int page = 0; page < pageCount;) {
+            if (next < pagesWithoutText.size() && pagesWithoutText.get(next) == page) {
+                List<Integer> run = new ArrayList<>();
+                while (next < pagesWithoutText.size() && pagesWithoutText.get(next) == page) {
+                    run.add(page++);
+                    next++;
+                }
+                lines.addAll(PipelineMetrics.time(PipelineMetrics.OCR,
+                        () -> ocrRouter.recognize(document, run, pageCount)));
+            } else {
+                lines.addAll(text.getLines(page++));
+            }
+        }
+        return lines;
+    }
+
+    /*
+     * Put the file into the upload folder, run OCR on it and clear the folder again
+     * Holds the upload folder, neither GET /blood nor another call can overlap
+     */
+    public List<String> ocr(Path file) throws IOException {
+        synchronized (uploadFolder) {
+            storageService.init();
+            DocumentHandle document;
+            try (InputStream inputStream = Files.newInputStream(file)) {
+                document = storageService.storeDocument(file.getFileName().toString(), inputStream);
+            }
+            try {
+                return ocr(document);
+            } finally {
+                storageService.deleteAll();
+            }
+        }
+    }
+
+    public boolean isConcurrent() {
+        return storageService.isContentAddressed();
+    }
+
+    /*
+     * Store an upload so that it can be processed next to other documents,
+     * only possible in content addressed storage mode
+     */
+    public DocumentHandle store(String filename, InputStream content) {
+        storageService.init();
+        return storageService.storeDocument(filename, content);
+    }
+
+    /*
+     * Rules first, the LLM only if the table could not be read reliably
+     */
+    public BloodDetails extract(List<String> table) throws IOException {
+        ExtractionResult extraction = PipelineMetrics.time(PipelineMetrics.RULES,
+                () -> labTableExtractor.extract(table));
+        if (extraction.isSufficient()) {
+            logger.info("Extracted {} values without LLM, mean confidence {}",
+                    extraction.getConfidence().size(), extraction.getMeanConfidence());
+            return extraction.getBloodDetails();
+        }
+        String command = "Please convert this: "
+                + table.toString()
+                + "  into BloodDetails object with attributes:" +
+                Files.readString(
+                        AppUtils.resolveResourcePath("command.txt"))
+                + " formatted as json in the right order.";
+        return BloodDetailsParser.parse(PipelineMetrics.time(PipelineMetrics.LLM, () -> nlpClient.complete(command)));
+    }
+
+}
@@ -3,46 +3,206 @@ package com.api;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.rendering.ImageType;
 import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
 
-import net.sourceforge.tess4j.ITesseract;
-import net.sourceforge.tess4j.Tesseract;
+import com.api.metrics.PipelineMetrics;
+import com.api.ocr.DocumentLoader;
+import com.api.ocr.OcrProperties;
+import com.api.ocr.OcrWorker;
+import com.api.ocr.PageRenderer;
+import com.api.ocr.TesseractEngine;
+import com.api.ocr.TesseractWorker;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import net.sourceforge.tess4j.TesseractException;
 
 
 /*
  * This class is used to extract text from a pdf file
  * It uses the Tesseract OCR engine which is free and open source
+ * Pages are rendered and recognized in parallel, every thread works through
+ * every n-th page with its own PDDocument and its own Tesseract instance,
+ * both are not thread safe
+ * The Tesseract instances are loaded once at startup and kept
+ * Documents are loaded with a bounded heap buffer and pages are rendered
+ * within the memory budget of PageRenderer
  */
+@Component
 public class OCR {
 
-    public static String doOCR() throws IOException {
+    private static final Logger logger = LoggerFactory.getLogger(OCR.class);
 
-        PDDocument document = PDDocument.load(new File("upload-dir/data.pdf"));
-        PDFRenderer pdfRenderer = new PDFRenderer(document);
+    private final OcrProperties properties;
+    private final DocumentLoader documentLoader;
+    private final PageRenderer pageRenderer;
+    private final int threads;
+    private final ExecutorService executor;
+    private final BlockingQueue<OcrWorker> workers = new LinkedBlockingQueue<>();
+    private final AtomicInteger created = new AtomicInteger();
 
-        ITesseract tesseract = new Tesseract();
+    public OCR(OcrProperties properties, DocumentLoader documentLoader, PageRenderer pageRenderer) {
+        this.properties = properties;
+        this.documentLoader = documentLoader;
+        this.pageRenderer = pageRenderer;
+        this.threads = properties.threads();
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "ocr-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 
-        tesseract.setDatapath("tessdata");
-        tesseract.setLanguage("deu");
+    /*
+     * Only if the tesseract engine is enabled and its traineddata is there,
+     * otherwise the native library is not needed
+     */
+    @PostConstruct
+    public void warmUp() {
+        if (!properties.getEngines().contains(TesseractEngine.NAME) || !isAvailable()) {
+            return;
+        }
+        try {
+            for (int i = 0; i < threads; i++) {
+                workers.offer(create());
+            }
+        } catch (TesseractException | RuntimeException | LinkageError e) {
+            logger.error("Could not load Tesseract, instances are created on first use", e);
+        }
+    }
 
-        StringBuilder bld = new StringBuilder();
+    /*
+     * The traineddata of the configured language is there
+     */
+    public boolean isAvailable() {
+        return Files.isReadable(Path.of(properties.getDatapath(), properties.getLanguage() + ".traineddata"));
+    }
 
-        for (int page = 0; page < document.getNumberOfPages(); page++) {
-            BufferedImage bufferedImage = pdfRenderer.renderImageWithDPI(page, 300, ImageType.RGB);
+    public String doOCR() throws IOException {
+        return doOCR(new File("upload-dir/data.pdf"));
+    }
+
+    public String doOCR(File file) throws IOException {
+        return doOCR(file, null);
+    }
 
-            try {
-                bld.append(tesseract.doOCR(bufferedImage));
-            } catch (TesseractException ex) {
-                LoggerFactory.getLogger(OCR.class.getName()).error("Error");
+    /*
+     * Only the given zero based pages, all pages if null
+     */
+    public String doOCR(File file, List<Integer> pages) throws IOException {
+        int pageCount;
+        try (PDDocument document = documentLoader.load(file)) {
+            pageCount = document.getNumberOfPages();
+        }
+        List<Integer> selected = pages;
+        if (selected == null) {
+            selected = new ArrayList<>(pageCount);
+            for (int page = 0; page < pageCount; page++) {
+                selected.add(page);
+            }
+        }
+        int[] order = selected.stream().mapToInt(Integer::intValue).filter(page -> page < pageCount).toArray();
+        String[] text = new String[pageCount];
+        int tasks = Math.min(order.length, threads);
+        List<Future<?>> futures = new ArrayList<>(tasks);
+        for (int first = 0; first < tasks; first++) {
+            int start = first;
+            futures.add(executor.submit(() -> {
+                recognize(file, order, start, tasks, text);
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted during OCR of " + file, e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("OCR of " + file + " failed", e.getCause());
+        }
+        StringBuilder bld = new StringBuilder();
+        for (String page : text) {
+            if (page != null) {
+                bld.append(page);
             }
         }
-        document.close();
         return bld.toString();
     }
 
+    /*
+     * Recognizes the pages order[start], order[start + step], ... into text[page]
+     */
+    private void recognize(File file, int[] order, int start, int step, String[] text)
+            throws IOException, TesseractException {
+        OcrWorker worker = borrow();
+        try (PDDocument document = documentLoader.load(file)) {
+            PDFRenderer pdfRenderer = new PDFRenderer(document);
+            for (int i = start; i < order.length; i += step) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                int page = order[i];
+                BufferedImage bufferedImage = PipelineMetrics.time(PipelineMetrics.OCR_RENDER,
+                        () -> pageRenderer.render(pdfRenderer, document.getPage(page), page));
+                try {
+                    text[page] = PipelineMetrics.time(PipelineMetrics.OCR_RECOGNIZE,
+                            () -> worker.recognize(bufferedImage, properties.getDpi()));
+                } catch (TesseractException ex) {
+                    logger.error("OCR failed on page {} of {}", page + 1, file, ex);
+                } finally {
+                    pageRenderer.release(bufferedImage);
+                }
+            }
+        } finally {
+            workers.offer(worker);
+        }
+    }
+
+    /*
+     * At most one worker per thread is ever created, so a thread never waits for one
+     */
+    private OcrWorker borrow() throws TesseractException {
+        OcrWorker worker = workers.poll();
+        return worker != null ? worker : create();
+    }
+
+    OcrWorker create() throws TesseractException {
+        logger.info("Loading Tesseract {} instance {} of {}", properties.getLanguage(), created.incrementAndGet(),
+                threads);
+        return new TesseractWorker(properties.getDatapath(), properties.getLanguage());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        OcrWorker worker;
+        while ((worker = workers.poll()) != null) {
+            worker.close();
+        }
+    }
+
 }
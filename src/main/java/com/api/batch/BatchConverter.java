@@ -0,0 +1,173 @@
+package com.api.batch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.OperationOutcome.IssueSeverity;
+import org.hl7.fhir.r4.model.OperationOutcome.IssueType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import com.api.BloodDetails;
+import com.api.export.ReportStore;
+import com.api.fhir.BundleWriter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import jakarta.annotation.PreDestroy;
+
+/*
+ * Converts newline delimited BloodDetails JSON into newline delimited FHIR Bundles
+ * Records are converted in parallel on a bounded pool and written in input
+ * order while the input is still being read, a record that cannot be converted
+ * yields an OperationOutcome line instead of failing the batch
+ * Every Bundle is appended to the ReportStore before it is written out
+ */
+@Service
+public class BatchConverter {
+
+    public static final MediaType FHIR_NDJSON = MediaType.parseMediaType("application/fhir+ndjson");
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchConverter.class);
+
+    private final BatchProperties properties;
+    private final BundleWriter bundleWriter;
+    private final ReportStore reportStore;
+    private final ObjectReader reader;
+    private final ThreadPoolExecutor executor;
+
+    public BatchConverter(BatchProperties properties, BundleWriter bundleWriter, ReportStore reportStore,
+            ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.bundleWriter = bundleWriter;
+        this.reportStore = reportStore;
+        this.reader = objectMapper.readerFor(BloodDetails.class);
+        int threads = properties.getThreads() > 0 ? properties.getThreads() : Runtime.getRuntime().availableProcessors();
+        AtomicInteger count = new AtomicInteger();
+        // a full queue makes the reading request thread convert the record itself
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "blood-batch-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /*
+     * Returns the number of records, blank lines are skipped
+     */
+    public int convert(Reader input, Writer output) throws IOException {
+        BufferedReader lines = new BufferedReader(input);
+        int window = Math.max(1, properties.getWindow());
+        Deque<Future<String>> pending = new ArrayDeque<>(window);
+        int records = 0;
+        int lineNumber = 0;
+        try {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (pending.size() >= window) {
+                    writeNext(pending, output);
+                }
+                String record = line;
+                int number = lineNumber;
+                pending.add(executor.submit(() -> convertRecord(record, number)));
+                records++;
+            }
+            while (!pending.isEmpty()) {
+                writeNext(pending, output);
+            }
+            output.flush();
+        } finally {
+            // the client went away or the input broke off, drop what is left
+            pending.forEach(future -> future.cancel(true));
+        }
+        return records;
+    }
+
+    private void writeNext(Deque<Future<String>> pending, Writer output) throws IOException {
+        Future<String> next = pending.poll();
+        if (!next.isDone()) {
+            // hand out what is ready before waiting for the next record
+            output.flush();
+        }
+        try {
+            output.write(next.get());
+            output.write('\n');
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch conversion interrupted");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Batch record failed", e.getCause());
+        }
+    }
+
+    String convertRecord(String json, int line) {
+        try {
+            BloodDetails bloodDetails = reader.readValue(json);
+            List<Observation> observations = bloodDetails.toObservations();
+            if (observations.isEmpty()) {
+                return encode(outcome(IssueSeverity.WARNING, IssueType.NOTFOUND, line, "No observations"));
+            }
+            String bundle = encode(bloodDetails.toBundle(observations));
+            reportStore.append(bundle.getBytes(StandardCharsets.UTF_8));
+            return bundle;
+        } catch (JsonProcessingException e) {
+            return encode(outcome(IssueSeverity.ERROR, IssueType.INVALID, line, e.getOriginalMessage()));
+        } catch (IOException e) {
+            logger.warn("Failed to store batch record on line {}", line, e);
+            return encode(outcome(IssueSeverity.ERROR, IssueType.EXCEPTION, line, "Could not store the Bundle"));
+        } catch (RuntimeException e) {
+            logger.warn("Failed to convert batch record on line {}", line, e);
+            return encode(outcome(IssueSeverity.ERROR, IssueType.EXCEPTION, line, e.getMessage()));
+        }
+    }
+
+    private static OperationOutcome outcome(IssueSeverity severity, IssueType type, int line, String message) {
+        OperationOutcome outcome = new OperationOutcome();
+        outcome.addIssue().setSeverity(severity).setCode(type).setDiagnostics("Line " + line + ": " + message);
+        return outcome;
+    }
+
+    private String encode(IBaseResource resource) {
+        StringWriter writer = new StringWriter();
+        try {
+            bundleWriter.encode(resource, false, writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+}
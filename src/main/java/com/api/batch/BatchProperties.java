@@ -0,0 +1,35 @@
+package com.api.batch;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("batch")
+public class BatchProperties {
+
+    /**
+     * Conversion threads shared by all batch requests, 0 uses one per CPU core
+     */
+    private int threads = 0;
+
+    /**
+     * Records of one request that are converted or waiting to be written at a
+     * time, bounds the memory of a batch regardless of its size
+     */
+    private int window = 64;
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public void setWindow(int window) {
+        this.window = window;
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.api.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import io.swagger.v3.oas.annotations.Operation;
+
+@RestController
+public class CacheController {
+
+    private final DocumentResultCache documentResultCache;
+    private final CachingNlpClient cachingNlpClient;
+
+    public CacheController(DocumentResultCache documentResultCache, CachingNlpClient cachingNlpClient) {
+        this.documentResultCache = documentResultCache;
+        this.cachingNlpClient = cachingNlpClient;
+    }
+
+    @Operation(summary = "Hits and misses of the document result and completion caches")
+    @GetMapping("/cache")
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("documents", documentResultCache.getStats());
+        stats.put("completions", cachingNlpClient.getStats());
+        return stats;
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.api.cache;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("cache")
+public class CacheProperties {
+
+    /**
+     * Reuse the result of a document that was processed before
+     */
+    private boolean enabled = true;
+
+    /**
+     * Size of the in-memory tier in bytes
+     */
+    private long memoryMaxBytes = 64L * 1024 * 1024;
+
+    /**
+     * Folder of the disk tier, survives restarts
+     */
+    private String location = "cache-dir";
+
+    /**
+     * Prompt template, cached results are dropped when it changes
+     */
+    private String promptTemplate = "src/main/resources/command.txt";
+
+    private final Completions completions = new Completions();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getMemoryMaxBytes() {
+        return memoryMaxBytes;
+    }
+
+    public void setMemoryMaxBytes(long memoryMaxBytes) {
+        this.memoryMaxBytes = memoryMaxBytes;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public String getPromptTemplate() {
+        return promptTemplate;
+    }
+
+    public void setPromptTemplate(String promptTemplate) {
+        this.promptTemplate = promptTemplate;
+    }
+
+    public Completions getCompletions() {
+        return completions;
+    }
+
+    /*
+     * Cache in front of the language model
+     */
+    public static class Completions {
+
+        /**
+         * Answer prompts that were seen before without asking the model
+         */
+        private boolean enabled = true;
+
+        /**
+         * Completions older than this are asked again
+         */
+        private Duration ttl = Duration.ofDays(7);
+
+        /**
+         * Size of the in-memory tier in bytes
+         */
+        private long memoryMaxBytes = 16L * 1024 * 1024;
+
+        /**
+         * Folder of the disk tier, survives restarts
+         */
+        private String location = "completion-cache";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public long getMemoryMaxBytes() {
+            return memoryMaxBytes;
+        }
+
+        public void setMemoryMaxBytes(long memoryMaxBytes) {
+            this.memoryMaxBytes = memoryMaxBytes;
+        }
+
+        public String getLocation() {
+            return location;
+        }
+
+        public void setLocation(String location) {
+            this.location = location;
+        }
+
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.api.cache;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Final result of one document, the BloodDetails as JSON and the serialized FHIR Bundle
+ * Kept as bytes, the bulk export reads the ReportStore instead
+ * A job that hits maps the BloodDetails again, so its bundle gets new ids
+ */
+public class CachedResult {
+
+    private final String version;
+    private final byte[] bloodDetails;
+    private final int observations;
+    private final byte[] bundle;
+
+    CachedResult(String version, byte[] bloodDetails, int observations, byte[] bundle) {
+        this.version = version;
+        this.bloodDetails = bloodDetails;
+        this.observations = observations;
+        this.bundle = bundle;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public byte[] getBloodDetails() {
+        return bloodDetails;
+    }
+
+    public int getObservations() {
+        return observations;
+    }
+
+    public byte[] getBundle() {
+        return bundle;
+    }
+
+    public String getBundleAsString() {
+        return new String(bundle, StandardCharsets.UTF_8);
+    }
+
+    long getWeight() {
+        return bloodDetails.length + bundle.length + 64L;
+    }
+
+}
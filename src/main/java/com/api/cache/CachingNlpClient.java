@@ -0,0 +1,240 @@
+package com.api.cache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.text.Normalizer;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import com.api.nlp.NlpClient;
+import com.api.nlp.NlpException;
+import com.api.nlp.NlpProperties;
+import com.api.nlp.NlpWorkerPool;
+import com.api.util.AtomicFiles;
+import com.api.util.Hashes;
+
+import jakarta.annotation.PostConstruct;
+
+/*
+ * Answers prompts that were completed before without asking the model again
+ * The key is the SHA-256 of the model and the normalized prompt, so prompts
+ * that only differ in whitespace share one completion
+ * Concurrent requests for the same prompt wait for the one that asks the model
+ * The disk tier keeps one file per prompt in <location>/ab/<key>.txt, the file
+ * time is the time of the completion
+ */
+@Primary
+@Service
+public class CachingNlpClient implements NlpClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingNlpClient.class);
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final NlpClient delegate;
+    private final CacheProperties.Completions properties;
+    private final String model;
+    private final Path root;
+    private final LruCache<String, Completion> memory;
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong joined = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    public CachingNlpClient(NlpWorkerPool delegate, CacheProperties cacheProperties, NlpProperties nlpProperties) {
+        this.delegate = delegate;
+        this.properties = cacheProperties.getCompletions();
+        this.model = nlpProperties.getModel();
+        this.root = Path.of(properties.getLocation());
+        this.memory = new LruCache<>(properties.getMemoryMaxBytes(), Completion::getWeight);
+    }
+
+    /*
+     * Expired completions are only found when they are asked for, so drop them once at startup
+     */
+    @PostConstruct
+    public void removeExpired() {
+        if (!properties.isEnabled() || !Files.isDirectory(root)) {
+            return;
+        }
+        long oldest = System.currentTimeMillis() - properties.getTtl().toMillis();
+        try (Stream<Path> files = Files.walk(root, 2)) {
+            files.filter(Files::isRegularFile).forEach(file -> {
+                try {
+                    if (Files.getLastModifiedTime(file).toMillis() < oldest) {
+                        Files.delete(file);
+                    }
+                } catch (IOException e) {
+                    logger.debug("Could not remove expired completion {}", file, e);
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Could not clean up completion cache {}", root, e);
+        }
+    }
+
+    @Override
+    public String complete(String prompt) {
+        if (!properties.isEnabled()) {
+            return delegate.complete(prompt);
+        }
+        String key = key(prompt);
+        String completion = lookup(key);
+        if (completion != null) {
+            return completion;
+        }
+        CompletableFuture<String> own = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(key, own);
+        if (running != null) {
+            joined.incrementAndGet();
+            return await(running);
+        }
+        try {
+            // another request may have finished between the lookup and putIfAbsent
+            completion = lookup(key);
+            if (completion == null) {
+                misses.incrementAndGet();
+                completion = delegate.complete(prompt);
+                store(key, completion);
+            }
+            own.complete(completion);
+            return completion;
+        } catch (RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("model", model);
+        stats.put("hits", hits.get());
+        stats.put("diskHits", diskHits.get());
+        stats.put("joined", joined.get());
+        stats.put("misses", misses.get());
+        stats.put("expired", expired.get());
+        stats.put("memory", memory.getStats());
+        return stats;
+    }
+
+    /*
+     * Unicode NFC, trimmed, every run of whitespace a single space
+     */
+    static String normalize(String prompt) {
+        String normalized = Normalizer.normalize(prompt, Normalizer.Form.NFC);
+        return WHITESPACE.matcher(normalized.strip()).replaceAll(" ");
+    }
+
+    String key(String prompt) {
+        MessageDigest digest = Hashes.sha256();
+        digest.update(model.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(normalize(prompt).getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private String lookup(String key) {
+        long now = System.currentTimeMillis();
+        Completion completion = memory.get(key);
+        if (completion != null) {
+            if (!isExpired(completion.created, now)) {
+                hits.incrementAndGet();
+                return completion.text;
+            }
+            memory.remove(key);
+        }
+        Path file = file(key);
+        try {
+            long created = Files.getLastModifiedTime(file).toMillis();
+            if (isExpired(created, now)) {
+                expired.incrementAndGet();
+                Files.deleteIfExists(file);
+                return null;
+            }
+            String text = Files.readString(file, StandardCharsets.UTF_8);
+            memory.put(key, new Completion(text, created));
+            diskHits.incrementAndGet();
+            return text;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            logger.warn("Could not read cached completion {}", key, e);
+            return null;
+        }
+    }
+
+    /*
+     * A failing disk write only costs the next restart a call to the model
+     */
+    private void store(String key, String completion) {
+        if (completion == null || completion.isBlank()) {
+            return;
+        }
+        memory.put(key, new Completion(completion, System.currentTimeMillis()));
+        Path file = file(key);
+        try {
+            Files.createDirectories(file.getParent());
+            AtomicFiles.write(file, completion.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            logger.warn("Could not write cached completion {}", key, e);
+        }
+    }
+
+    private boolean isExpired(long created, long now) {
+        return now - created > properties.getTtl().toMillis();
+    }
+
+    private Path file(String key) {
+        return root.resolve(key.substring(0, 2)).resolve(key + ".txt");
+    }
+
+    private static String await(CompletableFuture<String> running) {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NlpException("Interrupted while waiting for a completion", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new NlpException("NLP request failed", e.getCause());
+        }
+    }
+
+    private static final class Completion {
+
+        private final String text;
+        private final long created;
+
+        private Completion(String text, long created) {
+            this.text = text;
+            this.created = created;
+        }
+
+        private long getWeight() {
+            return 2L * text.length() + 64;
+        }
+
+    }
+
+}
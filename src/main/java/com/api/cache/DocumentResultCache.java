@@ -0,0 +1,223 @@
+package com.api.cache;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import com.api.BloodDetails;
+import com.api.catalog.MappingPlan;
+import com.api.util.AtomicFiles;
+import com.api.util.Hashes;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/*
+ * Results of documents that were processed before, keyed by the SHA-256 of the PDF
+ * Two tiers, a size bounded LRU in memory and a folder that survives restarts
+ * Every entry belongs to a version made of the prompt template and the analyte
+ * catalog, changing either of them makes all older entries misses
+ * The disk tier is laid out as <location>/<version>/ab/<hash>.json and .bundle.json,
+ * the .json holds the BloodDetails and the observation count
+ */
+@Service
+public class DocumentResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentResultCache.class);
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+    // part of the version, changing the layout of the disk tier drops the older entries
+    private static final String LAYOUT = "2";
+
+    private final CacheProperties properties;
+    private final MappingPlan mappingPlan;
+    private final ObjectMapper objectMapper;
+    private final Path root;
+    private final LruCache<String, CachedResult> memory;
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong diskMisses = new AtomicLong();
+
+    private volatile String version;
+    private volatile FileTime templateModified;
+    private volatile long templateSize = -1;
+
+    public DocumentResultCache(CacheProperties properties, MappingPlan mappingPlan, ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.mappingPlan = mappingPlan;
+        this.objectMapper = objectMapper;
+        this.root = Path.of(properties.getLocation());
+        this.memory = new LruCache<>(properties.getMemoryMaxBytes(), CachedResult::getWeight);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    public Optional<CachedResult> get(String hash) {
+        if (!isEnabled() || hash == null || !HASH.matcher(hash).matches()) {
+            return Optional.empty();
+        }
+        String current = getVersion();
+        CachedResult result = memory.get(hash);
+        if (result != null && result.getVersion().equals(current)) {
+            return Optional.of(result);
+        }
+        try {
+            Path details = detailsFile(current, hash);
+            JsonNode stored = objectMapper.readTree(Files.readAllBytes(details));
+            if (!stored.path("observations").isInt() || !stored.path("bloodDetails").isObject()) {
+                throw new IOException("Unexpected content in " + details);
+            }
+            result = new CachedResult(current, objectMapper.writeValueAsBytes(stored.get("bloodDetails")),
+                    stored.get("observations").asInt(), Files.readAllBytes(bundleFile(details, hash)));
+        } catch (NoSuchFileException e) {
+            diskMisses.incrementAndGet();
+            return Optional.empty();
+        } catch (IOException e) {
+            logger.warn("Could not read cached result {}", hash, e);
+            diskMisses.incrementAndGet();
+            return Optional.empty();
+        }
+        diskHits.incrementAndGet();
+        memory.put(hash, result);
+        return Optional.of(result);
+    }
+
+    /*
+     * A failing disk write only costs the next restart a miss
+     */
+    public void put(String hash, BloodDetails bloodDetails, int observations, byte[] bundle) {
+        if (!isEnabled() || hash == null || !HASH.matcher(hash).matches()) {
+            return;
+        }
+        String current = getVersion();
+        CachedResult result;
+        byte[] stored;
+        try {
+            JsonNode json = objectMapper.valueToTree(bloodDetails);
+            ObjectNode details = objectMapper.createObjectNode();
+            details.put("observations", observations);
+            details.set("bloodDetails", json);
+            stored = objectMapper.writeValueAsBytes(details);
+            result = new CachedResult(current, objectMapper.writeValueAsBytes(json), observations, bundle);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Could not cache result {}", hash, e);
+            return;
+        }
+        memory.put(hash, result);
+        Path details = detailsFile(current, hash);
+        try {
+            Files.createDirectories(details.getParent());
+            // the bundle goes first, a details file is only visible with its bundle
+            AtomicFiles.write(bundleFile(details, hash), result.getBundle());
+            AtomicFiles.write(details, stored);
+        } catch (IOException e) {
+            logger.warn("Could not write cached result {}", hash, e);
+        }
+    }
+
+    public BloodDetails readBloodDetails(CachedResult result) throws IOException {
+        return objectMapper.readValue(result.getBloodDetails(), BloodDetails.class);
+    }
+
+    public void clear() {
+        memory.clear();
+        try {
+            FileSystemUtils.deleteRecursively(root);
+        } catch (IOException e) {
+            logger.warn("Could not delete cache folder {}", root, e);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("version", getVersion());
+        stats.put("memory", memory.getStats());
+        stats.put("diskHits", diskHits.get());
+        stats.put("diskMisses", diskMisses.get());
+        return stats;
+    }
+
+    /*
+     * Hash of the prompt template and the catalog version, only recomputed when
+     * the template file changes
+     */
+    public String getVersion() {
+        Path template = Path.of(properties.getPromptTemplate());
+        FileTime modified = null;
+        long size = -1;
+        try {
+            modified = Files.getLastModifiedTime(template);
+            size = Files.size(template);
+        } catch (IOException e) {
+            // no template, only the catalog counts
+        }
+        String current = version;
+        if (current != null && size == templateSize && (modified == null || modified.equals(templateModified))) {
+            return current;
+        }
+        synchronized (this) {
+            MessageDigest digest = Hashes.sha256();
+            digest.update(LAYOUT.getBytes(StandardCharsets.UTF_8));
+            digest.update(mappingPlan.getVersion().getBytes(StandardCharsets.UTF_8));
+            if (size >= 0) {
+                try {
+                    digest.update(Files.readAllBytes(template));
+                } catch (IOException e) {
+                    logger.warn("Could not read prompt template {}", template, e);
+                }
+            }
+            String next = HexFormat.of().formatHex(digest.digest(), 0, 8);
+            if (!next.equals(version)) {
+                if (version != null) {
+                    logger.info("Cached results are outdated, version {} replaces {}", next, version);
+                }
+                memory.clear();
+                deleteOtherVersions(next);
+            }
+            templateModified = modified;
+            templateSize = size;
+            version = next;
+            return next;
+        }
+    }
+
+    private Path detailsFile(String version, String hash) {
+        return root.resolve(version).resolve(hash.substring(0, 2)).resolve(hash + ".json");
+    }
+
+    private static Path bundleFile(Path details, String hash) {
+        return details.resolveSibling(hash + ".bundle.json");
+    }
+
+    private void deleteOtherVersions(String current) {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        try (DirectoryStream<Path> versions = Files.newDirectoryStream(root)) {
+            for (Path folder : versions) {
+                if (!folder.getFileName().toString().equals(current)) {
+                    FileSystemUtils.deleteRecursively(folder);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not delete outdated cached results in {}", root, e);
+        }
+    }
+
+}
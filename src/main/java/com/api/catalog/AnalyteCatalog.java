@@ -0,0 +1,72 @@
+package com.api.catalog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+
+import com.api.util.Hashes;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/*
+ * Loads the analyte definitions (field, LOINC code, display, UCUM unit, value type)
+ * from a classpath resource and compiles them into a MappingPlan
+ */
+public final class AnalyteCatalog {
+
+    private AnalyteCatalog() {
+    }
+
+    public static MappingPlan compile(String resource) {
+        byte[] content = read(resource);
+        List<AnalyteDefinition> definitions;
+        try {
+            definitions = new ObjectMapper().readValue(content, new TypeReference<List<AnalyteDefinition>>() {
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException("Invalid analyte catalog " + resource, e);
+        }
+        Set<String> fields = new HashSet<>();
+        MappedAnalyte[] analytes = new MappedAnalyte[definitions.size()];
+        for (int i = 0; i < analytes.length; i++) {
+            AnalyteDefinition definition = definitions.get(i);
+            validate(definition, fields);
+            analytes[i] = MappedAnalyte.compile(definition);
+        }
+        return new MappingPlan(analytes, version(content));
+    }
+
+    private static void validate(AnalyteDefinition definition, Set<String> fields) {
+        if (definition.getField() == null || definition.getField().isBlank()) {
+            throw new IllegalStateException("Analyte without field in catalog");
+        }
+        if (!fields.add(definition.getField())) {
+            throw new IllegalStateException("Duplicate analyte " + definition.getField());
+        }
+        if (definition.getCode() == null || definition.getDisplay() == null) {
+            throw new IllegalStateException("Analyte " + definition.getField() + " needs code and display");
+        }
+        if (definition.getValueType() == ValueType.QUANTITY && definition.getUnit() == null) {
+            throw new IllegalStateException("Quantity analyte " + definition.getField() + " needs a unit");
+        }
+    }
+
+    private static byte[] read(String resource) {
+        try (InputStream inputStream = AnalyteCatalog.class.getClassLoader().getResourceAsStream(resource)) {
+            if (inputStream == null) {
+                throw new IllegalStateException("Analyte catalog " + resource + " not found");
+            }
+            return inputStream.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String version(byte[] content) {
+        return HexFormat.of().formatHex(Hashes.sha256().digest(content), 0, 8);
+    }
+}
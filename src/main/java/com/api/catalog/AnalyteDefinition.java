@@ -0,0 +1,34 @@
+package com.api.catalog;
+
+import java.util.List;
+
+import lombok.Data;
+
+/*
+ * One entry of analytes.json
+ */
+@Data
+public class AnalyteDefinition {
+
+    /*
+     * BloodDetails property, analytes without a field of their own are kept in
+     * BloodDetails.additionalAnalytes
+     */
+    private String field;
+    private String system = "http://loinc.org";
+    private String code;
+    private String display;
+    private ValueType valueType = ValueType.QUANTITY;
+    private String unit;
+
+    /*
+     * UCUM code, defaults to the unit
+     */
+    private String unitCode;
+
+    /*
+     * Names used on German lab reports, matched by the rule based extractor
+     */
+    private List<String> aliases = List.of();
+
+}
@@ -0,0 +1,140 @@
+package com.api.catalog;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.Quantity;
+import org.hl7.fhir.r4.model.StringType;
+import org.hl7.fhir.r4.model.Type;
+
+import com.api.BloodDetails;
+import com.api.extraction.LabValue;
+import com.api.extraction.LabValueParser;
+
+/*
+ * A catalog entry compiled for the conversion loop
+ * The BloodDetails accessors are resolved once and the FHIR code and unit are
+ * prebuilt, each observation only gets copies of them
+ */
+public final class MappedAnalyte {
+
+    private static final String UCUM = "http://unitsofmeasure.org";
+
+    private final String field;
+    private final ValueType valueType;
+    private final List<String> aliases;
+    private final MethodHandle getter;
+    private final MethodHandle setter;
+    private final CodeableConcept code;
+    private final Quantity unit;
+
+    private MappedAnalyte(AnalyteDefinition definition, MethodHandle getter, MethodHandle setter) {
+        this.field = definition.getField();
+        this.valueType = definition.getValueType();
+        this.aliases = List.copyOf(definition.getAliases());
+        this.getter = getter;
+        this.setter = setter;
+        this.code = new CodeableConcept().addCoding(
+                new Coding(definition.getSystem(), definition.getCode(), definition.getDisplay()));
+        this.unit = new Quantity().setUnit(definition.getUnit()).setSystem(UCUM)
+                .setCode(definition.getUnitCode() != null ? definition.getUnitCode() : definition.getUnit());
+    }
+
+    static MappedAnalyte compile(AnalyteDefinition definition) {
+        String property = Character.toUpperCase(definition.getField().charAt(0)) + definition.getField().substring(1);
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        try {
+            return new MappedAnalyte(definition,
+                    lookup.findVirtual(BloodDetails.class, "get" + property, MethodType.methodType(String.class)),
+                    lookup.findVirtual(BloodDetails.class, "set" + property,
+                            MethodType.methodType(void.class, String.class)));
+        } catch (NoSuchMethodException e) {
+            return new MappedAnalyte(definition, null, null);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot access BloodDetails." + definition.getField(), e);
+        }
+    }
+
+    public String read(BloodDetails bloodDetails) {
+        if (getter == null) {
+            return bloodDetails.getAdditionalAnalytes().get(field);
+        }
+        try {
+            return (String) getter.invokeExact(bloodDetails);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot read " + field, e);
+        }
+    }
+
+    public void write(BloodDetails bloodDetails, String value) {
+        if (setter == null) {
+            bloodDetails.getAdditionalAnalytes().put(field, value);
+            return;
+        }
+        try {
+            setter.invokeExact(bloodDetails, value);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot write " + field, e);
+        }
+    }
+
+    /*
+     * Null if a quantity is not numeric, the parsed number is left in the scratch value
+     */
+    public Type newValue(String value, LabValue scratch) {
+        if (valueType == ValueType.STRING) {
+            return new StringType(value);
+        }
+        LabValueParser.parse(value, scratch);
+        return scratch.isNumeric() ? newQuantity(scratch) : null;
+    }
+
+    public Quantity newQuantity(LabValue value) {
+        Quantity quantity = unit.copy().setValue(value.getValue());
+        if (value.getComparator() != null) {
+            quantity.setComparator(toFhir(value.getComparator()));
+        }
+        return quantity;
+    }
+
+    private static Quantity.QuantityComparator toFhir(LabValue.Comparator comparator) {
+        switch (comparator) {
+            case LESS_THAN:
+                return Quantity.QuantityComparator.LESS_THAN;
+            case LESS_OR_EQUAL:
+                return Quantity.QuantityComparator.LESS_OR_EQUAL;
+            case GREATER_OR_EQUAL:
+                return Quantity.QuantityComparator.GREATER_OR_EQUAL;
+            default:
+                return Quantity.QuantityComparator.GREATER_THAN;
+        }
+    }
+
+    public CodeableConcept newCode() {
+        return code.copy();
+    }
+
+    /*
+     * Unit, system and code of the quantity without a value
+     */
+    public Quantity newUnit() {
+        return unit.copy();
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public ValueType getValueType() {
+        return valueType;
+    }
+
+    public List<String> getAliases() {
+        return aliases;
+    }
+
+}
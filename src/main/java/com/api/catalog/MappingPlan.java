@@ -0,0 +1,61 @@
+package com.api.catalog;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Immutable, compiled form of the analyte catalog, a flat array in catalog order
+ */
+public final class MappingPlan {
+
+    public static final String CATALOG = "analytes.json";
+
+    private final MappedAnalyte[] analytes;
+    private final List<MappedAnalyte> analyteList;
+    private final Map<String, MappedAnalyte> byField = new HashMap<>();
+    private final String version;
+
+    MappingPlan(MappedAnalyte[] analytes, String version) {
+        this.analytes = analytes;
+        this.analyteList = List.of(analytes);
+        this.version = version;
+        for (MappedAnalyte analyte : analytes) {
+            byField.put(analyte.getField(), analyte);
+        }
+    }
+
+    /*
+     * The plan compiled from analytes.json on the classpath
+     */
+    public static MappingPlan getDefault() {
+        return Holder.DEFAULT;
+    }
+
+    public int size() {
+        return analytes.length;
+    }
+
+    public MappedAnalyte get(int index) {
+        return analytes[index];
+    }
+
+    public MappedAnalyte find(String field) {
+        return byField.get(field);
+    }
+
+    public List<MappedAnalyte> getAnalytes() {
+        return analyteList;
+    }
+
+    /*
+     * Hash of the catalog file, changes whenever an analyte mapping changes
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    private static final class Holder {
+        static final MappingPlan DEFAULT = AnalyteCatalog.compile(CATALOG);
+    }
+}
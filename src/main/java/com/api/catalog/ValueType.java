@@ -0,0 +1,13 @@
+package com.api.catalog;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public enum ValueType {
+
+    @JsonProperty("quantity")
+    QUANTITY,
+
+    @JsonProperty("string")
+    STRING
+
+}
@@ -0,0 +1,87 @@
+package com.api.export;
+
+import java.nio.file.Path;
+
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.OperationOutcome.IssueSeverity;
+import org.hl7.fhir.r4.model.OperationOutcome.IssueType;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import com.api.batch.BatchConverter;
+import com.api.fhir.BundleWriter;
+
+import io.swagger.v3.oas.annotations.Operation;
+
+@RestController
+public class ExportController {
+
+    private final ExportService exportService;
+    private final BundleWriter bundleWriter;
+
+    public ExportController(ExportService exportService, BundleWriter bundleWriter) {
+        this.exportService = exportService;
+        this.bundleWriter = bundleWriter;
+    }
+
+    @Operation(summary = "Kick off a bulk export of the DiagnosticReports and Observations in the result cache")
+    @GetMapping("/$export")
+    public ResponseEntity<?> kickOff() {
+        String request = ServletUriComponentsBuilder.fromCurrentRequest().toUriString();
+        String location = ServletUriComponentsBuilder.fromCurrentContextPath().path("/export/").toUriString() + "{id}";
+        ExportJob job = exportService.start(request, location);
+        return ResponseEntity.accepted().header(HttpHeaders.CONTENT_LOCATION, job.getLocation()).build();
+    }
+
+    @Operation(summary = "Status of a bulk export, the manifest once it is complete")
+    @GetMapping("/export/{id}")
+    public ResponseEntity<?> status(@PathVariable String id, @RequestHeader HttpHeaders headers) {
+        ExportJob job = exportService.find(id).orElse(null);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        switch (job.getStatus()) {
+            case COMPLETED:
+                return ResponseEntity.ok(exportService.manifest(job));
+            case FAILED:
+                return outcome(HttpStatus.INTERNAL_SERVER_ERROR, IssueType.EXCEPTION, job.getError(), headers);
+            default:
+                return ResponseEntity.accepted()
+                        .header("X-Progress", job.getReports() + " reports")
+                        .header(HttpHeaders.RETRY_AFTER, "2")
+                        .build();
+        }
+    }
+
+    @Operation(summary = "Download an output file of a completed bulk export")
+    @GetMapping("/export/{id}/{file:.+}")
+    public ResponseEntity<Resource> file(@PathVariable String id, @PathVariable String file) {
+        Path path = exportService.find(id).flatMap(job -> exportService.resolve(job, file)).orElse(null);
+        if (path == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok().contentType(BatchConverter.FHIR_NDJSON).body(new FileSystemResource(path));
+    }
+
+    @Operation(summary = "Cancel a bulk export or delete its files")
+    @DeleteMapping("/export/{id}")
+    public ResponseEntity<Void> cancel(@PathVariable String id) {
+        return exportService.cancel(id) ? ResponseEntity.accepted().build() : ResponseEntity.notFound().build();
+    }
+
+    private ResponseEntity<?> outcome(HttpStatus status, IssueType type, String message, HttpHeaders headers) {
+        OperationOutcome outcome = new OperationOutcome();
+        outcome.addIssue().setSeverity(IssueSeverity.ERROR).setCode(type).setDiagnostics(message);
+        return bundleWriter.write(status, outcome, headers);
+    }
+
+}
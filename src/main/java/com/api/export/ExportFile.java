@@ -0,0 +1,20 @@
+package com.api.export;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import lombok.Value;
+
+/*
+ * One output entry of the export manifest
+ */
+@Value
+public class ExportFile {
+
+    String type;
+    String url;
+    long count;
+
+    @JsonIgnore
+    String name;
+
+}
@@ -0,0 +1,122 @@
+package com.api.export;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * State of one bulk export, updated by the export thread and read by the status requests
+ */
+public class ExportJob {
+
+    public enum Status {
+        ACCEPTED, IN_PROGRESS, COMPLETED, FAILED, CANCELLED
+    }
+
+    private final String id;
+    private final String request;
+    private final String location;
+    private final Path directory;
+    private final Instant transactionTime = Instant.now();
+    private final AtomicLong reports = new AtomicLong();
+    private final AtomicLong observations = new AtomicLong();
+
+    private volatile Status status = Status.ACCEPTED;
+    private volatile Instant finished;
+    private volatile List<ExportFile> output = List.of();
+    private volatile String error;
+    private volatile Future<?> future;
+
+    ExportJob(String id, String request, String location, Path directory) {
+        this.id = id;
+        this.request = request;
+        this.location = location;
+        this.directory = directory;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getRequest() {
+        return request;
+    }
+
+    /*
+     * Status URL, the output files are served below it
+     */
+    public String getLocation() {
+        return location;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public Instant getTransactionTime() {
+        return transactionTime;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    void setStatus(Status status) {
+        // set first, a done job always has its finish time
+        if (status == Status.COMPLETED || status == Status.FAILED || status == Status.CANCELLED) {
+            finished = Instant.now();
+        }
+        this.status = status;
+    }
+
+    /*
+     * When the export completed, failed or was cancelled, null while it runs
+     */
+    public Instant getFinished() {
+        return finished;
+    }
+
+    public long getReports() {
+        return reports.get();
+    }
+
+    public long getObservations() {
+        return observations.get();
+    }
+
+    void addReport(int observationCount) {
+        reports.incrementAndGet();
+        observations.addAndGet(observationCount);
+    }
+
+    public List<ExportFile> getOutput() {
+        return output;
+    }
+
+    void setOutput(List<ExportFile> output) {
+        this.output = List.copyOf(output);
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    void setError(String error) {
+        this.error = error;
+    }
+
+    Future<?> getFuture() {
+        return future;
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    public boolean isDone() {
+        return status == Status.COMPLETED || status == Status.FAILED || status == Status.CANCELLED;
+    }
+
+}
@@ -0,0 +1,19 @@
+package com.api.export;
+
+import java.util.List;
+
+import lombok.Value;
+
+/*
+ * Completion response of a bulk export, laid out like the FHIR $export manifest
+ */
+@Value
+public class ExportManifest {
+
+    String transactionTime;
+    String request;
+    boolean requiresAccessToken;
+    List<ExportFile> output;
+    List<ExportFile> error;
+
+}
@@ -0,0 +1,88 @@
+package com.api.export;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("export")
+public class ExportProperties {
+
+    /**
+     * Folder the NDJSON files are written to, one subfolder per export
+     */
+    private String location = "export-dir";
+
+    /**
+     * A new part file is started once a file would grow beyond this size
+     */
+    private long maxPartBytes = 64L * 1024 * 1024;
+
+    /**
+     * Folder of the report store, every converted Bundle is kept there for the export
+     */
+    private String storeLocation = "report-store";
+
+    /**
+     * A new segment file of the report store is started once a file would grow beyond this size
+     */
+    private long segmentBytes = 256L * 1024 * 1024;
+
+    /**
+     * Finished exports and their files are removed after this time
+     */
+    private Duration retention = Duration.ofHours(24);
+
+    /**
+     * Exports that run at the same time, later kick-offs wait
+     */
+    private int threads = 1;
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public long getMaxPartBytes() {
+        return maxPartBytes;
+    }
+
+    public void setMaxPartBytes(long maxPartBytes) {
+        this.maxPartBytes = maxPartBytes;
+    }
+
+    public String getStoreLocation() {
+        return storeLocation;
+    }
+
+    public void setStoreLocation(String storeLocation) {
+        this.storeLocation = storeLocation;
+    }
+
+    public long getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    public void setSegmentBytes(long segmentBytes) {
+        this.segmentBytes = segmentBytes;
+    }
+
+    public Duration getRetention() {
+        return retention;
+    }
+
+    public void setRetention(Duration retention) {
+        this.retention = retention;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+}
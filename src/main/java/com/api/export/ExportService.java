@@ -0,0 +1,219 @@
+package com.api.export;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.DiagnosticReport;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import com.api.fhir.BundleWriter;
+
+import jakarta.annotation.PreDestroy;
+
+/*
+ * Asynchronous bulk export modeled on FHIR $export
+ * Each export reads every Bundle handed out so far from the ReportStore and
+ * streams their DiagnosticReports and Observations into size bounded NDJSON
+ * part files, nothing but the current Bundle is held in memory. The resources
+ * carry the identifiers the clients received with the Bundle
+ * Finished exports and their files are removed once the retention has passed
+ */
+@Service
+public class ExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExportService.class);
+
+    private final ExportProperties properties;
+    private final BundleWriter bundleWriter;
+    private final ReportStore reportStore;
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+
+    public ExportService(ExportProperties properties, BundleWriter bundleWriter, ReportStore reportStore) {
+        this.properties = properties;
+        this.bundleWriter = bundleWriter;
+        this.reportStore = reportStore;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, properties.getThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "fhir-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /*
+     * location is the status URL the job will be served under
+     */
+    public ExportJob start(String request, String location) {
+        evictExpired();
+        String id = UUID.randomUUID().toString();
+        ExportJob job = new ExportJob(id, request, location.replace("{id}", id),
+                Path.of(properties.getLocation()).resolve(id));
+        jobs.put(id, job);
+        job.setFuture(executor.submit(() -> run(job)));
+        return job;
+    }
+
+    public Optional<ExportJob> find(String id) {
+        evictExpired();
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /*
+     * Stops a running export or removes the files of a finished one
+     */
+    public boolean cancel(String id) {
+        ExportJob job = jobs.remove(id);
+        if (job == null) {
+            return false;
+        }
+        if (job.isDone()) {
+            delete(job);
+        } else {
+            // the export thread removes its files once it sees the cancellation
+            job.setStatus(ExportJob.Status.CANCELLED);
+            job.getFuture().cancel(true);
+        }
+        return true;
+    }
+
+    /*
+     * Only files listed in the manifest can be downloaded
+     */
+    public Optional<Path> resolve(ExportJob job, String name) {
+        return job.getOutput().stream()
+                .filter(file -> file.getName().equals(name))
+                .map(file -> job.getDirectory().resolve(file.getName()))
+                .findFirst();
+    }
+
+    public ExportManifest manifest(ExportJob job) {
+        return new ExportManifest(job.getTransactionTime().toString(), job.getRequest(), false,
+                job.getOutput(), List.of());
+    }
+
+    private void run(ExportJob job) {
+        if (job.getStatus() == ExportJob.Status.CANCELLED) {
+            return;
+        }
+        job.setStatus(ExportJob.Status.IN_PROGRESS);
+        long started = System.nanoTime();
+        NdjsonPartWriter reports = new NdjsonPartWriter(job.getDirectory(), "DiagnosticReport",
+                properties.getMaxPartBytes());
+        NdjsonPartWriter observations = new NdjsonPartWriter(job.getDirectory(), "Observation",
+                properties.getMaxPartBytes());
+        try {
+            Files.createDirectories(job.getDirectory());
+            try (reports; observations) {
+                StringWriter buffer = new StringWriter(4096);
+                reportStore.forEach(bundle -> {
+                    if (isCancelled(job)) {
+                        return false;
+                    }
+                    export(bundle, reports, observations, buffer, job);
+                    return true;
+                });
+            }
+            if (isCancelled(job)) {
+                delete(job);
+                return;
+            }
+            List<ExportFile> output = new ArrayList<>();
+            addFiles(job, "DiagnosticReport", reports, output);
+            addFiles(job, "Observation", observations, output);
+            job.setOutput(output);
+            job.setStatus(ExportJob.Status.COMPLETED);
+            logger.info("Export {} wrote {} reports and {} observations in {} ms", job.getId(), job.getReports(),
+                    job.getObservations(), (System.nanoTime() - started) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            if (isCancelled(job)) {
+                delete(job);
+                return;
+            }
+            logger.error("Export {} failed", job.getId(), e);
+            job.setError(e.getMessage());
+            job.setStatus(ExportJob.Status.FAILED);
+        }
+    }
+
+    /*
+     * Splits a stored Bundle into its DiagnosticReport and Observations
+     */
+    private void export(byte[] content, NdjsonPartWriter reports, NdjsonPartWriter observations,
+            StringWriter buffer, ExportJob job) throws IOException {
+        Bundle bundle = bundleWriter.parseJson(Bundle.class, new String(content, StandardCharsets.UTF_8));
+        int observationCount = 0;
+        for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
+            Resource resource = entry.getResource();
+            if (resource instanceof DiagnosticReport) {
+                reports.write(encode(resource, buffer));
+            } else if (resource instanceof Observation) {
+                observations.write(encode(resource, buffer));
+                observationCount++;
+            }
+        }
+        job.addReport(observationCount);
+    }
+
+    /*
+     * Runs on every kick-off and status request, so an idle service keeps the
+     * files of its last exports until the next request
+     */
+    private void evictExpired() {
+        Instant expired = Instant.now().minus(properties.getRetention());
+        for (ExportJob job : jobs.values()) {
+            if (job.isDone() && job.getFinished().isBefore(expired) && jobs.remove(job.getId(), job)) {
+                logger.info("Export {} expired", job.getId());
+                delete(job);
+            }
+        }
+    }
+
+    private static boolean isCancelled(ExportJob job) {
+        return job.getStatus() == ExportJob.Status.CANCELLED || Thread.currentThread().isInterrupted();
+    }
+
+    private String encode(IBaseResource resource, StringWriter buffer) throws IOException {
+        buffer.getBuffer().setLength(0);
+        bundleWriter.encode(resource, false, buffer);
+        return buffer.toString();
+    }
+
+    private static void addFiles(ExportJob job, String type, NdjsonPartWriter writer, List<ExportFile> output) {
+        for (NdjsonPartWriter.Part part : writer.getParts()) {
+            output.add(new ExportFile(type, job.getLocation() + "/" + part.name, part.count, part.name));
+        }
+    }
+
+    private static void delete(ExportJob job) {
+        try {
+            FileSystemUtils.deleteRecursively(job.getDirectory());
+        } catch (IOException e) {
+            logger.warn("Could not delete export {}", job.getDirectory(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.api.export;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Appends resources of one type as NDJSON lines and rolls over to a new part
+ * file ("Observation-2.ndjson") once the current one would exceed the size limit
+ */
+class NdjsonPartWriter implements Closeable {
+
+    private final Path directory;
+    private final String type;
+    private final long maxPartBytes;
+    private final List<Part> parts = new ArrayList<>();
+
+    private OutputStream output;
+    private long bytes;
+    private long count;
+
+    NdjsonPartWriter(Path directory, String type, long maxPartBytes) {
+        this.directory = directory;
+        this.type = type;
+        this.maxPartBytes = maxPartBytes;
+    }
+
+    void write(String json) throws IOException {
+        byte[] line = (json + "\n").getBytes(StandardCharsets.UTF_8);
+        if (output == null || (count > 0 && bytes + line.length > maxPartBytes)) {
+            nextPart();
+        }
+        output.write(line);
+        bytes += line.length;
+        count++;
+    }
+
+    /*
+     * Name and resource count of every part, complete once the writer is closed
+     */
+    List<Part> getParts() {
+        return parts;
+    }
+
+    private void nextPart() throws IOException {
+        finishPart();
+        String name = type + "-" + (parts.size() + 1) + ".ndjson";
+        output = new BufferedOutputStream(Files.newOutputStream(directory.resolve(name)), 64 * 1024);
+        parts.add(new Part(name, 0));
+        bytes = 0;
+        count = 0;
+    }
+
+    private void finishPart() throws IOException {
+        if (output != null) {
+            output.close();
+            parts.set(parts.size() - 1, new Part(parts.get(parts.size() - 1).name, count));
+            output = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        finishPart();
+    }
+
+    static final class Part {
+        final String name;
+        final long count;
+
+        Part(String name, long count) {
+            this.name = name;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.api.export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.api.fhir.Ids;
+
+import jakarta.annotation.PreDestroy;
+
+/*
+ * Every Bundle handed out by a conversion, exactly as the client received it,
+ * the source of the bulk export
+ * Bundles are appended as NDJSON lines to segment files named after a time
+ * ordered id, a new segment is started at startup and once the current one
+ * reaches export.segment-bytes. Nothing here is ever evicted, unlike the
+ * result cache it does not depend on the prompt template or the catalog
+ * An append is a single write, a reader skips a last line without its newline
+ */
+@Service
+public class ReportStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportStore.class);
+
+    private static final String PREFIX = "bundles-";
+    private static final String SUFFIX = ".ndjson";
+
+    private final ExportProperties properties;
+    private final Path root;
+
+    private FileChannel segment;
+    private long segmentBytes;
+
+    public ReportStore(ExportProperties properties) {
+        this.properties = properties;
+        this.root = Path.of(properties.getStoreLocation());
+    }
+
+    /*
+     * Compact JSON of one Bundle, without line breaks
+     */
+    public void append(byte[] bundle) throws IOException {
+        ByteBuffer line = ByteBuffer.allocate(bundle.length + 1).put(bundle).put((byte) '\n').flip();
+        synchronized (this) {
+            if (segment == null || (segmentBytes > 0 && segmentBytes + line.remaining() > properties.getSegmentBytes())) {
+                nextSegment();
+            }
+            try {
+                while (line.hasRemaining()) {
+                    segmentBytes += segment.write(line);
+                }
+            } catch (IOException e) {
+                // a line cut short must not run into the next one
+                closeSegment();
+                throw e;
+            }
+        }
+    }
+
+    /*
+     * Hands every stored Bundle to the visitor in the order they were
+     * appended, until it returns false
+     */
+    public void forEach(BundleVisitor visitor) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(root)) {
+            segments = files.filter(ReportStore::isSegment).sorted().toList();
+        }
+        byte[] buffer = new byte[64 * 1024];
+        ByteArrayOutputStream line = new ByteArrayOutputStream(16 * 1024);
+        for (Path file : segments) {
+            line.reset();
+            try (InputStream input = Files.newInputStream(file)) {
+                int read;
+                while ((read = input.read(buffer)) >= 0) {
+                    int start = 0;
+                    for (int i = 0; i < read; i++) {
+                        if (buffer[i] != '\n') {
+                            continue;
+                        }
+                        line.write(buffer, start, i - start);
+                        start = i + 1;
+                        if (line.size() > 0 && !visitor.visit(line.toByteArray())) {
+                            return;
+                        }
+                        line.reset();
+                    }
+                    line.write(buffer, start, read - start);
+                }
+            }
+        }
+    }
+
+    private void nextSegment() throws IOException {
+        closeSegment();
+        Files.createDirectories(root);
+        Path file = root.resolve(PREFIX + Ids.uuid7() + SUFFIX);
+        segment = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        segmentBytes = 0;
+        logger.info("Storing reports in {}", file);
+    }
+
+    private void closeSegment() {
+        if (segment != null) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                logger.warn("Could not close report segment", e);
+            }
+            segment = null;
+        }
+    }
+
+    private static boolean isSegment(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        closeSegment();
+    }
+
+    @FunctionalInterface
+    public interface BundleVisitor {
+        boolean visit(byte[] bundle) throws IOException;
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.api.extraction;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("extraction")
+public class ExtractionProperties {
+
+    /**
+     * Share of recognised analyte rows that must yield a value
+     */
+    private double minCoverage = 0.8;
+
+    /**
+     * Mean confidence over all extracted values
+     */
+    private double minConfidence = 0.85;
+
+    /**
+     * Reports with fewer extracted values always go to the LLM
+     */
+    private int minFields = 5;
+
+    public double getMinCoverage() {
+        return minCoverage;
+    }
+
+    public void setMinCoverage(double minCoverage) {
+        this.minCoverage = minCoverage;
+    }
+
+    public double getMinConfidence() {
+        return minConfidence;
+    }
+
+    public void setMinConfidence(double minConfidence) {
+        this.minConfidence = minConfidence;
+    }
+
+    public int getMinFields() {
+        return minFields;
+    }
+
+    public void setMinFields(int minFields) {
+        this.minFields = minFields;
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.api.extraction;
+
+import java.util.Map;
+
+import com.api.BloodDetails;
+
+import lombok.Value;
+
+@Value
+public class ExtractionResult {
+
+    BloodDetails bloodDetails;
+
+    /*
+     * Confidence between 0 and 1 per extracted BloodDetails field
+     */
+    Map<String, Double> confidence;
+
+    /*
+     * Rows whose name matched a known analyte, with or without a usable value
+     */
+    int analyteRows;
+
+    double coverage;
+
+    double meanConfidence;
+
+    /*
+     * True if the thresholds are met and the LLM can be skipped
+     */
+    boolean sufficient;
+
+}
@@ -0,0 +1,302 @@
+package com.api.extraction;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.stereotype.Component;
+
+import com.api.BloodDetails;
+import com.api.catalog.MappedAnalyte;
+import com.api.catalog.MappingPlan;
+
+/*
+ * Rule based extraction of BloodDetails from OCR table output
+ * Lab reports are laid out as "<row> <page> -> <analyte> ... <value>" or as
+ * "<row> <page> -> <analyte> <unit> <reference range> <value>", which is regular
+ * enough to be parsed without the LLM in most cases
+ * Rows read from the PDF text layer already have their cells separated as
+ * "<row> -> <analyte> | <value> | <unit> | <reference range>"
+ * Names are matched fuzzily against the catalog aliases because OCR confuses
+ * characters like l/i or rn/m
+ */
+@Component
+public class LabTableExtractor {
+
+    private static final Pattern ROW_START = Pattern.compile("^\\s*\\[?\\s*\\d+\\s");
+    private static final Pattern ROW_PREFIX = Pattern.compile("^\\s*\\[?\\s*\\d+\\s+(?:\\d\\s+)?(?:->|-|,|1(?=\\s))?\\s*");
+    private static final Pattern ROW_SEPARATOR = Pattern.compile(",\\s+");
+    private static final Pattern CELL_SEPARATOR = Pattern.compile("\\s\\|\\s");
+    private static final Pattern FOOTNOTE = Pattern.compile("\\d\\)");
+    private static final Pattern RANGE = Pattern.compile("\\d+(?:[.,]\\d+)?-\\d+(?:[.,]\\d+)?");
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^a-z0-9]+");
+    private static final Pattern TRAILING_FLAG = Pattern.compile("(?:\\s*[+\\-*!]|\\s+[HhLl])+$");
+
+    private static final Pattern PATIENT = Pattern.compile("Patient:\\s*([^,\\]]+)");
+    private static final Pattern PRACTITIONER = Pattern.compile("Einsender:\\s*([^,\\]]+)");
+    private static final Pattern ORDER_ID = Pattern.compile("Auftragsnummer:\\s*(\\d+)");
+    private static final Pattern DATE = Pattern.compile("Abnahmedatum:\\s*(\\d{1,2})[. ](\\d{1,2})[. ](\\d{4})");
+    private static final Pattern MATERIALS = Pattern.compile("Ma\\w{2,4}alien\\s*\\.\\.\\.\\s*([^\\d]+)");
+
+    private static final double MIN_NAME_SIMILARITY = 0.75;
+
+    private final ExtractionProperties properties;
+    private final List<Analyte> analytes = new ArrayList<>();
+
+    public LabTableExtractor(ExtractionProperties properties, MappingPlan mappingPlan) {
+        this.properties = properties;
+        for (MappedAnalyte analyte : mappingPlan.getAnalytes()) {
+            if (!analyte.getAliases().isEmpty()) {
+                analytes.add(new Analyte(analyte));
+            }
+        }
+    }
+
+    public ExtractionResult extract(List<String> lines) {
+        return extract(String.join(", ", lines));
+    }
+
+    public ExtractionResult extract(String text) {
+        BloodDetails bloodDetails = new BloodDetails();
+        readHeader(text, bloodDetails);
+        return extractRows(parseRows(text), bloodDetails);
+    }
+
+    /*
+     * Map already separated table rows onto the analyte fields
+     * If a field occurs more than once the row with the highest confidence wins
+     */
+    public ExtractionResult extractRows(List<TableRow> rows, BloodDetails bloodDetails) {
+        Map<String, Double> confidence = new LinkedHashMap<>();
+        LabValue value = new LabValue();
+        int analyteRows = 0;
+        for (TableRow row : rows) {
+            Match match = match(row.getName());
+            if (match == null) {
+                continue;
+            }
+            analyteRows++;
+            if (!normalizeValue(row.getValue(), value)) {
+                continue;
+            }
+            double score = match.similarity * quality(value) * row.getLayoutConfidence();
+            String field = match.analyte.mapped.getField();
+            Double previous = confidence.get(field);
+            if (previous == null || previous < score) {
+                confidence.put(field, score);
+                match.analyte.mapped.write(bloodDetails, value.toPlainString());
+            }
+        }
+        double coverage = analyteRows == 0 ? 0 : (double) confidence.size() / analyteRows;
+        double meanConfidence = confidence.values().stream().mapToDouble(Double::doubleValue).average().orElse(0);
+        boolean sufficient = confidence.size() >= properties.getMinFields()
+                && coverage >= properties.getMinCoverage()
+                && meanConfidence >= properties.getMinConfidence();
+        return new ExtractionResult(bloodDetails, confidence, analyteRows, coverage, meanConfidence, sufficient);
+    }
+
+    /*
+     * OCR output arrives as DataFrame lines joined with ", ", decimal commas are
+     * never followed by whitespace, so ", " separates cells and rows start with
+     * the row index
+     */
+    static List<TableRow> parseRows(String text) {
+        List<String> rows = new ArrayList<>();
+        for (String segment : ROW_SEPARATOR.split(text)) {
+            if (rows.isEmpty() || ROW_START.matcher(segment).find()) {
+                rows.add(segment);
+            } else {
+                int last = rows.size() - 1;
+                rows.set(last, rows.get(last) + ", " + segment);
+            }
+        }
+        List<TableRow> result = new ArrayList<>(rows.size());
+        for (String row : rows) {
+            TableRow tableRow = parseRow(ROW_PREFIX.matcher(row).replaceFirst("").replace("]", "").trim());
+            if (tableRow != null) {
+                result.add(tableRow);
+            }
+        }
+        return result;
+    }
+
+    private static TableRow parseRow(String row) {
+        if (row.contains(" | ")) {
+            String[] cells = CELL_SEPARATOR.split(row, -1);
+            return new TableRow(cells[0].trim(), stripFlags(cells[1].trim()), 1.0);
+        }
+        int dots = row.indexOf("...");
+        if (dots >= 0) {
+            return new TableRow(row.substring(0, dots).trim(), row.substring(dots + 3).trim(), 1.0);
+        }
+        // "<analyte> <unit> <reference range> <value>", the name ends at the unit column
+        String[] tokens = row.split("\\s+");
+        int unit = -1;
+        for (int i = 1; i < tokens.length; i++) {
+            if (tokens[i].indexOf('/') > 0 || tokens[i].equals("%")) {
+                unit = i;
+                break;
+            }
+        }
+        if (unit < 0) {
+            return null;
+        }
+        List<String> cells = new ArrayList<>();
+        for (int i = unit + 1; i < tokens.length; i++) {
+            if (!FOOTNOTE.matcher(tokens[i]).matches()) {
+                cells.add(tokens[i]);
+            }
+        }
+        String name = String.join(" ", List.of(tokens).subList(0, unit));
+        String value = stripFlags(String.join(" ", cells));
+        if (value.isEmpty() || RANGE.matcher(value).matches()) {
+            return new TableRow(name, "", 1.0);
+        }
+        int space = value.indexOf(' ');
+        if (space < 0) {
+            // a single cell could be the reference range as well as the value
+            return new TableRow(name, value, 0.7);
+        }
+        return new TableRow(name, value.substring(space + 1), 1.0);
+    }
+
+    private static void readHeader(String text, BloodDetails bloodDetails) {
+        Matcher matcher = PATIENT.matcher(text);
+        if (matcher.find()) {
+            bloodDetails.setPatient(matcher.group(1).trim());
+        }
+        matcher = PRACTITIONER.matcher(text);
+        if (matcher.find()) {
+            bloodDetails.setPractitioner(matcher.group(1).trim());
+        }
+        matcher = ORDER_ID.matcher(text);
+        if (matcher.find()) {
+            bloodDetails.setOrderId(matcher.group(1));
+        }
+        matcher = DATE.matcher(text);
+        if (matcher.find()) {
+            bloodDetails.setDate(String.format("%s-%02d-%02d", matcher.group(3),
+                    Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(1))));
+        }
+        matcher = MATERIALS.matcher(text);
+        if (matcher.find()) {
+            List<String> materials = new ArrayList<>();
+            for (String material : matcher.group(1).split(",")) {
+                if (!material.isBlank()) {
+                    materials.add(material.trim());
+                }
+            }
+            bloodDetails.setMaterials(materials);
+        }
+    }
+
+    /*
+     * Repairs decimal commas and decimal points that OCR dropped ("30 2")
+     */
+    static boolean normalizeValue(String raw, LabValue value) {
+        LabValueParser.parse(raw, value);
+        return value.isNumeric();
+    }
+
+    /*
+     * How much of the value had to be guessed
+     */
+    static double quality(LabValue value) {
+        switch (value.getStatus()) {
+            case LabValue.OK:
+                return 1.0;
+            case LabValue.LOCALIZED:
+                return 0.95;
+            case LabValue.REPAIRED:
+                return 0.8;
+            default:
+                return 0;
+        }
+    }
+
+    private static String stripFlags(String value) {
+        return TRAILING_FLAG.matcher(value).replaceFirst("").trim();
+    }
+
+    private Match match(String name) {
+        if (name == null || name.isBlank()) {
+            return null;
+        }
+        String folded = fold(name);
+        Match best = null;
+        for (Analyte analyte : analytes) {
+            for (String alias : analyte.foldedAliases) {
+                int longest = Math.max(folded.length(), alias.length());
+                if (Math.abs(folded.length() - alias.length()) > longest * (1 - MIN_NAME_SIMILARITY)) {
+                    continue;
+                }
+                double similarity = similarity(folded, alias);
+                if (similarity >= MIN_NAME_SIMILARITY && (best == null || similarity > best.similarity)) {
+                    best = new Match(analyte, similarity);
+                }
+            }
+        }
+        return best;
+    }
+
+    /*
+     * Lower case without punctuation, umlauts and typical OCR confusions collapsed
+     */
+    static String fold(String name) {
+        return name.toLowerCase(Locale.GERMAN)
+                .replace("ä", "a").replace("ö", "o").replace("ü", "u").replace("ß", "ss")
+                .transform(s -> NON_ALPHANUMERIC.matcher(s).replaceAll(" "))
+                .trim()
+                .replace("rn", "m")
+                .replace("ri", "n")
+                .replace('l', 'i');
+    }
+
+    static double similarity(String a, String b) {
+        int max = Math.max(a.length(), b.length());
+        return max == 0 ? 1.0 : 1.0 - (double) levenshtein(a, b) / max;
+    }
+
+    private static int levenshtein(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    private static final class Analyte {
+        final MappedAnalyte mapped;
+        final String[] foldedAliases;
+
+        Analyte(MappedAnalyte mapped) {
+            this.mapped = mapped;
+            this.foldedAliases = mapped.getAliases().stream().map(LabTableExtractor::fold).toArray(String[]::new);
+        }
+    }
+
+    private static final class Match {
+        final Analyte analyte;
+        final double similarity;
+
+        Match(Analyte analyte, double similarity) {
+            this.analyte = analyte;
+            this.similarity = similarity;
+        }
+    }
+}
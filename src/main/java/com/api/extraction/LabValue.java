@@ -0,0 +1,110 @@
+package com.api.extraction;
+
+import java.math.BigDecimal;
+
+/*
+ * Mutable result of LabValueParser, meant to be reused for all values of a report
+ * The number is kept as unscaled digits and a scale, so the written precision
+ * survives and no intermediate strings are needed
+ */
+public final class LabValue {
+
+    /*
+     * Plain number as Double.parseDouble would accept it
+     */
+    public static final int OK = 0;
+
+    /*
+     * German decimal comma or thousands separators
+     */
+    public static final int LOCALIZED = 1;
+
+    /*
+     * Decimal point dropped by OCR ("30 2")
+     */
+    public static final int REPAIRED = 2;
+
+    /*
+     * Blank or a placeholder like "-"
+     */
+    public static final int EMPTY = 3;
+
+    /*
+     * Not a number, e.g. "n.a." or "negativ"
+     */
+    public static final int INVALID = 4;
+
+    public enum Comparator {
+
+        LESS_THAN("<"),
+        LESS_OR_EQUAL("<="),
+        GREATER_OR_EQUAL(">="),
+        GREATER_THAN(">");
+
+        private final String code;
+
+        Comparator(String code) {
+            this.code = code;
+        }
+
+        public String getCode() {
+            return code;
+        }
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    int status = EMPTY;
+    long unscaled;
+    int scale;
+    Comparator comparator;
+
+    void reset() {
+        status = EMPTY;
+        unscaled = 0;
+        scale = 0;
+        comparator = null;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public boolean isNumeric() {
+        return status <= REPAIRED;
+    }
+
+    /*
+     * Both operands are exact doubles for lab value magnitudes, so the division
+     * rounds the same way Double.parseDouble does
+     */
+    public double getValue() {
+        return scale < POWERS_OF_TEN.length ? unscaled / POWERS_OF_TEN[scale] : unscaled / Math.pow(10, scale);
+    }
+
+    public long getUnscaled() {
+        return unscaled;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    /*
+     * Null if the value was written without comparator
+     */
+    public Comparator getComparator() {
+        return comparator;
+    }
+
+    /*
+     * Normalized text with point as decimal separator, e.g. "<0.5" or "30.2"
+     */
+    public String toPlainString() {
+        String number = BigDecimal.valueOf(unscaled, scale).toPlainString();
+        return comparator == null ? number : comparator.getCode() + number;
+    }
+
+}
@@ -0,0 +1,191 @@
+package com.api.extraction;
+
+/*
+ * Parses lab values as they come out of OCR and the LLM without throwing and
+ * without allocating, the result is written into a reusable LabValue
+ * Understands
+ * - decimal commas ("14,6") and thousands separators ("1.234,5", "1'234", "1 234")
+ * - decimal points that OCR turned into a space ("30 2")
+ * - comparators ("<0,5", ">= 60", "≤ 5") which end up in Quantity.comparator
+ * - trailing flags ("12.1 H", "4,4 +", "140 *")
+ */
+public final class LabValueParser {
+
+    private static final long MAX_UNSCALED = (Long.MAX_VALUE - 9) / 10;
+
+    private LabValueParser() {
+    }
+
+    /*
+     * Returns the status that is also stored in the target
+     */
+    public static int parse(CharSequence text, LabValue target) {
+        target.reset();
+        if (text == null) {
+            return target.status;
+        }
+        int start = skipSpaces(text, 0, text.length());
+        int end = stripFlags(text, start, text.length());
+        if (start == end) {
+            return target.status;
+        }
+        target.status = LabValue.INVALID;
+
+        char c = text.charAt(start);
+        if (c == '<' || c == '>') {
+            boolean orEqual = start + 1 < end && text.charAt(start + 1) == '=';
+            target.comparator = c == '<'
+                    ? orEqual ? LabValue.Comparator.LESS_OR_EQUAL : LabValue.Comparator.LESS_THAN
+                    : orEqual ? LabValue.Comparator.GREATER_OR_EQUAL : LabValue.Comparator.GREATER_THAN;
+            start += orEqual ? 2 : 1;
+        } else if (c == '≤') {
+            target.comparator = LabValue.Comparator.LESS_OR_EQUAL;
+            start++;
+        } else if (c == '≥') {
+            target.comparator = LabValue.Comparator.GREATER_OR_EQUAL;
+            start++;
+        }
+        start = skipSpaces(text, start, end);
+
+        boolean negative = false;
+        if (start < end && (text.charAt(start) == '-' || text.charAt(start) == '+')) {
+            negative = text.charAt(start) == '-';
+            start++;
+        }
+        if (start == end) {
+            return target.status;
+        }
+
+        // first pass, find out which separator is the decimal separator
+        int digits = 0;
+        int points = 0;
+        int commas = 0;
+        int lastPoint = -1;
+        int lastComma = -1;
+        int lastSpace = -1;
+        boolean grouped = false;
+        for (int i = start; i < end; i++) {
+            c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+            } else if (c == '.') {
+                points++;
+                lastPoint = i;
+            } else if (c == ',') {
+                commas++;
+                lastComma = i;
+            } else if (isSpace(c)) {
+                lastSpace = i;
+                grouped = true;
+            } else if (c == '\'' || c == '’') {
+                grouped = true;
+            } else {
+                return target.status;
+            }
+        }
+        if (digits == 0) {
+            return target.status;
+        }
+        int status = LabValue.OK;
+        int decimal = -1;
+        if (points > 0 && commas > 0) {
+            decimal = Math.max(lastPoint, lastComma);
+            if ((decimal == lastPoint ? points : commas) > 1) {
+                return target.status;
+            }
+            status = LabValue.LOCALIZED;
+        } else if (points + commas == 1) {
+            decimal = points == 1 ? lastPoint : lastComma;
+            status = commas == 1 ? LabValue.LOCALIZED : LabValue.OK;
+        } else if (points + commas > 1) {
+            status = LabValue.LOCALIZED;
+        }
+        if (lastSpace >= 0 && points + commas == 0 && end - lastSpace - 1 <= 2) {
+            decimal = lastSpace;
+            status = LabValue.REPAIRED;
+        } else if (grouped) {
+            status = Math.max(status, LabValue.LOCALIZED);
+        }
+
+        // second pass, collect the digits and check the thousands groups
+        long unscaled = 0;
+        int scale = 0;
+        int group = 0;
+        boolean separated = false;
+        boolean fraction = false;
+        for (int i = start; i < end; i++) {
+            c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (unscaled > MAX_UNSCALED) {
+                    return target.status;
+                }
+                unscaled = unscaled * 10 + (c - '0');
+                group++;
+                if (fraction) {
+                    scale++;
+                }
+                continue;
+            }
+            if (fraction) {
+                return target.status;
+            }
+            if (i == decimal) {
+                // digits in front of the decimal separator only need grouping if there were separators before
+                if (separated && group != 3) {
+                    return target.status;
+                }
+                fraction = true;
+            } else if (separated ? group != 3 : group < 1 || group > 3) {
+                return target.status;
+            }
+            separated = true;
+            group = 0;
+        }
+        if (!fraction && separated && group != 3) {
+            return target.status;
+        }
+        target.unscaled = negative ? -unscaled : unscaled;
+        target.scale = scale;
+        target.status = status;
+        return status;
+    }
+
+    /*
+     * Strips "H", "L", "+", "-", "*" and "!" markers of values outside the reference range
+     */
+    private static int stripFlags(CharSequence text, int start, int end) {
+        end = skipTrailingSpaces(text, start, end);
+        while (end > start) {
+            char c = text.charAt(end - 1);
+            if (c == '+' || c == '-' || c == '*' || c == '!') {
+                end--;
+            } else if ((c == 'H' || c == 'h' || c == 'L' || c == 'l')
+                    && end - 2 >= start && isSpace(text.charAt(end - 2))) {
+                end -= 2;
+            } else {
+                break;
+            }
+            end = skipTrailingSpaces(text, start, end);
+        }
+        return end;
+    }
+
+    private static int skipSpaces(CharSequence text, int start, int end) {
+        while (start < end && isSpace(text.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private static int skipTrailingSpaces(CharSequence text, int start, int end) {
+        while (end > start && isSpace(text.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\u00a0' || c == '\u202f';
+    }
+
+}
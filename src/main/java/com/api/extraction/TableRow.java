@@ -0,0 +1,19 @@
+package com.api.extraction;
+
+import lombok.Value;
+
+/*
+ * One analyte row of a lab table, name and value as they were read
+ */
+@Value
+public class TableRow {
+
+    String name;
+    String value;
+
+    /*
+     * Confidence that the value column was identified correctly
+     */
+    double layoutConfidence;
+
+}
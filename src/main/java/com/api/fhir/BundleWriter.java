@@ -0,0 +1,159 @@
+package com.api.fhir;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+
+import com.api.metrics.PipelineMetrics;
+
+/*
+ * Writes FHIR resources straight to the response stream
+ * The format is negotiated from the Accept header (application/fhir+json is the
+ * default, application/fhir+xml on request) and the body is gzipped if the
+ * client accepts it, so no String copy of the resource is ever built
+ * Parsers are configured once per thread because IParser is not thread safe
+ */
+@Component
+public class BundleWriter {
+
+    public static final MediaType FHIR_JSON = MediaType.parseMediaType("application/fhir+json");
+    public static final MediaType FHIR_XML = MediaType.parseMediaType("application/fhir+xml");
+
+    private static final String GZIP = "gzip";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final ThreadLocal<IParser> jsonParser;
+    private final ThreadLocal<IParser> xmlParser;
+
+    public BundleWriter(FhirContext fhirContext) {
+        // resources read back from a Bundle must not take the urn:uuid fullUrl as their id
+        this.jsonParser = ThreadLocal.withInitial(() -> fhirContext.newJsonParser().setPrettyPrint(false)
+                .setOverrideResourceIdWithBundleEntryFullUrl(false));
+        this.xmlParser = ThreadLocal.withInitial(() -> fhirContext.newXmlParser().setPrettyPrint(false));
+    }
+
+    public ResponseEntity<StreamingResponseBody> write(IBaseResource resource, HttpHeaders requestHeaders) {
+        return write(HttpStatus.OK, resource, requestHeaders);
+    }
+
+    public ResponseEntity<StreamingResponseBody> write(HttpStatus status, IBaseResource resource,
+            HttpHeaders requestHeaders) {
+        boolean xml = prefersXml(requestHeaders);
+        return write(status, xml, requestHeaders, writer -> encode(resource, xml, writer));
+    }
+
+    /*
+     * A body that is JSON already, like a DirectBundleSerializer.Report, with the
+     * same headers and compression as a resource
+     */
+    public ResponseEntity<StreamingResponseBody> writeJson(Body body, HttpHeaders requestHeaders) {
+        return write(HttpStatus.OK, false, requestHeaders, body);
+    }
+
+    private ResponseEntity<StreamingResponseBody> write(HttpStatus status, boolean xml, HttpHeaders requestHeaders,
+            Body body) {
+        boolean gzip = acceptsGzip(requestHeaders.getFirst(HttpHeaders.ACCEPT_ENCODING));
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(status)
+                .contentType(new MediaType(xml ? FHIR_XML : FHIR_JSON, StandardCharsets.UTF_8))
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, GZIP);
+        }
+        return response.body(outputStream -> {
+            GZIPOutputStream compressed = gzip ? new GZIPOutputStream(outputStream, BUFFER_SIZE) : null;
+            Writer writer = new OutputStreamWriter(compressed != null ? compressed : outputStream,
+                    StandardCharsets.UTF_8);
+            body.writeTo(writer);
+            writer.flush();
+            if (compressed != null) {
+                compressed.finish();
+            }
+        });
+    }
+
+    /*
+     * Encodes on the calling thread, for writers that are not an HTTP response
+     */
+    public void encode(IBaseResource resource, boolean xml, Writer writer) throws IOException {
+        PipelineMetrics.time(PipelineMetrics.SERIALIZE, () -> {
+            (xml ? xmlParser : jsonParser).get().encodeResourceToWriter(resource, writer);
+            return null;
+        });
+    }
+
+    /*
+     * Parses JSON on the calling thread, e.g. a stored Bundle
+     */
+    public <T extends IBaseResource> T parseJson(Class<T> type, String json) {
+        return jsonParser.get().parseResource(type, json);
+    }
+
+    public <T extends IBaseResource> T parseXml(Class<T> type, String xml) {
+        return xmlParser.get().parseResource(type, xml);
+    }
+
+    public static boolean prefersXml(HttpHeaders requestHeaders) {
+        return prefersXml(requestHeaders.getFirst(HttpHeaders.ACCEPT));
+    }
+
+    /*
+     * XML only if it has a higher quality than JSON, anything unknown falls back to JSON
+     */
+    static boolean prefersXml(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return false;
+        }
+        List<MediaType> mediaTypes;
+        try {
+            mediaTypes = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+        double json = 0;
+        double xml = 0;
+        for (MediaType mediaType : mediaTypes) {
+            double quality = mediaType.getQualityValue();
+            String subtype = mediaType.getSubtype();
+            if (subtype.equals("xml") || subtype.endsWith("+xml")) {
+                xml = Math.max(xml, quality);
+            } else if (subtype.equals("json") || subtype.endsWith("+json") || mediaType.isWildcardSubtype()) {
+                json = Math.max(json, quality);
+            }
+        }
+        return xml > json;
+    }
+
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase(GZIP)) {
+                return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    @FunctionalInterface
+    public interface Body {
+        void writeTo(Writer writer) throws IOException;
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.api.fhir;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/*
+ * The clock reading and the id source of one conversion
+ * BloodDetails and DirectBundleSerializer take them from here, so both can be
+ * run with the same fixed values and their output compared byte for byte
+ */
+public final class ConversionContext {
+
+    private final Instant now;
+    private final Supplier<UUID> ids;
+
+    public ConversionContext(Instant now, Supplier<UUID> ids) {
+        this.now = now;
+        this.ids = ids;
+    }
+
+    public static ConversionContext create() {
+        return new ConversionContext(Instant.now(), Ids::uuid7);
+    }
+
+    public Instant getNow() {
+        return now;
+    }
+
+    public String nextId() {
+        return ids.get().toString();
+    }
+
+    /*
+     * For Bundle.entry.fullUrl
+     */
+    public String nextUrn() {
+        return "urn:uuid:" + nextId();
+    }
+
+}
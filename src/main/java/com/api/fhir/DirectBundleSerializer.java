@@ -0,0 +1,414 @@
+package com.api.fhir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.InstantType;
+import org.hl7.fhir.r4.model.Quantity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.api.BloodDetails;
+import com.api.catalog.MappedAnalyte;
+import com.api.catalog.MappingPlan;
+import com.api.catalog.ValueType;
+import com.api.extraction.LabValue;
+import com.api.extraction.LabValueParser;
+import com.api.metrics.PipelineMetrics;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+
+/*
+ * Writes the Bundle of BloodDetails.toBundle as FHIR JSON without building the
+ * HAPI resources, straight from the fields with a streaming generator
+ * Elements come in the order HAPI encodes them and empty ones are left out
+ * the same way, so the output is byte for byte what BundleWriter writes for
+ * the HAPI Bundle
+ * Everything that is the same for every report, the profiles, identifier
+ * types, categories and the code and unit of every analyte, is encoded once
+ * Only JSON, XML still goes through HAPI
+ */
+@Component
+public class DirectBundleSerializer {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectBundleSerializer.class);
+
+    private static final JsonFactory jsonFactory = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+
+    private static final String PROFILES =
+            "https://www.medizininformatik-initiative.de/fhir/core/modul-labor/StructureDefinition/";
+    private static final String PID = "http://mii-standort.example.de/fhir/NamingSystem/pid";
+    private static final String FILL = "http://mii-standort.example.de/fhir/NamingSystem/fill";
+    private static final String V2_0203 = "http://terminology.hl7.org/CodeSystem/v2-0203";
+    private static final String LOINC = "http://loinc.org";
+
+    private static final String REPORT_META = encode(generator -> writeMeta(generator, PROFILES + "DiagnosticReportLab"));
+    private static final String REPORT_IDENTIFIER_TYPE = encode(generator -> writeCodeableConcept(generator,
+            V2_0203, "FILL", "Filler Identifier"));
+    private static final String REPORT_CATEGORY = encode(generator -> {
+        generator.writeStartArray();
+        writeCodeableConcept(generator,
+                LOINC, "26436-6", "Laboratory studies (set)",
+                "http://terminology.hl7.org/CodeSystem/v2-0074", "LAB", "Laboratory");
+        generator.writeEndArray();
+    });
+    private static final String REPORT_CODE = encode(generator -> writeCodeableConcept(generator,
+            LOINC, "11502-2", "Laboratory report"));
+    private static final String OBSERVATION_META = encode(generator -> writeMeta(generator, PROFILES + "ObservationLab"));
+    private static final String OBSERVATION_IDENTIFIER_TYPE = encode(generator -> writeCodeableConcept(generator,
+            V2_0203, "MR", "Medical record number"));
+    private static final String OBSERVATION_CATEGORY = encode(generator -> {
+        generator.writeStartArray();
+        writeCodeableConcept(generator,
+                LOINC, "58410-2", "CBC panel - Blood by Automated count",
+                "http://terminology.hl7.org/CodeSystem/observation-category", "laboratory", "Laboratory");
+        generator.writeEndArray();
+    });
+
+    private final MappingPlan plan;
+
+    /*
+     * Per analyte of the plan: the encoded code, null if it has none, and the
+     * encoded unit, system and code that follow the value of a quantity
+     */
+    private final String[] codes;
+    private final String[] units;
+
+    private final FhirProperties properties;
+
+    public DirectBundleSerializer(FhirProperties properties, MappingPlan plan) {
+        this.properties = properties;
+        this.plan = plan;
+        this.codes = new String[plan.size()];
+        this.units = new String[plan.size()];
+        for (int i = 0; i < plan.size(); i++) {
+            MappedAnalyte analyte = plan.get(i);
+            Coding coding = analyte.newCode().getCodingFirstRep();
+            if (!isBlank(coding.getSystem()) || !isBlank(coding.getCode()) || !isBlank(coding.getDisplay())) {
+                codes[i] = encode(generator -> writeCodeableConcept(generator,
+                        coding.getSystem(), coding.getCode(), coding.getDisplay()));
+            }
+            Quantity unit = analyte.newUnit();
+            String encoded = encode(generator -> {
+                generator.writeStartObject();
+                writeString(generator, "unit", unit.getUnit());
+                writeString(generator, "system", unit.getSystem());
+                writeString(generator, "code", unit.getCode());
+                generator.writeEndObject();
+            });
+            // the members without their braces, appended after value and comparator
+            units[i] = encoded.length() > 2 ? "," + encoded.substring(1, encoded.length() - 1) : "";
+        }
+    }
+
+    /*
+     * Off unless fhir.direct-json is set, BloodController and JobPipeline then
+     * only build HAPI resources for XML
+     */
+    public boolean isEnabled() {
+        return properties.isDirectJson();
+    }
+
+    public Report prepare(BloodDetails bloodDetails) {
+        return prepare(bloodDetails, ConversionContext.create());
+    }
+
+    /*
+     * Reads and parses the values and takes the ids, in the order
+     * BloodDetails.toObservations and toBundle take them
+     */
+    public Report prepare(BloodDetails bloodDetails, ConversionContext context) {
+        Report report = new Report(bloodDetails, plan.size());
+        LabValue parsed = new LabValue();
+        for (int i = 0; i < plan.size(); i++) {
+            MappedAnalyte analyte = plan.get(i);
+            String value = analyte.read(bloodDetails);
+            if (value == null) {
+                continue;
+            }
+            int index = report.size;
+            if (analyte.getValueType() == ValueType.STRING) {
+                report.texts[index] = value;
+            } else {
+                LabValueParser.parse(value, parsed);
+                if (!parsed.isNumeric()) {
+                    if (parsed.getStatus() == LabValue.INVALID) {
+                        logger.debug("Invalid {} value: {}", analyte.getField(), value);
+                        PipelineMetrics.analyteFailure(analyte.getField());
+                    }
+                    continue;
+                }
+                // Quantity.setValue(double) goes through BigDecimal.valueOf as well
+                report.numbers[index] = BigDecimal.valueOf(parsed.getValue());
+                report.texts[index] = parsed.getComparator() != null ? parsed.getComparator().getCode() : null;
+            }
+            report.analytes[index] = i;
+            report.identifiers[index] = analyte.getField() + "-" + context.nextId();
+            report.size++;
+        }
+        report.identifier = "DiagnosticReport/" + context.nextId();
+        InstantType issued = new InstantType();
+        issued.setValue(Date.from(context.getNow()));
+        report.issued = issued.getValueAsString();
+        // the same fallback to now as BloodDetails, observations have no date without one
+        report.effective = BloodDetails.effective(bloodDetails.getDate(), context.getNow()).getValueAsString();
+        report.observationEffective = bloodDetails.getDate() != null ? report.effective : null;
+        report.fullUrl = context.nextUrn();
+        for (int i = 0; i < report.size; i++) {
+            report.fullUrls[i] = context.nextUrn();
+        }
+        return report;
+    }
+
+    /*
+     * The values of one BloodDetails, ready to be written as Bundle
+     */
+    public final class Report {
+
+        private final BloodDetails bloodDetails;
+
+        private int size;
+
+        /*
+         * Per observation: the plan index of its analyte, its identifier value,
+         * its fullUrl, the number of a quantity and the comparator of a
+         * quantity or the text of a string value
+         */
+        private final int[] analytes;
+        private final String[] identifiers;
+        private final String[] fullUrls;
+        private final BigDecimal[] numbers;
+        private final String[] texts;
+
+        private String identifier;
+        private String fullUrl;
+        private String issued;
+        private String effective;
+        private String observationEffective;
+
+        private Report(BloodDetails bloodDetails, int capacity) {
+            this.bloodDetails = bloodDetails;
+            this.analytes = new int[capacity];
+            this.identifiers = new String[capacity];
+            this.fullUrls = new String[capacity];
+            this.numbers = new BigDecimal[capacity];
+            this.texts = new String[capacity];
+        }
+
+        /*
+         * The number of observations
+         */
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public void writeTo(Writer writer) throws IOException {
+            PipelineMetrics.time(PipelineMetrics.SERIALIZE, () -> {
+                try (JsonGenerator generator = jsonFactory.createGenerator(writer)) {
+                    writeBundle(generator);
+                }
+                return null;
+            });
+        }
+
+        private void writeBundle(JsonGenerator generator) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("resourceType", "Bundle");
+            generator.writeStringField("type", "collection");
+            generator.writeArrayFieldStart("entry");
+            generator.writeStartObject();
+            generator.writeStringField("fullUrl", fullUrl);
+            generator.writeFieldName("resource");
+            writeReport(generator);
+            generator.writeEndObject();
+            for (int i = 0; i < size; i++) {
+                generator.writeStartObject();
+                generator.writeStringField("fullUrl", fullUrls[i]);
+                generator.writeFieldName("resource");
+                writeObservation(generator, i);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+
+        private void writeReport(JsonGenerator generator) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("resourceType", "DiagnosticReport");
+            writeRaw(generator, "meta", REPORT_META);
+            generator.writeArrayFieldStart("identifier");
+            writeIdentifier(generator, REPORT_IDENTIFIER_TYPE, FILL, identifier);
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("basedOn");
+            generator.writeStartObject();
+            generator.writeFieldName("identifier");
+            writeIdentifier(generator, null, PID, bloodDetails.getOrderId());
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeStringField("status", "final");
+            writeRaw(generator, "category", REPORT_CATEGORY);
+            writeRaw(generator, "code", REPORT_CODE);
+            writeValueReference(generator, "subject", bloodDetails.getPatient());
+            generator.writeStringField("effectiveDateTime", effective);
+            generator.writeStringField("issued", issued);
+            String practitioner = bloodDetails.getPractitioner();
+            if (!isBlank(practitioner)) {
+                generator.writeArrayFieldStart("performer");
+                generator.writeStartObject();
+                writeValueIdentifier(generator, practitioner);
+                generator.writeStringField("display", practitioner);
+                generator.writeEndObject();
+                generator.writeEndArray();
+            }
+            if (size > 0) {
+                generator.writeArrayFieldStart("result");
+                for (int i = 0; i < size; i++) {
+                    generator.writeStartObject();
+                    generator.writeFieldName("identifier");
+                    writeIdentifier(generator, OBSERVATION_IDENTIFIER_TYPE, PID, identifiers[i]);
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+        }
+
+        private void writeObservation(JsonGenerator generator, int index) throws IOException {
+            int analyte = analytes[index];
+            generator.writeStartObject();
+            generator.writeStringField("resourceType", "Observation");
+            writeRaw(generator, "meta", OBSERVATION_META);
+            generator.writeArrayFieldStart("identifier");
+            writeIdentifier(generator, OBSERVATION_IDENTIFIER_TYPE, PID, identifiers[index]);
+            generator.writeEndArray();
+            generator.writeStringField("status", "final");
+            writeRaw(generator, "category", OBSERVATION_CATEGORY);
+            if (codes[analyte] != null) {
+                writeRaw(generator, "code", codes[analyte]);
+            }
+            writeValueReference(generator, "subject", bloodDetails.getPatient());
+            writeString(generator, "effectiveDateTime", observationEffective);
+            String practitioner = bloodDetails.getPractitioner();
+            if (!isBlank(practitioner)) {
+                generator.writeArrayFieldStart("performer");
+                generator.writeStartObject();
+                writeValueIdentifier(generator, practitioner);
+                generator.writeEndObject();
+                generator.writeEndArray();
+            }
+            if (numbers[index] != null) {
+                generator.writeObjectFieldStart("valueQuantity");
+                generator.writeFieldName("value");
+                generator.writeNumber(numbers[index]);
+                writeString(generator, "comparator", texts[index]);
+                generator.writeRaw(units[analyte]);
+                generator.writeEndObject();
+            } else {
+                writeString(generator, "valueString", texts[index]);
+            }
+            generator.writeEndObject();
+        }
+
+    }
+
+    @FunctionalInterface
+    private interface Fragment {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    private static String encode(Fragment fragment) {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = jsonFactory.createGenerator(writer)) {
+            fragment.write(generator);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    private static void writeRaw(JsonGenerator generator, String name, String encoded) throws IOException {
+        generator.writeFieldName(name);
+        generator.writeRawValue(encoded);
+    }
+
+    private static void writeMeta(JsonGenerator generator, String profile) throws IOException {
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("profile");
+        generator.writeString(profile);
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    /*
+     * One coding per system, code and display triple
+     */
+    private static void writeCodeableConcept(JsonGenerator generator, String... codings) throws IOException {
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("coding");
+        for (int i = 0; i < codings.length; i += 3) {
+            generator.writeStartObject();
+            writeString(generator, "system", codings[i]);
+            writeString(generator, "code", codings[i + 1]);
+            writeString(generator, "display", codings[i + 2]);
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    private static void writeIdentifier(JsonGenerator generator, String type, String system, String value)
+            throws IOException {
+        generator.writeStartObject();
+        if (type != null) {
+            writeRaw(generator, "type", type);
+        }
+        generator.writeStringField("system", system);
+        writeString(generator, "value", value);
+        generator.writeEndObject();
+    }
+
+    /*
+     * A reference that only has an identifier value, left out if the value is blank
+     */
+    private static void writeValueReference(JsonGenerator generator, String name, String value) throws IOException {
+        if (isBlank(value)) {
+            return;
+        }
+        generator.writeObjectFieldStart(name);
+        writeValueIdentifier(generator, value);
+        generator.writeEndObject();
+    }
+
+    private static void writeValueIdentifier(JsonGenerator generator, String value) throws IOException {
+        generator.writeObjectFieldStart("identifier");
+        generator.writeStringField("value", value);
+        generator.writeEndObject();
+    }
+
+    /*
+     * HAPI leaves out blank primitives
+     */
+    private static void writeString(JsonGenerator generator, String name, String value) throws IOException {
+        if (!isBlank(value)) {
+            generator.writeStringField(name, value);
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+}
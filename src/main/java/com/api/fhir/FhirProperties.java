@@ -0,0 +1,47 @@
+package com.api.fhir;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("fhir")
+public class FhirProperties {
+
+    /**
+     * Write JSON Bundles with DirectBundleSerializer instead of HAPI, XML always goes through HAPI
+     */
+    private boolean directJson = false;
+
+    /**
+     * Load the FHIR model and run the conversion once at startup, before the app reports ready
+     */
+    private boolean warmUp = true;
+
+    /**
+     * Stop the app after the warm up, for the training run of the class data sharing archive
+     */
+    private boolean exitAfterWarmUp = false;
+
+    public boolean isDirectJson() {
+        return directJson;
+    }
+
+    public void setDirectJson(boolean directJson) {
+        this.directJson = directJson;
+    }
+
+    public boolean isWarmUp() {
+        return warmUp;
+    }
+
+    public void setWarmUp(boolean warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    public boolean isExitAfterWarmUp() {
+        return exitAfterWarmUp;
+    }
+
+    public void setExitAfterWarmUp(boolean exitAfterWarmUp) {
+        this.exitAfterWarmUp = exitAfterWarmUp;
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.api.fhir;
+
+import java.io.StringWriter;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.DiagnosticReport;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import com.api.BloodDetails;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/*
+ * FhirContext only scans the R4 model classes of a resource type when it is
+ * first encoded or parsed, without this the first request pays for it
+ * Runs a random report through the same steps as POST /blood: JSON to
+ * BloodDetails, observations and Bundle, encoded as JSON and XML and parsed
+ * back. Runners finish before the readiness state turns to accepting
+ * traffic, so /actuator/health/readiness only reports ready once this is done
+ * Encoding and parsing go through BundleWriter, so its parser setup runs
+ * here as well and this thread keeps its primed parsers, request threads
+ * create theirs from the definitions already loaded into the FhirContext
+ */
+@Component
+public class FhirWarmUp implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(FhirWarmUp.class);
+
+    private final FhirProperties properties;
+    private final FhirContext fhirContext;
+    private final BundleWriter bundleWriter;
+    private final ObjectMapper objectMapper;
+    private final DirectBundleSerializer directBundleSerializer;
+    private final ApplicationContext applicationContext;
+
+    public FhirWarmUp(FhirProperties properties, FhirContext fhirContext, BundleWriter bundleWriter,
+            ObjectMapper objectMapper, DirectBundleSerializer directBundleSerializer,
+            ApplicationContext applicationContext) {
+        this.properties = properties;
+        this.fhirContext = fhirContext;
+        this.bundleWriter = bundleWriter;
+        this.objectMapper = objectMapper;
+        this.directBundleSerializer = directBundleSerializer;
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        if (properties.isWarmUp()) {
+            warmUp();
+        }
+        if (properties.isExitAfterWarmUp()) {
+            logger.info("Exiting after the warm up");
+            System.exit(SpringApplication.exit(applicationContext, () -> 0));
+        }
+    }
+
+    void warmUp() throws Exception {
+        long started = System.nanoTime();
+        fhirContext.getResourceDefinition(Bundle.class);
+        fhirContext.getResourceDefinition(DiagnosticReport.class);
+        fhirContext.getResourceDefinition(Observation.class);
+        fhirContext.getResourceDefinition(OperationOutcome.class);
+        BloodDetails random = new BloodDetails();
+        random.fillRandom();
+        BloodDetails bloodDetails = objectMapper.readValue(objectMapper.writeValueAsString(random), BloodDetails.class);
+        Bundle bundle = bloodDetails.toBundle(bloodDetails.toObservations());
+        StringWriter json = new StringWriter();
+        bundleWriter.encode(bundle, false, json);
+        bundleWriter.parseJson(Bundle.class, json.toString());
+        StringWriter xml = new StringWriter();
+        bundleWriter.encode(bundle, true, xml);
+        bundleWriter.parseXml(Bundle.class, xml.toString());
+        // only counts in the metrics if it is used for requests as well
+        if (directBundleSerializer.isEnabled()) {
+            directBundleSerializer.prepare(bloodDetails).writeTo(new StringWriter(json.getBuffer().length()));
+        }
+        logger.info("Warmed up the FHIR model and parsers in {} ms", (System.nanoTime() - started) / 1_000_000);
+    }
+
+}
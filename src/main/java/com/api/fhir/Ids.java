@@ -0,0 +1,40 @@
+package com.api.fhir;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * Time ordered UUIDs (version 7 of RFC 9562) for identifiers and fullUrls
+ * 48 bits of Unix milliseconds followed by 74 random bits from the random
+ * generator of the calling thread, so threads never share state and ids
+ * of later milliseconds sort after earlier ones
+ * UUID.randomUUID() instead goes through one SecureRandom for all threads
+ */
+public final class Ids {
+
+    private static final long VERSION_7 = 0x7000L;
+    private static final long VARIANT = 0x8000_0000_0000_0000L;
+    private static final long RANDOM_B = 0x3FFF_FFFF_FFFF_FFFFL;
+
+    private Ids() {
+    }
+
+    public static UUID uuid7() {
+        return uuid7(System.currentTimeMillis());
+    }
+
+    static UUID uuid7(long millis) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long msb = (millis << 16) | VERSION_7 | (random.nextInt() & 0x0FFF);
+        long lsb = VARIANT | (random.nextLong() & RANDOM_B);
+        return new UUID(msb, lsb);
+    }
+
+    /*
+     * For Bundle.entry.fullUrl
+     */
+    public static String urn() {
+        return "urn:uuid:" + uuid7();
+    }
+
+}
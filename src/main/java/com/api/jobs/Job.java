@@ -0,0 +1,167 @@
+package com.api.jobs;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.hl7.fhir.r4.model.Bundle;
+
+import com.api.BloodDetails;
+import com.api.fhir.DirectBundleSerializer;
+import com.api.storage.DocumentHandle;
+
+/*
+ * One upload on its way through the pipeline
+ * The getters make up the status response, the package private fields carry
+ * the intermediate results from one stage to the next and are only touched by
+ * the stage that currently owns the job
+ */
+public class Job {
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private final String id;
+    private final String filename;
+    private final Instant created = Instant.now();
+    private final Map<JobStage, Long> durations = new ConcurrentHashMap<>();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile JobStage stage = JobStage.STORE;
+    private volatile String error;
+    private volatile Instant finished;
+    private volatile int observations;
+    private volatile boolean cached;
+
+    byte[] content;
+    Path directory;
+    Path upload;
+    DocumentHandle document;
+    String documentHash;
+    List<String> table;
+    BloodDetails bloodDetails;
+    Bundle bundle;
+    DirectBundleSerializer.Report directBundle;
+    Path resultFile;
+
+    Job(String id, String filename, byte[] content) {
+        this.id = id;
+        this.filename = filename;
+        this.content = content;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public Instant getCreated() {
+        return created;
+    }
+
+    public Instant getFinished() {
+        return finished;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /*
+     * The stage the job waits for or runs in, the last one once it is done
+     */
+    public JobStage getStage() {
+        return stage;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    /*
+     * Where the FHIR Bundle can be fetched once the job is completed
+     */
+    public String getResult() {
+        return status == Status.COMPLETED ? "/jobs/" + id + "/result" : null;
+    }
+
+    /*
+     * SHA-256 of the upload, known once it is stored
+     */
+    public String getDocumentHash() {
+        return documentHash;
+    }
+
+    /*
+     * The result was taken from an earlier upload of the same document
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    public int getObservations() {
+        return observations;
+    }
+
+    /*
+     * Milliseconds spent in each finished stage
+     */
+    public Map<JobStage, Long> getDurations() {
+        return durations;
+    }
+
+    public boolean isDone() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    void queued(JobStage stage) {
+        this.stage = stage;
+        this.status = Status.QUEUED;
+    }
+
+    void running(JobStage stage) {
+        this.stage = stage;
+        this.status = Status.RUNNING;
+    }
+
+    void finished(JobStage stage, long millis) {
+        durations.put(stage, millis);
+    }
+
+    void setObservations(int observations) {
+        this.observations = observations;
+    }
+
+    void cached() {
+        cached = true;
+    }
+
+    void completed() {
+        finished = Instant.now();
+        status = Status.COMPLETED;
+    }
+
+    void failed(String error) {
+        this.error = error;
+        finished = Instant.now();
+        status = Status.FAILED;
+    }
+
+    /*
+     * Drops the intermediate results, only the result file is kept
+     */
+    void release() {
+        content = null;
+        table = null;
+        bloodDetails = null;
+        bundle = null;
+        directBundle = null;
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.api.jobs;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import com.api.fhir.BundleWriter;
+
+import io.swagger.v3.oas.annotations.Operation;
+
+@RestController
+public class JobController {
+
+    private final JobPipeline jobPipeline;
+
+    public JobController(JobPipeline jobPipeline) {
+        this.jobPipeline = jobPipeline;
+    }
+
+    @Operation(summary = "Upload a PDF and process it asynchronously, answers with the job")
+    @PostMapping("/jobs")
+    public ResponseEntity<Job> submit(@RequestParam("file") MultipartFile file) throws IOException {
+        Job job;
+        try {
+            job = jobPipeline.submit(file.getOriginalFilename(), file.getBytes());
+        } catch (RejectedExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many jobs queued", e);
+        }
+        URI location = ServletUriComponentsBuilder.fromCurrentContextPath().path("/jobs/{id}")
+                .buildAndExpand(job.getId()).toUri();
+        return ResponseEntity.accepted().location(location).body(job);
+    }
+
+    @Operation(summary = "Queue depth of every stage")
+    @GetMapping("/jobs")
+    public Map<JobStage, Map<String, Integer>> stages() {
+        return jobPipeline.getQueueDepths();
+    }
+
+    @Operation(summary = "Status of a job")
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<Job> status(@PathVariable String id) {
+        return ResponseEntity.of(jobPipeline.find(id));
+    }
+
+    @Operation(summary = "FHIR Bundle of a completed job")
+    @GetMapping("/jobs/{id}/result")
+    public ResponseEntity<Resource> result(@PathVariable String id) {
+        Path result = jobPipeline.find(id).flatMap(jobPipeline::getResult).orElse(null);
+        if (result == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok().contentType(BundleWriter.FHIR_JSON).body(new FileSystemResource(result));
+    }
+
+}
@@ -0,0 +1,331 @@
+package com.api.jobs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hl7.fhir.r4.model.Observation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import com.api.BloodService;
+import com.api.cache.CachedResult;
+import com.api.cache.DocumentResultCache;
+import com.api.export.ReportStore;
+import com.api.fhir.BundleWriter;
+import com.api.fhir.DirectBundleSerializer;
+import com.api.metrics.PipelineMetrics;
+import com.api.storage.StorageException;
+import com.api.util.Hashes;
+
+import jakarta.annotation.PreDestroy;
+
+/*
+ * Runs uploads through STORE, OCR, EXTRACT, MAP and SERIALIZE
+ * Every stage has its own bounded executor, a finished stage hands the job to
+ * the queue of the next one, so a slow LLM call in EXTRACT only occupies the
+ * EXTRACT threads while the cheap stages keep moving
+ * A full queue blocks the previous stage and rejects new uploads
+ * Documents with a cached result are completed right after STORE, only OCR
+ * and EXTRACT are skipped, MAP and SERIALIZE run again to issue new ids
+ * Every result Bundle is appended to the ReportStore for the bulk export
+ */
+@Service
+public class JobPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobPipeline.class);
+
+    /*
+     * Waits for room in the queue instead of failing, gives backpressure between stages
+     */
+    private static final RejectedExecutionHandler WAIT_FOR_QUEUE = (runnable, executor) -> {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Job pipeline is shut down");
+        }
+        try {
+            executor.getQueue().put(runnable);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while handing over a job", e);
+        }
+    };
+
+    private final JobProperties properties;
+    private final BloodService bloodService;
+    private final BundleWriter bundleWriter;
+    private final DirectBundleSerializer directBundleSerializer;
+    private final DocumentResultCache resultCache;
+    private final ReportStore reportStore;
+    private final Map<JobStage, ThreadPoolExecutor> executors = new EnumMap<>(JobStage.class);
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final Queue<Job> finished = new ConcurrentLinkedQueue<>();
+
+    public JobPipeline(JobProperties properties, BloodService bloodService, BundleWriter bundleWriter,
+            DirectBundleSerializer directBundleSerializer, DocumentResultCache resultCache, ReportStore reportStore) {
+        this.properties = properties;
+        this.bloodService = bloodService;
+        this.bundleWriter = bundleWriter;
+        this.directBundleSerializer = directBundleSerializer;
+        this.resultCache = resultCache;
+        this.reportStore = reportStore;
+        for (JobStage stage : JobStage.values()) {
+            JobProperties.StageProperties stageProperties = properties.getStage(stage);
+            // in flat storage mode OCR.py reads upload-dir/data.pdf, so OCR runs one job at a time
+            int threads = stage == JobStage.OCR && !bloodService.isConcurrent()
+                    ? 1
+                    : Math.max(1, stageProperties.getThreads());
+            String name = "job-" + stage.name().toLowerCase() + "-";
+            AtomicInteger count = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, stageProperties.getQueueCapacity())),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, name + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    stage == JobStage.STORE ? new ThreadPoolExecutor.AbortPolicy() : WAIT_FOR_QUEUE);
+            // WAIT_FOR_QUEUE bypasses execute, so the workers have to exist already
+            executor.prestartAllCoreThreads();
+            executors.put(stage, executor);
+        }
+    }
+
+    /*
+     * Throws RejectedExecutionException if the STORE queue is full
+     */
+    public Job submit(String filename, byte[] content) {
+        if (content.length == 0) {
+            throw new StorageException("Failed to store empty file.");
+        }
+        Job job = new Job(UUID.randomUUID().toString(), filename, content);
+        jobs.put(job.getId(), job);
+        try {
+            enqueue(job, JobStage.STORE);
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw e;
+        }
+        return job;
+    }
+
+    public Optional<Job> find(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    public Optional<Path> getResult(Job job) {
+        return job.getStatus() == Job.Status.COMPLETED ? Optional.of(job.resultFile) : Optional.empty();
+    }
+
+    /*
+     * Waiting and running jobs per stage
+     */
+    public Map<JobStage, Map<String, Integer>> getQueueDepths() {
+        Map<JobStage, Map<String, Integer>> depths = new EnumMap<>(JobStage.class);
+        executors.forEach((stage, executor) -> {
+            Map<String, Integer> depth = new LinkedHashMap<>();
+            depth.put("queued", executor.getQueue().size());
+            depth.put("running", executor.getActiveCount());
+            depth.put("threads", executor.getMaximumPoolSize());
+            depth.put("remainingCapacity", executor.getQueue().remainingCapacity());
+            depths.put(stage, depth);
+        });
+        return depths;
+    }
+
+    private void enqueue(Job job, JobStage stage) {
+        job.queued(stage);
+        executors.get(stage).execute(() -> run(job, stage));
+    }
+
+    private void run(Job job, JobStage stage) {
+        job.running(stage);
+        long started = System.nanoTime();
+        try {
+            switch (stage) {
+                case STORE:
+                    store(job);
+                    replay(job);
+                    break;
+                case OCR:
+                    if (job.document != null) {
+                        job.table = bloodService.ocr(job.document);
+                    } else {
+                        job.table = bloodService.ocr(job.upload);
+                        Files.deleteIfExists(job.upload);
+                    }
+                    break;
+                case EXTRACT:
+                    job.bloodDetails = bloodService.extract(job.table);
+                    break;
+                case MAP:
+                    map(job);
+                    break;
+                case SERIALIZE:
+                    serialize(job);
+                    break;
+            }
+        } catch (IOException | RuntimeException e) {
+            PipelineMetrics.recordJobStage(stage.name().toLowerCase(), "error", System.nanoTime() - started);
+            logger.warn("Job {} failed in {}", job.getId(), stage, e);
+            job.release();
+            job.failed(stage + ": " + e.getMessage());
+            retire(job);
+            return;
+        }
+        long elapsed = System.nanoTime() - started;
+        PipelineMetrics.recordJobStage(stage.name().toLowerCase(), job.isCached() ? "cached" : "success", elapsed);
+        job.finished(stage, elapsed / 1_000_000);
+        JobStage next = job.isCached() ? null : stage.next();
+        if (next == null) {
+            job.release();
+            job.completed();
+            logger.info("Job {} completed with {} observations in {}", job.getId(), job.getObservations(),
+                    job.getDurations());
+            retire(job);
+            return;
+        }
+        try {
+            enqueue(job, next);
+        } catch (RejectedExecutionException e) {
+            job.release();
+            job.failed(next + ": " + e.getMessage());
+            retire(job);
+        }
+    }
+
+    /*
+     * Content addressed storage takes the upload directly, otherwise it waits in
+     * the job folder until the OCR stage moves it into the upload folder
+     */
+    private void store(Job job) throws IOException {
+        job.directory = Path.of(properties.getLocation()).resolve(job.getId());
+        Files.createDirectories(job.directory);
+        if (bloodService.isConcurrent()) {
+            job.document = bloodService.store(job.getFilename(), new ByteArrayInputStream(job.content));
+            job.documentHash = job.document.getHash();
+            job.content = null;
+            if (job.document.isDeduplicated()) {
+                logger.info("Job {} uploaded known document {}", job.getId(), job.document.getHash());
+            }
+            return;
+        }
+        String name = job.getFilename() == null ? "upload.pdf" : Paths.get(job.getFilename()).getFileName().toString();
+        job.upload = job.directory.resolve(name);
+        job.documentHash = Hashes.sha256Hex(job.content);
+        Files.write(job.upload, job.content);
+        job.content = null;
+    }
+
+    /*
+     * Completes the job with the BloodDetails of an earlier upload of the same
+     * document, the stored bundle is not reused because its identifiers and
+     * fullUrls belong to the earlier report
+     */
+    private void replay(Job job) throws IOException {
+        Optional<CachedResult> cached = resultCache.get(job.documentHash);
+        if (cached.isEmpty()) {
+            return;
+        }
+        job.bloodDetails = resultCache.readBloodDetails(cached.get());
+        map(job);
+        write(job);
+        if (job.upload != null) {
+            Files.deleteIfExists(job.upload);
+        }
+        job.cached();
+        logger.info("Job {} reuses the cached result of {}", job.getId(), job.documentHash);
+    }
+
+    private void map(Job job) {
+        // results are JSON only, so the HAPI resources can be skipped entirely
+        if (directBundleSerializer.isEnabled()) {
+            DirectBundleSerializer.Report report = directBundleSerializer.prepare(job.bloodDetails);
+            if (report.isEmpty()) {
+                throw new IllegalStateException("No observations");
+            }
+            job.setObservations(report.size());
+            PipelineMetrics.observations(report.size());
+            job.directBundle = report;
+            return;
+        }
+        List<Observation> observations = job.bloodDetails.toObservations();
+        if (observations.isEmpty()) {
+            throw new IllegalStateException("No observations");
+        }
+        job.setObservations(observations.size());
+        PipelineMetrics.observations(observations.size());
+        job.bundle = job.bloodDetails.toBundle(observations);
+    }
+
+    private void serialize(Job job) throws IOException {
+        byte[] content = write(job);
+        resultCache.put(job.documentHash, job.bloodDetails, job.getObservations(), content);
+    }
+
+    private byte[] write(Job job) throws IOException {
+        Path result = job.directory.resolve("bundle.json");
+        ByteArrayOutputStream bundle = new ByteArrayOutputStream(16 * 1024);
+        try (Writer writer = new OutputStreamWriter(bundle, StandardCharsets.UTF_8)) {
+            if (job.directBundle != null) {
+                job.directBundle.writeTo(writer);
+            } else {
+                bundleWriter.encode(job.bundle, false, writer);
+            }
+        }
+        byte[] content = bundle.toByteArray();
+        Files.write(result, content);
+        reportStore.append(content);
+        job.resultFile = result;
+        return content;
+    }
+
+    /*
+     * Keeps the newest finished jobs and deletes the files of older ones
+     */
+    private void retire(Job job) {
+        finished.add(job);
+        while (finished.size() > properties.getMaxJobs()) {
+            Job oldest = finished.poll();
+            if (oldest == null) {
+                break;
+            }
+            jobs.remove(oldest.getId());
+            if (oldest.directory != null) {
+                try {
+                    FileSystemUtils.deleteRecursively(oldest.directory);
+                } catch (IOException e) {
+                    logger.warn("Could not delete job folder {}", oldest.directory, e);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executors.values().forEach(ThreadPoolExecutor::shutdownNow);
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.api.jobs;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("jobs")
+public class JobProperties {
+
+    /**
+     * Folder for the uploads and results of the jobs, one subfolder per job
+     */
+    private String location = "job-dir";
+
+    /**
+     * Finished jobs that are kept, the oldest ones are removed first
+     */
+    private int maxJobs = 1000;
+
+    /**
+     * Threads and queue capacity per stage, e.g. jobs.stages.extract.threads=2
+     */
+    private Map<JobStage, StageProperties> stages = new EnumMap<>(JobStage.class);
+
+    public JobProperties() {
+        for (JobStage stage : JobStage.values()) {
+            stages.put(stage, new StageProperties());
+        }
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public int getMaxJobs() {
+        return maxJobs;
+    }
+
+    public void setMaxJobs(int maxJobs) {
+        this.maxJobs = maxJobs;
+    }
+
+    public Map<JobStage, StageProperties> getStages() {
+        return stages;
+    }
+
+    public void setStages(Map<JobStage, StageProperties> stages) {
+        this.stages = stages;
+    }
+
+    public StageProperties getStage(JobStage stage) {
+        return stages.getOrDefault(stage, new StageProperties());
+    }
+
+    public static class StageProperties {
+
+        /**
+         * Jobs processed by the stage at the same time
+         */
+        private int threads = 1;
+
+        /**
+         * Jobs waiting for the stage, a full queue holds back the previous stage
+         * and rejects new uploads
+         */
+        private int queueCapacity = 16;
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+    }
+
+}
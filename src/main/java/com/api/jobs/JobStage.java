@@ -0,0 +1,19 @@
+package com.api.jobs;
+
+/*
+ * Stages of an upload in processing order, each one has its own executor
+ */
+public enum JobStage {
+
+    STORE, OCR, EXTRACT, MAP, SERIALIZE;
+
+    private static final JobStage[] STAGES = values();
+
+    /*
+     * Null after the last stage
+     */
+    public JobStage next() {
+        return ordinal() + 1 < STAGES.length ? STAGES[ordinal() + 1] : null;
+    }
+
+}
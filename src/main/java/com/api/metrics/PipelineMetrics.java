@@ -0,0 +1,104 @@
+package com.api.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+/*
+ * Timers and counters of the steps from an upload to the FHIR Bundle
+ * Recorded on the global registry, Spring Boot adds its Prometheus registry
+ * to it, so static helpers like AppUtils.fixJson can be measured too and unit
+ * tests without a registry record nothing
+ * Stage names are fixed constants, analyte tags come from the mapping plan,
+ * so the number of time series stays bounded
+ */
+public final class PipelineMetrics {
+
+    public static final String STAGE = "blood.stage";
+    public static final String JOB_STAGE = "blood.job.stage";
+    public static final String PROCESS_START = "blood.process.start";
+    public static final String ANALYTE_FAILURES = "blood.analyte.failures";
+    public static final String OBSERVATIONS = "blood.observations";
+
+    public static final String STORE = "store";
+    public static final String TEXT_LAYER = "text-layer";
+    public static final String OCR = "ocr";
+    public static final String OCR_RENDER = "ocr-render";
+    public static final String OCR_RECOGNIZE = "ocr-recognize";
+    public static final String RULES = "rules";
+    public static final String LLM = "llm";
+    public static final String LLM_WAIT = "llm-wait";
+    public static final String LLM_GENERATE = "llm-generate";
+    public static final String FIX_JSON = "fix-json";
+    public static final String PARSE = "parse";
+    public static final String MAP = "map";
+    public static final String SERIALIZE = "serialize";
+
+    /*
+     * A step that may throw, the exception decides the outcome tag
+     */
+    @FunctionalInterface
+    public interface Step<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    private PipelineMetrics() {
+    }
+
+    public static <T, E extends Exception> T time(String stage, Step<T, E> step) throws E {
+        long started = System.nanoTime();
+        String outcome = "error";
+        try {
+            T result = step.run();
+            outcome = "success";
+            return result;
+        } finally {
+            record(stage, outcome, System.nanoTime() - started);
+        }
+    }
+
+    public static void record(String stage, String outcome, long nanos) {
+        Timer.builder(STAGE)
+                .tag("stage", stage)
+                .tag("outcome", outcome)
+                .register(Metrics.globalRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /*
+     * Stage durations of the job pipeline, they include queueing inside a stage
+     * like waiting for an OCR engine
+     */
+    public static void recordJobStage(String stage, String outcome, long nanos) {
+        Timer.builder(JOB_STAGE)
+                .tag("stage", stage)
+                .tag("outcome", outcome)
+                .register(Metrics.globalRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /*
+     * phase "spawn" is the fork of the process, "ready" until it can take work,
+     * for GPT4ALL.py that includes loading the model
+     */
+    public static void recordProcessStart(String process, String phase, long nanos) {
+        Timer.builder(PROCESS_START)
+                .tag("process", process)
+                .tag("phase", phase)
+                .register(Metrics.globalRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /*
+     * An analyte value that was there but could not be turned into a FHIR value
+     */
+    public static void analyteFailure(String analyte) {
+        Metrics.counter(ANALYTE_FAILURES, "analyte", analyte).increment();
+    }
+
+    public static void observations(int count) {
+        Metrics.summary(OBSERVATIONS).record(count);
+    }
+
+}
@@ -0,0 +1,10 @@
+package com.api.nlp;
+
+/*
+ * Completes prompts with the local language model
+ */
+public interface NlpClient {
+
+    String complete(String prompt);
+
+}
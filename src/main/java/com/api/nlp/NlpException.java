@@ -0,0 +1,13 @@
+package com.api.nlp;
+
+
+public class NlpException extends RuntimeException {
+
+    public NlpException(String message) {
+        super(message);
+    }
+
+    public NlpException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,120 @@
+package com.api.nlp;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("nlp")
+public class NlpProperties {
+
+    /**
+     * Python interpreter used to run the worker script
+     */
+    private String python = "python3";
+
+    /**
+     * Worker script, started once per pooled worker in --serve mode
+     */
+    private String script = "src/main/resources/GPT4ALL.py";
+
+    /**
+     * Model file loaded by every worker
+     */
+    private String model = "qwen2-1_5b-instruct-q4_0.gguf";
+
+    /**
+     * Number of long-lived workers, 0 starts a fresh process per prompt
+     */
+    private int poolSize = 1;
+
+    /**
+     * How long a request waits for an idle worker
+     */
+    private Duration acquireTimeout = Duration.ofMinutes(2);
+
+    /**
+     * Workers that do not answer within this time are killed and replaced
+     */
+    private Duration requestTimeout = Duration.ofMinutes(5);
+
+    /**
+     * Delay before a crashed or failed worker is started again
+     */
+    private Duration restartDelay = Duration.ofSeconds(5);
+
+    /**
+     * Recycle a worker after this many prompts, 0 keeps it forever
+     */
+    private int maxRequestsPerWorker = 0;
+
+    public List<String> command() {
+        return List.of(python, new File(script).getAbsolutePath(), "--serve", model);
+    }
+
+    public String getPython() {
+        return python;
+    }
+
+    public void setPython(String python) {
+        this.python = python;
+    }
+
+    public String getScript() {
+        return script;
+    }
+
+    public void setScript(String script) {
+        this.script = script;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public Duration getAcquireTimeout() {
+        return acquireTimeout;
+    }
+
+    public void setAcquireTimeout(Duration acquireTimeout) {
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public void setRequestTimeout(Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    public Duration getRestartDelay() {
+        return restartDelay;
+    }
+
+    public void setRestartDelay(Duration restartDelay) {
+        this.restartDelay = restartDelay;
+    }
+
+    public int getMaxRequestsPerWorker() {
+        return maxRequestsPerWorker;
+    }
+
+    public void setMaxRequestsPerWorker(int maxRequestsPerWorker) {
+        this.maxRequestsPerWorker = maxRequestsPerWorker;
+    }
+
+}
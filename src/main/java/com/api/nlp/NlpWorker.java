@@ -0,0 +1,166 @@
+package com.api.nlp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.api.metrics.PipelineMetrics;
+
+/*
+ * A single long-lived GPT4ALL.py process started in --serve mode
+ * The model is loaded once, afterwards prompts and responses are exchanged
+ * as "@@FRAME <length>" framed UTF-8 payloads over stdin and stdout, a failed
+ * generation is answered with an "@@ERROR <length>" frame holding the message
+ * Instances are not thread safe, the pool hands each worker to one caller at a time
+ */
+class NlpWorker implements Closeable {
+
+    private static final String FRAME_MARKER = "@@FRAME ";
+    private static final String ERROR_MARKER = "@@ERROR ";
+    private static final String READY = "READY";
+    private static final String PROCESS = "gpt4all";
+
+    private final Process process;
+    private final OutputStream input;
+    private final InputStream output;
+    private int served;
+
+    private NlpWorker(Process process) {
+        this.process = process;
+        this.input = new BufferedOutputStream(process.getOutputStream());
+        this.output = new BufferedInputStream(process.getInputStream());
+    }
+
+    /*
+     * Start the process and block until the model is loaded
+     */
+    static NlpWorker start(List<String> command) throws IOException {
+        ProcessBuilder processBuilder = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT);
+        long started = System.nanoTime();
+        NlpWorker worker = new NlpWorker(processBuilder.start());
+        long spawned = System.nanoTime();
+        PipelineMetrics.recordProcessStart(PROCESS, "spawn", spawned - started);
+        try {
+            String hello = worker.readFrame();
+            if (!READY.equals(hello)) {
+                throw new IOException("NLP worker did not report ready: " + hello);
+            }
+            PipelineMetrics.recordProcessStart(PROCESS, "ready", System.nanoTime() - spawned);
+        } catch (IOException | NlpException e) {
+            worker.close();
+            throw e;
+        }
+        return worker;
+    }
+
+    /*
+     * Throws NlpException if the model failed on the prompt, the exchange is
+     * complete then and the worker can take the next one
+     */
+    String complete(String prompt) throws IOException {
+        writeFrame(prompt);
+        served++;
+        return readFrame();
+    }
+
+    int getServed() {
+        return served;
+    }
+
+    boolean isAlive() {
+        return process.isAlive();
+    }
+
+    /*
+     * Used by the request watchdog, the blocked reader then fails with EOF
+     */
+    void kill() {
+        process.destroyForcibly();
+    }
+
+    private void writeFrame(String payload) throws IOException {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        input.write((FRAME_MARKER + bytes.length + "\n").getBytes(StandardCharsets.US_ASCII));
+        input.write(bytes);
+        input.flush();
+    }
+
+    private String readFrame() throws IOException {
+        String header;
+        do {
+            header = readLine();
+            if (header == null) {
+                throw new EOFException("NLP worker exited with code " + exitCode());
+            }
+        } while (!header.startsWith(FRAME_MARKER) && !header.startsWith(ERROR_MARKER));
+        boolean error = header.startsWith(ERROR_MARKER);
+        int length;
+        try {
+            // both markers have the same length
+            length = Integer.parseInt(header.substring(FRAME_MARKER.length()).trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("NLP worker sent a bad frame header: " + header, e);
+        }
+        if (length < 0) {
+            throw new IOException("NLP worker sent a bad frame header: " + header);
+        }
+        byte[] payload = output.readNBytes(length);
+        if (payload.length < length) {
+            throw new EOFException("NLP worker exited in the middle of a response");
+        }
+        if (error) {
+            throw new NlpException("NLP worker failed on the prompt: " + new String(payload, StandardCharsets.UTF_8));
+        }
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(32);
+        int b;
+        while ((b = output.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    private String exitCode() {
+        try {
+            return process.waitFor(1, TimeUnit.SECONDS) ? String.valueOf(process.exitValue()) : "unknown";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "unknown";
+        }
+    }
+
+    /*
+     * Closing stdin ends the serve loop, the process is killed if it does not exit on its own
+     */
+    @Override
+    public void close() {
+        try {
+            input.close();
+        } catch (IOException e) {
+            // the process is gone already
+        }
+        try {
+            if (!process.waitFor(1, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
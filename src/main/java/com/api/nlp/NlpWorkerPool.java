@@ -0,0 +1,163 @@
+package com.api.nlp;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.api.metrics.PipelineMetrics;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/*
+ * Pool of long-lived NLP workers
+ * Workers are started when the application starts, so requests only wait for
+ * an idle worker instead of a python process start and a model load
+ * Crashed, hung or worn out workers are discarded and started again
+ */
+@Service
+public class NlpWorkerPool implements NlpClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(NlpWorkerPool.class);
+
+    private final NlpProperties properties;
+    private final BlockingQueue<NlpWorker> idle = new LinkedBlockingQueue<>();
+    private final ScheduledExecutorService scheduler;
+    private volatile boolean closed;
+
+    public NlpWorkerPool(NlpProperties properties) {
+        this.properties = properties;
+        // one thread per worker start plus one that is always free for the request watchdogs
+        this.scheduler = Executors.newScheduledThreadPool(
+                Math.max(0, properties.getPoolSize()) + 1,
+                runnable -> {
+                    Thread thread = new Thread(runnable, "nlp-pool");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PostConstruct
+    public void warmUp() {
+        for (int i = 0; i < properties.getPoolSize(); i++) {
+            launch(0);
+        }
+    }
+
+    @Override
+    public String complete(String prompt) {
+        if (properties.getPoolSize() <= 0) {
+            return completeOnce(prompt);
+        }
+        NlpWorker worker = PipelineMetrics.time(PipelineMetrics.LLM_WAIT, this::borrow);
+        ScheduledFuture<?> watchdog = scheduler.schedule(worker::kill,
+                properties.getRequestTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        boolean answered = false;
+        try {
+            String response = PipelineMetrics.time(PipelineMetrics.LLM_GENERATE, () -> worker.complete(prompt));
+            answered = true;
+            return response;
+        } catch (NlpException e) {
+            // an error frame was read in full, the worker is fine
+            answered = true;
+            throw e;
+        } catch (IOException e) {
+            throw new NlpException("NLP worker failed", e);
+        } finally {
+            // a fired watchdog means the worker was killed, even if it answered just in time,
+            // a failed exchange may have left part of a frame in stdout, so the worker is destroyed
+            if (watchdog.cancel(false) && answered) {
+                release(worker);
+            } else {
+                worker.kill();
+                retire(worker);
+            }
+        }
+    }
+
+    public int getIdleWorkers() {
+        return idle.size();
+    }
+
+    private String completeOnce(String prompt) {
+        try (NlpWorker worker = NlpWorker.start(properties.command())) {
+            return PipelineMetrics.time(PipelineMetrics.LLM_GENERATE, () -> worker.complete(prompt));
+        } catch (IOException e) {
+            throw new NlpException("NLP process failed", e);
+        }
+    }
+
+    private NlpWorker borrow() {
+        long deadline = System.nanoTime() + properties.getAcquireTimeout().toNanos();
+        try {
+            while (true) {
+                NlpWorker worker = idle.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (worker == null) {
+                    throw new NlpException("No NLP worker available within " + properties.getAcquireTimeout());
+                }
+                if (worker.isAlive()) {
+                    return worker;
+                }
+                retire(worker);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NlpException("Interrupted while waiting for an NLP worker", e);
+        }
+    }
+
+    private void release(NlpWorker worker) {
+        int maxRequests = properties.getMaxRequestsPerWorker();
+        if (closed || !worker.isAlive() || (maxRequests > 0 && worker.getServed() >= maxRequests)) {
+            retire(worker);
+        } else {
+            idle.offer(worker);
+        }
+    }
+
+    private void retire(NlpWorker worker) {
+        worker.close();
+        if (!closed) {
+            logger.info("Replacing NLP worker after {} prompts", worker.getServed());
+            launch(0);
+        }
+    }
+
+    private void launch(long delayMillis) {
+        scheduler.schedule(() -> {
+            if (closed) {
+                return;
+            }
+            try {
+                NlpWorker worker = NlpWorker.start(properties.command());
+                if (closed) {
+                    worker.close();
+                } else {
+                    idle.offer(worker);
+                    logger.info("NLP worker ready, {} idle", idle.size());
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.error("Failed to start NLP worker, retrying in {}", properties.getRestartDelay(), e);
+                launch(properties.getRestartDelay().toMillis());
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        scheduler.shutdownNow();
+        NlpWorker worker;
+        while ((worker = idle.poll()) != null) {
+            worker.close();
+        }
+    }
+}
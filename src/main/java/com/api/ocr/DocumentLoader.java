@@ -0,0 +1,32 @@
+package com.api.ocr;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.springframework.stereotype.Component;
+
+/*
+ * Opens PDFs with a bounded heap buffer, larger documents spill into a temp file
+ */
+@Component
+public class DocumentLoader {
+
+    private final OcrProperties properties;
+
+    public DocumentLoader(OcrProperties properties) {
+        this.properties = properties;
+    }
+
+    public PDDocument load(File file) throws IOException {
+        MemoryUsageSetting setting = properties.getMaxMainMemoryBytes() > 0
+                ? MemoryUsageSetting.setupMixed(properties.getMaxMainMemoryBytes())
+                : MemoryUsageSetting.setupTempFileOnly();
+        if (properties.getTempDir() != null) {
+            setting.setTempDir(new File(properties.getTempDir()));
+        }
+        return PDDocument.load(file, setting);
+    }
+
+}
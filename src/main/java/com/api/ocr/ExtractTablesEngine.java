@@ -0,0 +1,86 @@
+package com.api.ocr;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.stereotype.Component;
+
+import com.api.metrics.PipelineMetrics;
+
+/*
+ * Runs OCR.py, which sends the document to the paid ExtractTables API
+ */
+@Component
+public class ExtractTablesEngine implements OcrEngine {
+
+    public static final String NAME = "extract-tables";
+
+    private final OcrProperties properties;
+
+    public ExtractTablesEngine(OcrProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /*
+     * The output goes to a temp file, so waiting for the script can be
+     * interrupted by the router, which then kills it
+     */
+    @Override
+    public List<String> recognize(Path document, List<Integer> pages) throws IOException {
+        List<String> command = new ArrayList<>(List.of(properties.getPython(),
+                new File(properties.getScript()).getAbsolutePath(), document.toAbsolutePath().toString()));
+        if (pages != null) {
+            command.add(PdfText.toRanges(pages));
+        }
+        Path output = Files.createTempFile("extract-tables-", ".txt");
+        Process process = null;
+        try {
+            long started = System.nanoTime();
+            process = new ProcessBuilder(command)
+                    .redirectOutput(output.toFile())
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            PipelineMetrics.recordProcessStart(NAME, "spawn", System.nanoTime() - started);
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new IOException("OCR.py exited with " + exitCode);
+            }
+            return Files.readAllLines(output, StandardCharsets.UTF_8);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for OCR.py");
+        } finally {
+            if (process != null) {
+                process.destroyForcibly();
+            }
+            Files.deleteIfExists(output);
+        }
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return Files.isReadable(Path.of(properties.getScript()));
+    }
+
+    @Override
+    public int getConcurrency() {
+        return Math.max(1, properties.getExtractTablesConcurrency());
+    }
+
+    @Override
+    public long getExpectedPageMillis() {
+        return 4000;
+    }
+
+}
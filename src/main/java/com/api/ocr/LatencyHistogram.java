@@ -0,0 +1,73 @@
+package com.api.ocr;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Counts durations into fixed buckets, cheap enough to record every call
+ */
+public class LatencyHistogram {
+
+    private static final long[] BOUNDS_MILLIS = {
+            100, 250, 500, 1_000, 2_500, 5_000, 10_000, 30_000, 60_000, 120_000, 300_000 };
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_MILLIS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMillis = new AtomicLong();
+    private final AtomicLong maxMillis = new AtomicLong();
+
+    public void record(long millis) {
+        int bucket = 0;
+        while (bucket < BOUNDS_MILLIS.length && millis > BOUNDS_MILLIS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalMillis.addAndGet(millis);
+        maxMillis.accumulateAndGet(millis, Math::max);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /*
+     * Upper bound of the bucket that holds the given share of all calls, -1 above the last bucket
+     */
+    public long getPercentileMillis(double share) {
+        long total = count.get();
+        long seen = 0;
+        for (int i = 0; i < BOUNDS_MILLIS.length; i++) {
+            seen += buckets.get(i);
+            if (total > 0 && seen >= Math.ceil(total * share)) {
+                return BOUNDS_MILLIS[i];
+            }
+        }
+        return total == 0 ? 0 : -1;
+    }
+
+    /*
+     * Cumulative counts per upper bound like a Prometheus histogram
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        Map<String, Long> cumulative = new LinkedHashMap<>();
+        long seen = 0;
+        for (int i = 0; i < BOUNDS_MILLIS.length; i++) {
+            seen += buckets.get(i);
+            cumulative.put("le" + BOUNDS_MILLIS[i], seen);
+        }
+        cumulative.put("inf", seen + buckets.get(BOUNDS_MILLIS.length));
+        long total = count.get();
+        snapshot.put("count", total);
+        snapshot.put("meanMillis", total == 0 ? 0 : totalMillis.get() / total);
+        snapshot.put("maxMillis", maxMillis.get());
+        snapshot.put("p50Millis", getPercentileMillis(0.5));
+        snapshot.put("p95Millis", getPercentileMillis(0.95));
+        snapshot.put("buckets", cumulative);
+        return snapshot;
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.api.ocr;
+
+import java.util.Map;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import io.swagger.v3.oas.annotations.Operation;
+
+@RestController
+public class OcrController {
+
+    private final OcrRouter ocrRouter;
+
+    public OcrController(OcrRouter ocrRouter) {
+        this.ocrRouter = ocrRouter;
+    }
+
+    @Operation(summary = "Latency histogram, queue and failures of every OCR engine")
+    @GetMapping("/ocr/engines")
+    public Map<String, Object> engines() {
+        return ocrRouter.getStats();
+    }
+
+}
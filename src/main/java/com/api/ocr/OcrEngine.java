@@ -0,0 +1,44 @@
+package com.api.ocr;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/*
+ * Turns the pages of a document into text lines
+ * Every Spring bean implementing this is offered to the OcrRouter under its
+ * name, tests can register fakes the same way
+ * The router runs engines on their own threads and interrupts them once the
+ * latency budget is used up, so recognize has to give up when interrupted
+ */
+public interface OcrEngine {
+
+    String getName();
+
+    /*
+     * Zero based pages, all pages if null
+     */
+    List<String> recognize(Path document, List<Integer> pages) throws IOException;
+
+    /*
+     * Engines without their model, script or key are skipped
+     */
+    default boolean isAvailable() {
+        return true;
+    }
+
+    /*
+     * Documents the engine works on at the same time
+     */
+    default int getConcurrency() {
+        return 1;
+    }
+
+    /*
+     * Used for the estimates until the first document was measured
+     */
+    default long getExpectedPageMillis() {
+        return 2000;
+    }
+
+}
@@ -0,0 +1,248 @@
+package com.api.ocr;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("ocr")
+public class OcrProperties {
+
+    public enum ImageType {
+        GRAY, BINARY
+    }
+
+    /**
+     * Engines the router may use, on equal estimates the first one wins
+     */
+    private List<String> engines = new ArrayList<>(List.of(ExtractTablesEngine.NAME, TesseractEngine.NAME));
+
+    /**
+     * Time a document may take including fallbacks, engines expected to be slower are tried last
+     */
+    private Duration latencyBudget = Duration.ofMinutes(2);
+
+    /**
+     * A failed engine is only tried after the healthy ones for this long
+     */
+    private Duration failureCooldown = Duration.ofMinutes(1);
+
+    /**
+     * Python interpreter and script of the ExtractTables engine
+     */
+    private String python = "python3";
+
+    private String script = "src/main/resources/OCR.py";
+
+    /**
+     * Documents sent to ExtractTables at the same time
+     */
+    private int extractTablesConcurrency = 2;
+
+    /**
+     * Documents recognized by Tesseract at the same time, each one uses all ocr.threads
+     */
+    private int tesseractConcurrency = 1;
+
+    /**
+     * Pages recognized at the same time, one Tesseract instance each, 0 uses one per CPU core
+     */
+    private int threads = 0;
+
+    /**
+     * Folder with the traineddata files
+     */
+    private String datapath = "tessdata";
+
+    private String language = "deu";
+
+    /**
+     * Resolution the pages are rendered with
+     */
+    private int dpi = 300;
+
+    /**
+     * Gray keeps anti-aliased edges for Tesseract, binary needs an eighth of the memory
+     */
+    private ImageType imageType = ImageType.GRAY;
+
+    /**
+     * Pages being rendered or recognized at the same time may use this much memory
+     */
+    private long memoryBudgetBytes = 256L * 1024 * 1024;
+
+    /**
+     * Heap buffer of a loaded PDF, the rest goes to a temp file, 0 uses only the temp file
+     */
+    private long maxMainMemoryBytes = 16L * 1024 * 1024;
+
+    /**
+     * Folder of these temp files, the system temp folder if not set
+     */
+    private String tempDir;
+
+    /**
+     * Read the text layer of digital PDFs and only OCR the pages without one
+     */
+    private boolean textLayer = true;
+
+    /**
+     * Fewer characters on a page mean it is scanned
+     */
+    private int minTextChars = 30;
+
+    /**
+     * Share of the characters that must be real text and not unmapped glyphs
+     */
+    private double minReadableShare = 0.9;
+
+    public int threads() {
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    public List<String> getEngines() {
+        return engines;
+    }
+
+    public void setEngines(List<String> engines) {
+        this.engines = engines;
+    }
+
+    public Duration getLatencyBudget() {
+        return latencyBudget;
+    }
+
+    public void setLatencyBudget(Duration latencyBudget) {
+        this.latencyBudget = latencyBudget;
+    }
+
+    public Duration getFailureCooldown() {
+        return failureCooldown;
+    }
+
+    public void setFailureCooldown(Duration failureCooldown) {
+        this.failureCooldown = failureCooldown;
+    }
+
+    public String getPython() {
+        return python;
+    }
+
+    public void setPython(String python) {
+        this.python = python;
+    }
+
+    public String getScript() {
+        return script;
+    }
+
+    public void setScript(String script) {
+        this.script = script;
+    }
+
+    public int getExtractTablesConcurrency() {
+        return extractTablesConcurrency;
+    }
+
+    public void setExtractTablesConcurrency(int extractTablesConcurrency) {
+        this.extractTablesConcurrency = extractTablesConcurrency;
+    }
+
+    public int getTesseractConcurrency() {
+        return tesseractConcurrency;
+    }
+
+    public void setTesseractConcurrency(int tesseractConcurrency) {
+        this.tesseractConcurrency = tesseractConcurrency;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public String getDatapath() {
+        return datapath;
+    }
+
+    public void setDatapath(String datapath) {
+        this.datapath = datapath;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public void setLanguage(String language) {
+        this.language = language;
+    }
+
+    public int getDpi() {
+        return dpi;
+    }
+
+    public void setDpi(int dpi) {
+        this.dpi = dpi;
+    }
+
+    public ImageType getImageType() {
+        return imageType;
+    }
+
+    public void setImageType(ImageType imageType) {
+        this.imageType = imageType;
+    }
+
+    public long getMemoryBudgetBytes() {
+        return memoryBudgetBytes;
+    }
+
+    public void setMemoryBudgetBytes(long memoryBudgetBytes) {
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+    public long getMaxMainMemoryBytes() {
+        return maxMainMemoryBytes;
+    }
+
+    public void setMaxMainMemoryBytes(long maxMainMemoryBytes) {
+        this.maxMainMemoryBytes = maxMainMemoryBytes;
+    }
+
+    public String getTempDir() {
+        return tempDir;
+    }
+
+    public void setTempDir(String tempDir) {
+        this.tempDir = tempDir;
+    }
+
+    public boolean isTextLayer() {
+        return textLayer;
+    }
+
+    public void setTextLayer(boolean textLayer) {
+        this.textLayer = textLayer;
+    }
+
+    public int getMinTextChars() {
+        return minTextChars;
+    }
+
+    public void setMinTextChars(int minTextChars) {
+        this.minTextChars = minTextChars;
+    }
+
+    public double getMinReadableShare() {
+        return minReadableShare;
+    }
+
+    public void setMinReadableShare(double minReadableShare) {
+        this.minReadableShare = minReadableShare;
+    }
+
+}
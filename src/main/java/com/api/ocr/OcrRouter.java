@@ -0,0 +1,265 @@
+package com.api.ocr;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+
+/*
+ * Picks the OCR engine per document and falls back to the next one if it fails
+ * or runs out of time
+ * The estimate of an engine is its average time per page, an exponentially
+ * weighted moving average of the measured documents, times the pages, times
+ * the rounds it has to wait for the documents already queued or running on it
+ * Engines whose estimate fits into the latency budget come first, the cheapest
+ * of them is tried, engines that failed recently are only tried after the others
+ * An engine is cancelled early enough to leave the next one its estimated time
+ */
+@Service
+public class OcrRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(OcrRouter.class);
+
+    /*
+     * Weight of the newest measurement in the moving average
+     */
+    private static final double ALPHA = 0.3;
+
+    private final OcrProperties properties;
+    private final List<Route> routes = new ArrayList<>();
+
+    public OcrRouter(List<OcrEngine> engines, OcrProperties properties) {
+        this.properties = properties;
+        List<String> enabled = properties.getEngines();
+        for (OcrEngine engine : engines) {
+            if (enabled == null || enabled.isEmpty() || enabled.contains(engine.getName())) {
+                routes.add(new Route(engine));
+            }
+        }
+        // the configured order decides between equal estimates
+        routes.sort(Comparator.comparingInt(route -> enabled == null || !enabled.contains(route.engine.getName())
+                ? Integer.MAX_VALUE
+                : enabled.indexOf(route.engine.getName())));
+        logger.info("OCR engines {}", routes.stream().map(route -> route.engine.getName()
+                + (route.engine.isAvailable() ? "" : " (unavailable)")).toList());
+    }
+
+    public List<String> recognize(Path document, List<Integer> pages, int pageCount) throws IOException {
+        return recognize(document, pages, pageCount, properties.getLatencyBudget());
+    }
+
+    /*
+     * Zero based pages, all pageCount pages if null
+     */
+    public List<String> recognize(Path document, List<Integer> pages, int pageCount, Duration budget)
+            throws IOException {
+        int pagesToRecognize = pages == null ? Math.max(1, pageCount) : Math.max(1, pages.size());
+        long deadline = System.nanoTime() + budget.toNanos();
+        IOException failure = null;
+        List<Route> plan = plan(pagesToRecognize, budget.toMillis());
+        for (int i = 0; i < plan.size(); i++) {
+            Route route = plan.get(i);
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            // keep the time the next engine is expected to need, but give this one at least half
+            long reserve = i + 1 < plan.size()
+                    ? TimeUnit.MILLISECONDS.toNanos(plan.get(i + 1).estimateMillis(pagesToRecognize))
+                    : 0;
+            try {
+                return route.run(document, pages, pagesToRecognize, Math.max(remaining - reserve, remaining / 2));
+            } catch (InterruptedIOException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                failure = suppress(failure, e);
+            } catch (IOException e) {
+                failure = suppress(failure, e);
+            }
+            logger.warn("OCR engine {} failed on {}, trying the next one", route.engine.getName(),
+                    document.getFileName(), failure);
+        }
+        if (failure == null) {
+            failure = new IOException("No OCR engine available within " + budget);
+        }
+        throw failure;
+    }
+
+    /*
+     * Available engines in the order they are tried
+     */
+    List<OcrEngine> plan(int pages, Duration budget) {
+        return plan(pages, budget.toMillis()).stream().map(route -> route.engine).toList();
+    }
+
+    private List<Route> plan(int pages, long budgetMillis) {
+        long now = System.nanoTime();
+        long cooldown = properties.getFailureCooldown().toNanos();
+        List<Route> available = new ArrayList<>();
+        for (Route route : routes) {
+            if (route.engine.isAvailable()) {
+                available.add(route);
+            }
+        }
+        Map<Route, Long> estimates = new LinkedHashMap<>();
+        for (Route route : available) {
+            estimates.put(route, route.estimateMillis(pages));
+        }
+        available.sort(Comparator
+                .comparing((Route route) -> route.failedSince(now, cooldown))
+                .thenComparing(route -> estimates.get(route) > budgetMillis)
+                .thenComparingLong(estimates::get));
+        return available;
+    }
+
+    /*
+     * Per engine, the measured times, the queue and the outcome counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Route route : routes) {
+            Map<String, Object> engine = new LinkedHashMap<>();
+            engine.put("available", route.engine.isAvailable());
+            engine.put("concurrency", route.executor.getMaximumPoolSize());
+            engine.put("queued", route.executor.getQueue().size());
+            engine.put("running", route.executor.getActiveCount());
+            engine.put("pageMillis", Math.round(route.pageMillis()));
+            engine.put("succeeded", route.succeeded.get());
+            engine.put("failed", route.failed.get());
+            engine.put("timedOut", route.timedOut.get());
+            engine.put("latency", route.latency.snapshot());
+            stats.put(route.engine.getName(), engine);
+        }
+        return stats;
+    }
+
+    private static IOException suppress(IOException failure, IOException e) {
+        if (failure != null) {
+            e.addSuppressed(failure);
+        }
+        return e;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        routes.forEach(route -> route.executor.shutdownNow());
+    }
+
+    private static final class Route {
+
+        private final OcrEngine engine;
+        private final ThreadPoolExecutor executor;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong succeeded = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong timedOut = new AtomicLong();
+        private volatile double pageMillis = -1;
+        private volatile long lastFailure;
+        private volatile boolean failing;
+
+        private Route(OcrEngine engine) {
+            this.engine = engine;
+            int threads = Math.max(1, engine.getConcurrency());
+            String name = "ocr-" + engine.getName() + "-";
+            AtomicInteger count = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), runnable -> {
+                        Thread thread = new Thread(runnable, name + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+
+        private List<String> run(Path document, List<Integer> pages, int pageCount, long timeoutNanos)
+                throws IOException {
+            Future<List<String>> future = executor.submit(() -> {
+                long started = System.nanoTime();
+                try {
+                    List<String> lines = engine.recognize(document, pages);
+                    measured(started, pageCount, true);
+                    return lines;
+                } catch (IOException | RuntimeException e) {
+                    measured(started, pageCount, false);
+                    throw e;
+                }
+            });
+            try {
+                return future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                timedOut.incrementAndGet();
+                failed();
+                throw new IOException(engine.getName() + " did not finish within the latency budget", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(engine.getName() + " failed", e.getCause());
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + engine.getName());
+            }
+        }
+
+        /*
+         * Failed and cancelled calls count as well, a hanging engine gets expensive
+         */
+        private void measured(long started, int pages, boolean success) {
+            long millis = (System.nanoTime() - started) / 1_000_000;
+            latency.record(millis);
+            double perPage = (double) millis / Math.max(1, pages);
+            synchronized (this) {
+                pageMillis = pageMillis < 0 ? perPage : ALPHA * perPage + (1 - ALPHA) * pageMillis;
+            }
+            if (success) {
+                succeeded.incrementAndGet();
+                failing = false;
+            } else {
+                failed.incrementAndGet();
+                failed();
+            }
+        }
+
+        private void failed() {
+            lastFailure = System.nanoTime();
+            failing = true;
+        }
+
+        private double pageMillis() {
+            return pageMillis < 0 ? engine.getExpectedPageMillis() : pageMillis;
+        }
+
+        private long estimateMillis(int pages) {
+            int waiting = executor.getQueue().size() + executor.getActiveCount();
+            int rounds = 1 + waiting / executor.getMaximumPoolSize();
+            return Math.round(pageMillis() * pages * rounds);
+        }
+
+        private boolean failedSince(long now, long cooldownNanos) {
+            return failing && now - lastFailure < cooldownNanos;
+        }
+
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.api.ocr;
+
+import java.awt.image.BufferedImage;
+
+import net.sourceforge.tess4j.TesseractException;
+
+/*
+ * Recognizes one rendered page at a time, not thread safe
+ */
+public interface OcrWorker extends AutoCloseable {
+
+    String recognize(BufferedImage image, int dpi) throws TesseractException;
+
+    @Override
+    void close();
+
+}
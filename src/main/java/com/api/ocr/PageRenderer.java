@@ -0,0 +1,115 @@
+package com.api.ocr;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.springframework.stereotype.Component;
+
+/*
+ * Renders pages for OCR within a memory budget
+ * Pages are drawn straight into 8 bit gray or 1 bit images, a 300 DPI A4 page
+ * needs 8.7 MB or 1.1 MB instead of 26 MB in RGB
+ * The images are pooled by size and reused for the next page, a page only
+ * starts rendering once its image fits into ocr.memory-budget-bytes
+ */
+@Component
+public class PageRenderer {
+
+    private final OcrProperties properties;
+    private final int budgetKilobytes;
+    private final Semaphore budget;
+    private final int maxPooled;
+    private final Map<String, BlockingQueue<BufferedImage>> pool = new ConcurrentHashMap<>();
+
+    public PageRenderer(OcrProperties properties) {
+        this.properties = properties;
+        this.budgetKilobytes = (int) Math.min(Integer.MAX_VALUE, Math.max(1, properties.getMemoryBudgetBytes() / 1024));
+        this.budget = new Semaphore(budgetKilobytes, true);
+        this.maxPooled = properties.threads();
+    }
+
+    /*
+     * Blocks until the page fits into the budget, the image has to be given back with release
+     */
+    public BufferedImage render(PDFRenderer renderer, PDPage page, int pageIndex) throws IOException {
+        float scale = properties.getDpi() / 72f;
+        PDRectangle cropBox = page.getCropBox();
+        int width = Math.max(1, Math.round(cropBox.getWidth() * scale));
+        int height = Math.max(1, Math.round(cropBox.getHeight() * scale));
+        if (page.getRotation() == 90 || page.getRotation() == 270) {
+            int swap = width;
+            width = height;
+            height = swap;
+        }
+        int type = properties.getImageType() == OcrProperties.ImageType.BINARY
+                ? BufferedImage.TYPE_BYTE_BINARY
+                : BufferedImage.TYPE_BYTE_GRAY;
+        try {
+            budget.acquire(kilobytes(width, height, type));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for memory to render page " + (pageIndex + 1));
+        }
+        BufferedImage image = take(width, height, type);
+        try {
+            Graphics2D graphics = image.createGraphics();
+            try {
+                // renderPageToGraphics clears with the background color and applies the page rotation
+                graphics.setBackground(Color.WHITE);
+                renderer.renderPageToGraphics(pageIndex, graphics, scale);
+            } finally {
+                graphics.dispose();
+            }
+            return image;
+        } catch (IOException | RuntimeException e) {
+            release(image);
+            throw e;
+        }
+    }
+
+    public void release(BufferedImage image) {
+        BlockingQueue<BufferedImage> images = pool.computeIfAbsent(key(image.getWidth(), image.getHeight(),
+                image.getType()), key -> new LinkedBlockingQueue<>(maxPooled));
+        images.offer(image);
+        budget.release(kilobytes(image.getWidth(), image.getHeight(), image.getType()));
+    }
+
+    /*
+     * Budget left in bytes
+     */
+    public long getAvailableBytes() {
+        return budget.availablePermits() * 1024L;
+    }
+
+    private BufferedImage take(int width, int height, int type) {
+        BlockingQueue<BufferedImage> images = pool.get(key(width, height, type));
+        BufferedImage image = images == null ? null : images.poll();
+        return image != null ? image : new BufferedImage(width, height, type);
+    }
+
+    /*
+     * A page larger than the whole budget takes all of it
+     */
+    private int kilobytes(int width, int height, int type) {
+        long bytes = type == BufferedImage.TYPE_BYTE_BINARY
+                ? (long) (width + 7) / 8 * height
+                : (long) width * height;
+        return (int) Math.min(budgetKilobytes, bytes / 1024 + 1);
+    }
+
+    private static String key(int width, int height, int type) {
+        return width + "x" + height + "/" + type;
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.api.ocr;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Text layer of a PDF, the lines of every page and the pages that need OCR
+ */
+public class PdfText {
+
+    private final List<List<String>> pages;
+    private final List<Integer> pagesWithoutText;
+
+    /*
+     * One entry per page, empty for the pages without text
+     */
+    PdfText(List<List<String>> pages, List<Integer> pagesWithoutText) {
+        this.pages = pages;
+        this.pagesWithoutText = pagesWithoutText;
+    }
+
+    /*
+     * The lines of all pages in page order
+     */
+    public List<String> getLines() {
+        List<String> lines = new ArrayList<>();
+        pages.forEach(lines::addAll);
+        return lines;
+    }
+
+    /*
+     * Zero based page index
+     */
+    public List<String> getLines(int page) {
+        return pages.get(page);
+    }
+
+    /*
+     * Zero based page indexes
+     */
+    public List<Integer> getPagesWithoutText() {
+        return pagesWithoutText;
+    }
+
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    public boolean isComplete() {
+        return pagesWithoutText.isEmpty();
+    }
+
+    /*
+     * The pages without text in the "1,3-4" notation of ExtractTables
+     */
+    public String getPagesWithoutTextAsRanges() {
+        return toRanges(pagesWithoutText);
+    }
+
+    /*
+     * Ascending zero based pages as one based ranges
+     */
+    public static String toRanges(List<Integer> pages) {
+        StringBuilder ranges = new StringBuilder();
+        for (int i = 0; i < pages.size(); i++) {
+            int first = pages.get(i);
+            int last = first;
+            while (i + 1 < pages.size() && pages.get(i + 1) == last + 1) {
+                last = pages.get(++i);
+            }
+            ranges.append(ranges.length() == 0 ? "" : ",").append(first + 1);
+            if (last > first) {
+                ranges.append('-').append(last + 1);
+            }
+        }
+        return ranges.toString();
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.api.ocr;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.springframework.stereotype.Component;
+
+import com.api.OCR;
+
+/*
+ * Local Tesseract, pages of one document are recognized in parallel by OCR
+ */
+@Component
+public class TesseractEngine implements OcrEngine {
+
+    public static final String NAME = "tesseract";
+
+    private final OCR ocr;
+    private final OcrProperties properties;
+
+    public TesseractEngine(OCR ocr, OcrProperties properties) {
+        this.ocr = ocr;
+        this.properties = properties;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public List<String> recognize(Path document, List<Integer> pages) throws IOException {
+        return ocr.doOCR(document.toFile(), pages).lines().collect(Collectors.toList());
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return ocr.isAvailable();
+    }
+
+    @Override
+    public int getConcurrency() {
+        return Math.max(1, properties.getTesseractConcurrency());
+    }
+
+    @Override
+    public long getExpectedPageMillis() {
+        return 1500;
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.api.ocr;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.nio.ByteBuffer;
+
+import com.sun.jna.Pointer;
+
+import net.sourceforge.tess4j.ITessAPI.TessBaseAPI;
+import net.sourceforge.tess4j.TessAPI1;
+import net.sourceforge.tess4j.TesseractException;
+
+/*
+ * One initialized Tesseract engine
+ * Tesseract.doOCR loads the traineddata again on every call, this keeps the
+ * TessBaseAPI handle and only sets a new image per page
+ * Not thread safe, every worker thread borrows its own
+ */
+public class TesseractWorker implements OcrWorker {
+
+    private final TessBaseAPI handle;
+    private ByteBuffer buffer;
+
+    public TesseractWorker(String datapath, String language) throws TesseractException {
+        handle = TessAPI1.TessBaseAPICreate();
+        if (TessAPI1.TessBaseAPIInit3(handle, datapath, language) != 0) {
+            TessAPI1.TessBaseAPIDelete(handle);
+            throw new TesseractException("Could not load " + language + " from " + datapath);
+        }
+    }
+
+    /*
+     * Expects an 8 bit gray or a 1 bit image as drawn by PageRenderer
+     */
+    @Override
+    public String recognize(BufferedImage image, int dpi) throws TesseractException {
+        int bytesPerPixel;
+        int bytesPerLine;
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            bytesPerPixel = 1;
+            bytesPerLine = image.getWidth();
+        } else if (image.getType() == BufferedImage.TYPE_BYTE_BINARY) {
+            // 0 bytes per pixel is how Tesseract takes packed 1 bit rows
+            bytesPerPixel = 0;
+            bytesPerLine = (image.getWidth() + 7) / 8;
+        } else {
+            throw new TesseractException("Expected a gray or binary image, got type " + image.getType());
+        }
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        // the direct buffer is reused for pages of the same or a smaller size
+        if (buffer == null || buffer.capacity() < pixels.length) {
+            buffer = ByteBuffer.allocateDirect(pixels.length);
+        }
+        buffer.clear();
+        buffer.put(pixels).flip();
+        TessAPI1.TessBaseAPISetImage(handle, buffer, image.getWidth(), image.getHeight(), bytesPerPixel, bytesPerLine);
+        TessAPI1.TessBaseAPISetSourceResolution(handle, dpi);
+        Pointer text = TessAPI1.TessBaseAPIGetUTF8Text(handle);
+        if (text == null) {
+            TessAPI1.TessBaseAPIClear(handle);
+            throw new TesseractException("Tesseract could not recognize the page");
+        }
+        try {
+            return text.getString(0, "UTF-8");
+        } finally {
+            TessAPI1.TessDeleteText(text);
+            TessAPI1.TessBaseAPIClear(handle);
+        }
+    }
+
+    @Override
+    public void close() {
+        TessAPI1.TessBaseAPIEnd(handle);
+        TessAPI1.TessBaseAPIDelete(handle);
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.api.ocr;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+import org.springframework.stereotype.Component;
+
+/*
+ * Reads the text layer of digital PDFs, which takes milliseconds instead of
+ * seconds of rendering and OCR per page
+ * A page counts as readable if it has enough characters and almost all of them
+ * are real text, fonts without a unicode mapping come out as U+FFFD or private use
+ */
+@Component
+public class TextLayerReader {
+
+    private final OcrProperties properties;
+    private final DocumentLoader documentLoader;
+
+    public TextLayerReader(OcrProperties properties, DocumentLoader documentLoader) {
+        this.properties = properties;
+        this.documentLoader = documentLoader;
+    }
+
+    public PdfText read(File file) throws IOException {
+        try (PDDocument document = documentLoader.load(file)) {
+            return read(document);
+        }
+    }
+
+    public PdfText read(PDDocument document) throws IOException {
+        WordCollector collector = new WordCollector();
+        collector.writeText(document, Writer.nullWriter());
+        List<List<String>> pages = new ArrayList<>();
+        List<Integer> pagesWithoutText = new ArrayList<>();
+        for (int page = 0; page < document.getNumberOfPages(); page++) {
+            WordCollector.Page words = collector.pages.get(page);
+            if (words == null || words.characters < properties.getMinTextChars()
+                    || words.readable < words.characters * properties.getMinReadableShare()) {
+                pagesWithoutText.add(page);
+                pages.add(List.of());
+            } else {
+                pages.add(TextLayout.layout(words.words));
+            }
+        }
+        return new PdfText(pages, pagesWithoutText);
+    }
+
+    /*
+     * Collects the words with their positions instead of writing text, the
+     * stripper still merges overlapping glyphs and sorts by position
+     */
+    private static final class WordCollector extends PDFTextStripper {
+
+        private static final class Page {
+            final List<TextLayout.Word> words = new ArrayList<>();
+            int characters;
+            int readable;
+        }
+
+        /*
+         * Keyed by the zero based page index, pages without a content stream
+         * are skipped by the stripper and have no entry
+         */
+        private final Map<Integer, Page> pages = new HashMap<>();
+        private Page page;
+
+        private WordCollector() throws IOException {
+            setSortByPosition(true);
+        }
+
+        @Override
+        protected void startPage(PDPage pdPage) {
+            page = new Page();
+            pages.put(getCurrentPageNo() - 1, page);
+        }
+
+        @Override
+        protected void writeString(String text, List<TextPosition> textPositions) {
+            if (text.isBlank() || textPositions.isEmpty()) {
+                return;
+            }
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    continue;
+                }
+                page.characters++;
+                if (c != '\ufffd' && !Character.isISOControl(c) && Character.getType(c) != Character.PRIVATE_USE) {
+                    page.readable++;
+                }
+            }
+            TextPosition first = textPositions.get(0);
+            TextPosition last = textPositions.get(textPositions.size() - 1);
+            float height = 0;
+            for (TextPosition position : textPositions) {
+                height = Math.max(height, position.getHeightDir());
+            }
+            page.words.add(new TextLayout.Word(text.trim(), first.getXDirAdj(),
+                    last.getXDirAdj() + last.getWidthDirAdj(), first.getYDirAdj(), height,
+                    first.getWidthOfSpace()));
+        }
+
+    }
+
+}
@@ -0,0 +1,329 @@
+package com.api.ocr;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import com.api.extraction.LabValue;
+import com.api.extraction.LabValueParser;
+
+/*
+ * Rebuilds the table of a lab report page from the positions of its words
+ * Words on the same baseline form a line, wide gaps split a line into cells
+ * and cells that overlap horizontally across lines form a column
+ * Columns get their role from the header ("Ergebnis", "Einheit", ...) or, if
+ * there is none, from what most of their cells look like
+ * Table rows come out as "<row> -> name | value | unit | range", everything
+ * else as the plain text of the line
+ */
+public final class TextLayout {
+
+    public static final String CELL_SEPARATOR = " | ";
+
+    private static final Pattern RANGE = Pattern.compile(
+            "[<>≤≥]=?\\s*\\d+(?:[.,]\\d+)?|\\d+(?:[.,]\\d+)?\\s*(?:-|–|bis)\\s*\\d+(?:[.,]\\d+)?");
+    private static final Pattern UNIT = Pattern.compile("[%‰]|\\S*/\\S+|[a-zA-Zµμ]{1,4}|10\\^\\d+\\S*");
+    private static final Pattern LETTER = Pattern.compile("\\p{L}");
+
+    private static final Pattern NAME_HEADER = Pattern.compile("analyse|analyt|untersuchung|parameter|test");
+    private static final Pattern VALUE_HEADER = Pattern.compile("ergebnis|laborwert|wert|befund|resultat");
+    private static final Pattern UNIT_HEADER = Pattern.compile("einheit");
+    private static final Pattern RANGE_HEADER = Pattern.compile("referenz|norm");
+
+    enum Role {
+        NAME, VALUE, UNIT, RANGE, OTHER
+    }
+
+    /*
+     * A word with its bounding box in PDF user space, y grows downwards
+     */
+    public static final class Word {
+
+        final String text;
+        final float x0;
+        final float x1;
+        final float y;
+        final float height;
+        final float spaceWidth;
+
+        public Word(String text, float x0, float x1, float y, float height, float spaceWidth) {
+            this.text = text;
+            this.x0 = x0;
+            this.x1 = x1;
+            this.y = y;
+            this.height = height;
+            this.spaceWidth = spaceWidth;
+        }
+
+    }
+
+    static final class Cell {
+
+        final StringBuilder text = new StringBuilder();
+        float x0;
+        float x1;
+        int column = -1;
+
+        Cell(Word word) {
+            text.append(word.text);
+            x0 = word.x0;
+            x1 = word.x1;
+        }
+
+        String text() {
+            return text.toString().trim();
+        }
+
+    }
+
+    private TextLayout() {
+    }
+
+    /*
+     * The lines of one page in reading order
+     */
+    public static List<String> layout(List<Word> words) {
+        int rows = 0;
+        List<List<Cell>> lines = cells(lines(words));
+        List<float[]> columns = columns(lines);
+        Role[] roles = roles(lines, columns);
+        List<String> result = new ArrayList<>(lines.size());
+        for (List<Cell> line : lines) {
+            String row = row(line, roles, rows);
+            if (row != null) {
+                rows++;
+                result.add(row);
+            } else {
+                StringBuilder text = new StringBuilder();
+                for (Cell cell : line) {
+                    text.append(text.length() == 0 ? "" : "  ").append(cell.text());
+                }
+                result.add(text.toString());
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Words whose vertical centers are closer than half their height share a line
+     */
+    static List<List<Word>> lines(List<Word> words) {
+        List<Word> sorted = new ArrayList<>(words);
+        sorted.sort(Comparator.comparingDouble(word -> word.y));
+        List<List<Word>> lines = new ArrayList<>();
+        List<Word> line = null;
+        float baseline = 0;
+        for (Word word : sorted) {
+            if (line == null || Math.abs(word.y - baseline) > Math.max(1f, word.height / 2)) {
+                line = new ArrayList<>();
+                lines.add(line);
+                baseline = word.y;
+            }
+            line.add(word);
+        }
+        for (List<Word> each : lines) {
+            each.sort(Comparator.comparingDouble(word -> word.x0));
+        }
+        return lines;
+    }
+
+    /*
+     * A gap wider than two spaces starts a new cell, "1 234" or "Hb A1c" stay together
+     */
+    static List<List<Cell>> cells(List<List<Word>> lines) {
+        List<List<Cell>> result = new ArrayList<>(lines.size());
+        for (List<Word> line : lines) {
+            List<Cell> cells = new ArrayList<>();
+            Cell cell = null;
+            for (Word word : line) {
+                float space = word.spaceWidth > 0 ? word.spaceWidth : word.height / 4;
+                if (cell == null || word.x0 - cell.x1 > Math.max(2.5f * space, word.height * 0.8f)) {
+                    cell = new Cell(word);
+                    cells.add(cell);
+                } else {
+                    cell.text.append(' ').append(word.text);
+                    cell.x1 = Math.max(cell.x1, word.x1);
+                }
+            }
+            result.add(cells);
+        }
+        return result;
+    }
+
+    /*
+     * Merges the spans of the cells of all lines with at least three cells,
+     * left, right and centered columns all overlap with themselves
+     */
+    static List<float[]> columns(List<List<Cell>> lines) {
+        List<float[]> spans = new ArrayList<>();
+        for (List<Cell> line : lines) {
+            if (line.size() >= 3) {
+                for (Cell cell : line) {
+                    spans.add(new float[] { cell.x0, cell.x1 });
+                }
+            }
+        }
+        spans.sort(Comparator.comparingDouble(span -> span[0]));
+        List<float[]> columns = new ArrayList<>();
+        for (float[] span : spans) {
+            float[] last = columns.isEmpty() ? null : columns.get(columns.size() - 1);
+            if (last != null && span[0] <= last[1]) {
+                last[1] = Math.max(last[1], span[1]);
+            } else {
+                columns.add(new float[] { span[0], span[1] });
+            }
+        }
+        for (List<Cell> line : lines) {
+            for (Cell cell : line) {
+                for (int i = 0; i < columns.size(); i++) {
+                    if (cell.x0 <= columns.get(i)[1] && cell.x1 >= columns.get(i)[0]) {
+                        cell.column = i;
+                        break;
+                    }
+                }
+            }
+        }
+        return columns;
+    }
+
+    static Role[] roles(List<List<Cell>> lines, List<float[]> columns) {
+        Role[] roles = new Role[columns.size()];
+        if (!fromHeader(lines, roles)) {
+            fromContent(lines, roles);
+        }
+        return roles;
+    }
+
+    /*
+     * A line with at least a value and one more known column title is the header
+     */
+    private static boolean fromHeader(List<List<Cell>> lines, Role[] roles) {
+        for (List<Cell> line : lines) {
+            Role[] found = new Role[roles.length];
+            int known = 0;
+            boolean value = false;
+            for (Cell cell : line) {
+                if (cell.column < 0) {
+                    continue;
+                }
+                String title = cell.text().toLowerCase(Locale.GERMAN);
+                // "Normwert" is a range, so ranges are checked before values
+                Role role = RANGE_HEADER.matcher(title).find() ? Role.RANGE
+                        : UNIT_HEADER.matcher(title).find() ? Role.UNIT
+                        : VALUE_HEADER.matcher(title).find() ? Role.VALUE
+                        : NAME_HEADER.matcher(title).find() ? Role.NAME
+                        : null;
+                if (role != null && found[cell.column] == null) {
+                    found[cell.column] = role;
+                    known++;
+                    value |= role == Role.VALUE;
+                }
+            }
+            if (value && known >= 2) {
+                for (int i = 0; i < roles.length; i++) {
+                    roles[i] = found[i] == null ? Role.OTHER : found[i];
+                }
+                if (indexOf(roles, Role.NAME) < 0 && roles.length > 0 && roles[0] == Role.OTHER) {
+                    roles[0] = Role.NAME;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * The column with most numbers holds the values, then the ranges and units
+     * by their look, the leftmost remaining column with text the names
+     */
+    private static void fromContent(List<List<Cell>> lines, Role[] roles) {
+        int[][] votes = new int[roles.length][Role.values().length];
+        int[] cells = new int[roles.length];
+        LabValue value = new LabValue();
+        for (List<Cell> line : lines) {
+            if (line.size() < 3) {
+                continue;
+            }
+            for (Cell cell : line) {
+                if (cell.column >= 0) {
+                    votes[cell.column][classify(cell.text(), value).ordinal()]++;
+                    cells[cell.column]++;
+                }
+            }
+        }
+        for (Role role : new Role[] { Role.VALUE, Role.RANGE, Role.UNIT }) {
+            int best = -1;
+            for (int i = 0; i < roles.length; i++) {
+                // short names like "MCV" look like units, so a role needs the majority of a column
+                if (roles[i] == null && votes[i][role.ordinal()] * 2 > cells[i]
+                        && (best < 0 || votes[i][role.ordinal()] > votes[best][role.ordinal()])) {
+                    best = i;
+                }
+            }
+            if (best >= 0) {
+                roles[best] = role;
+            }
+        }
+        for (int i = 0; i < roles.length; i++) {
+            if (roles[i] == null) {
+                roles[i] = indexOf(roles, Role.NAME) < 0 && votes[i][Role.NAME.ordinal()] > 0 ? Role.NAME : Role.OTHER;
+            }
+        }
+    }
+
+    static Role classify(String text, LabValue value) {
+        if (text.isEmpty()) {
+            return Role.OTHER;
+        }
+        if (LabValueParser.parse(text, value) != LabValue.INVALID && value.isNumeric()) {
+            return Role.VALUE;
+        }
+        if (RANGE.matcher(text).matches()) {
+            return Role.RANGE;
+        }
+        if (UNIT.matcher(text).matches()) {
+            return Role.UNIT;
+        }
+        return LETTER.matcher(text).find() ? Role.NAME : Role.OTHER;
+    }
+
+    /*
+     * Needs a name with letters and a value, the other cells may be missing
+     */
+    private static String row(List<Cell> line, Role[] roles, int index) {
+        String[] cells = new String[Role.values().length];
+        for (Cell cell : line) {
+            if (cell.column < 0) {
+                return null;
+            }
+            int role = roles[cell.column].ordinal();
+            cells[role] = cells[role] == null ? cell.text() : cells[role] + " " + cell.text();
+        }
+        String name = cells[Role.NAME.ordinal()];
+        String value = cells[Role.VALUE.ordinal()];
+        if (name == null || value == null || !LETTER.matcher(name).find()
+                || VALUE_HEADER.matcher(value.toLowerCase(Locale.GERMAN)).find()) {
+            return null;
+        }
+        return index + " -> " + name
+                + CELL_SEPARATOR + value
+                + CELL_SEPARATOR + nullToEmpty(cells[Role.UNIT.ordinal()])
+                + CELL_SEPARATOR + nullToEmpty(cells[Role.RANGE.ordinal()]);
+    }
+
+    private static int indexOf(Role[] roles, Role role) {
+        for (int i = 0; i < roles.length; i++) {
+            if (roles[i] == role) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String nullToEmpty(String text) {
+        return text == null ? "" : text;
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.api.storage;
+
+import java.nio.file.Path;
+
+/*
+ * A stored upload, identified by the SHA-256 hash of its content
+ */
+public final class DocumentHandle {
+
+	private final String hash;
+	private final Path path;
+	private final long size;
+	private final boolean deduplicated;
+
+	public DocumentHandle(String hash, Path path, long size, boolean deduplicated) {
+		this.hash = hash;
+		this.path = path;
+		this.size = size;
+		this.deduplicated = deduplicated;
+	}
+
+	/**
+	 * Lower case hex SHA-256 of the content
+	 */
+	public String getHash() {
+		return hash;
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * True if the same content had been stored before and the upload was discarded
+	 */
+	public boolean isDeduplicated() {
+		return deduplicated;
+	}
+
+	@Override
+	public String toString() {
+		return hash + " (" + path + ")";
+	}
+
+}
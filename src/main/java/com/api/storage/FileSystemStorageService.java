@@ -4,10 +4,16 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 import org.json.JSONException;
@@ -17,48 +23,128 @@ import org.springframework.core.io.UrlResource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.api.metrics.PipelineMetrics;
+import com.api.util.AtomicFiles;
+import com.api.util.Hashes;
+
 @Service
 public class FileSystemStorageService implements StorageService {
 
+	private static final Pattern DOCUMENT_NAME = Pattern.compile("([0-9a-f]{64})\\.[a-z0-9]{1,5}");
+	private static final Pattern EXTENSION = Pattern.compile("[a-z0-9]{1,5}");
+	private static final String INCOMING = "incoming";
+
 	private Path rootLocation;
 
+	private StorageProperties.Mode mode = StorageProperties.Mode.FLAT;
+
 	public FileSystemStorageService() {
 	}
 
 	@Autowired
 	public FileSystemStorageService(StorageProperties properties) {
 		this.rootLocation = Paths.get(properties.getLocation());
+		this.mode = properties.getMode();
 	}
 
 	@Override
 	public void store(MultipartFile file) throws JSONException, InterruptedException {
+		if (file.isEmpty()) {
+			throw new StorageException("Failed to store empty file.");
+		}
+		try (InputStream inputStream = file.getInputStream()) {
+			PipelineMetrics.time(PipelineMetrics.STORE, () -> {
+				store(file.getOriginalFilename(), inputStream);
+				return null;
+			});
+		} catch (IOException e) {
+			throw new StorageException("Failed to store file.", e);
+		}
+	}
+
+	@Override
+	public void store(String filename, InputStream content) {
 		try {
-			if (file.isEmpty()) {
-				throw new StorageException("Failed to store empty file.");
-			}
 			Path destinationFile = this.rootLocation.resolve(
-					Paths.get(file.getOriginalFilename()))
+					Paths.get(filename))
 					.normalize().toAbsolutePath();
 			if (!destinationFile.getParent().equals(this.rootLocation.toAbsolutePath())) {
 				// This is a security check
 				throw new StorageException(
 						"Cannot store file outside current directory.");
 			}
-			try (InputStream inputStream = file.getInputStream()) {
-				Files.copy(inputStream, destinationFile,
+			Files.copy(content, destinationFile,
+					StandardCopyOption.REPLACE_EXISTING);
+			if (destinationFile.getFileName().toString().endsWith(".pdf")) {
+				Files.move(destinationFile, destinationFile.resolveSibling("data.pdf"));
+			}
+		} catch (IOException e) {
+			throw new StorageException("Failed to store file.", e);
+		}
+	}
+
+	@Override
+	public DocumentHandle storeDocument(String filename, InputStream content) {
+		return PipelineMetrics.time(PipelineMetrics.STORE, () -> write(filename, content));
+	}
+
+	private DocumentHandle write(String filename, InputStream content) {
+		MessageDigest digest = Hashes.sha256();
+		if (!isContentAddressed()) {
+			store(filename, new DigestInputStream(content, digest));
+			Path stored = filename.endsWith(".pdf") ? rootLocation.resolve("data.pdf") : rootLocation.resolve(filename);
+			try {
+				return new DocumentHandle(HexFormat.of().formatHex(digest.digest()),
+						stored.toAbsolutePath(), Files.size(stored), false);
+			} catch (IOException e) {
+				throw new StorageException("Failed to store file.", e);
+			}
+		}
+		try {
+			// hash while writing to a temporary file, the final name is only known afterwards
+			Path incoming = Files.createDirectories(rootLocation.resolve(INCOMING));
+			Path temporary = Files.createTempFile(incoming, "upload-", ".tmp");
+			long size;
+			try {
+				size = Files.copy(new DigestInputStream(content, digest), temporary,
 						StandardCopyOption.REPLACE_EXISTING);
-				if (destinationFile.getFileName().toString().endsWith(".pdf")) {
-					Files.move(destinationFile, destinationFile.resolveSibling("data.pdf"));
-				}
+			} catch (IOException e) {
+				Files.deleteIfExists(temporary);
+				throw e;
+			}
+			if (size == 0) {
+				Files.deleteIfExists(temporary);
+				throw new StorageException("Failed to store empty file.");
+			}
+			String hash = HexFormat.of().formatHex(digest.digest());
+			Path document = documentPath(hash, extension(filename));
+			if (Files.exists(document)) {
+				Files.delete(temporary);
+				return new DocumentHandle(hash, document.toAbsolutePath(), size, true);
 			}
+			Files.createDirectories(document.getParent());
+			// a concurrent upload of the same content would write the same bytes
+			AtomicFiles.move(temporary, document);
+			return new DocumentHandle(hash, document.toAbsolutePath(), size, false);
 		} catch (IOException e) {
 			throw new StorageException("Failed to store file.", e);
 		}
 	}
 
+	@Override
+	public boolean isContentAddressed() {
+		return mode == StorageProperties.Mode.CONTENT_ADDRESSED;
+	}
+
 	@Override
 	public Stream<Path> loadAll() {
 		try {
+			if (isContentAddressed()) {
+				Path incoming = rootLocation.resolve(INCOMING);
+				return Files.walk(this.rootLocation, 3)
+						.filter(path -> !path.startsWith(incoming) && Files.isRegularFile(path))
+						.map(this.rootLocation::relativize);
+			}
 			return Files.walk(this.rootLocation, 1)
 					.filter(path -> !path.equals(this.rootLocation))
 					.map(this.rootLocation::relativize);
@@ -70,6 +156,11 @@ public class FileSystemStorageService implements StorageService {
 
 	@Override
 	public Path load(String filename) {
+		Matcher matcher = DOCUMENT_NAME.matcher(filename);
+		if (isContentAddressed() && matcher.matches()) {
+			String hash = matcher.group(1);
+			return rootLocation.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(filename);
+		}
 		return rootLocation.resolve(filename);
 	}
 
@@ -115,4 +206,18 @@ public class FileSystemStorageService implements StorageService {
 	public Path getRootLocation() {
 		return rootLocation;
 	}
+
+	/**
+	 * Two levels of shards keep the folders small, ab/cd/abcd...ef.pdf
+	 */
+	private Path documentPath(String hash, String extension) {
+		return rootLocation.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4))
+				.resolve(hash + "." + extension);
+	}
+
+	private static String extension(String filename) {
+		int dot = filename == null ? -1 : filename.lastIndexOf('.');
+		String extension = dot < 0 ? "" : filename.substring(dot + 1).toLowerCase(Locale.ROOT);
+		return EXTENSION.matcher(extension).matches() ? extension : "pdf";
+	}
 }
@@ -6,8 +6,22 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 @ConfigurationProperties("storage")
 public class StorageProperties {
 
+	public enum Mode {
+		/**
+		 * Every upload becomes data.pdf in the upload folder, one document at a time
+		 */
+		FLAT,
+		/**
+		 * Uploads are kept under their SHA-256 hash in ab/cd/<hash>.pdf, identical
+		 * uploads are stored once and documents can be processed concurrently
+		 */
+		CONTENT_ADDRESSED
+	}
+
 	private String location = "upload-dir";
 
+	private Mode mode = Mode.FLAT;
+
 	/**
 	 * Folder location for storing files
 	 */
@@ -28,4 +42,12 @@ public class StorageProperties {
 		this.location = location;
 	}
 
+	public Mode getMode() {
+		return mode;
+	}
+
+	public void setMode(Mode mode) {
+		this.mode = mode;
+	}
+
 }
@@ -4,6 +4,7 @@ package com.api.storage;
 import org.json.JSONException;
 import org.springframework.core.io.Resource;
 import org.springframework.web.multipart.MultipartFile;
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.stream.Stream;
 
@@ -13,6 +14,20 @@ public interface StorageService {
 
 	void store(MultipartFile file) throws JSONException, InterruptedException;
 
+	void store(String filename, InputStream content);
+
+	/**
+	 * Store an upload and return a handle to it, in content addressed mode identical
+	 * content is stored only once
+	 */
+	DocumentHandle storeDocument(String filename, InputStream content);
+
+	/**
+	 * True if documents live side by side under their hash, false if every upload
+	 * replaces upload-dir/data.pdf
+	 */
+	boolean isContentAddressed();
+
 	Stream<Path> loadAll();
 
 	Path load(String filename);
@@ -0,0 +1,43 @@
+package com.api.util;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/*
+ * Files that are written next to their final name and moved there when
+ * complete, a reader never sees a half written file
+ */
+public final class AtomicFiles {
+
+    private AtomicFiles() {
+    }
+
+    /*
+     * The parent folder has to exist
+     */
+    public static void write(Path target, byte[] content) throws IOException {
+        Path temporary = Files.createTempFile(target.getParent(), target.getFileName() + "-", ".tmp");
+        try {
+            Files.write(temporary, content);
+            move(temporary, target);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /*
+     * Replaces the target, falls back to a plain move on file systems without
+     * atomic moves
+     */
+    public static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+}
@@ -1,62 +1,87 @@
 package com.api.util;
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Bundle.BundleType;
 
 import com.api.BloodDetails;
-import com.itextpdf.html2pdf.HtmlConverter;
+import com.api.fhir.Ids;
 
 import org.hl7.fhir.r4.model.DiagnosticReport;
 import org.hl7.fhir.r4.model.Observation;
 
 import ca.uhn.fhir.context.FhirContext;
-
+import ca.uhn.fhir.parser.IParser;
+
+/*
+ * Writes random reports as FHIR Bundle, text table and HTML table
+ * Files are named <kind>-<run id>-<number>, the number comes from a counter,
+ * so nothing has to be looked up on disk and generators of the same run can
+ * share one counter
+ * Not thread safe, parallel runs use one generator per thread
+ */
 public class DataGenerator {
 
+    private static final DateTimeFormatter RUN_ID = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
     BloodDetails bloodDetails;
     List<Observation> observations;
     DiagnosticReport report;
 
-    private FhirContext fhirContext;
+    private final Path folder;
+    private final String runId;
+    private final AtomicLong sequence;
+    private final IParser jsonParser;
 
     public DataGenerator(FhirContext fhirContext) {
-        this.fhirContext = fhirContext;
+        this(fhirContext, Path.of("test-output"), newRunId(), new AtomicLong());
+    }
+
+    public DataGenerator(FhirContext fhirContext, Path folder, String runId, AtomicLong sequence) {
+        this.folder = folder;
+        this.runId = runId;
+        this.sequence = sequence;
+        this.jsonParser = fhirContext.newJsonParser().setPrettyPrint(true);
         this.bloodDetails = new BloodDetails();
         bloodDetails.fillRandom();
         observations = bloodDetails.toObservations();
         report = bloodDetails.toReport(observations);
     }
 
-    public void generateTestBundle() {
+    /*
+     * Start time plus a random suffix, so runs started in the same second do not collide
+     */
+    public static String newRunId() {
+        return LocalDateTime.now().format(RUN_ID) + "-"
+                + Integer.toString(ThreadLocalRandom.current().nextInt(36 * 36 * 36), 36);
+    }
+
+    public void generateTestBundle(long number) {
         Bundle bundle = new Bundle();
         bundle.setType(BundleType.COLLECTION);
         bundle.addEntry(new Bundle.BundleEntryComponent().setResource(report));
-        int c = 1;
         for (Observation o : observations) {
-            bundle.addEntry().setResource(o).setFullUrl("blood:tofhir:" + c++);
+            bundle.addEntry().setResource(o).setFullUrl(Ids.urn());
         }
-        String output = fhirContext.newJsonParser().setPrettyPrint(true).encodeResourceToString(bundle);
-        String baseFilename = "test-output/report";
-        String extension = ".json";
-        File file = new File(baseFilename + extension);
-        int counter = 1;
-        while (file.exists()) {
-            file = new File(baseFilename + "-" + counter + extension);
-            counter++;
-        }
-        try (FileWriter writer = new FileWriter(file)) {
-            writer.write(output);
+        try (Writer writer = Files.newBufferedWriter(file("report", number, ".json"), StandardCharsets.UTF_8)) {
+            jsonParser.encodeResourceToWriter(bundle, writer);
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
         }
     }
 
-    public void generateTestTable() {
+    public void generateTestTable(long number) {
         StringBuilder output = new StringBuilder();
         output.append("Blood Test Report\n\n");
         output.append("| Attribute | Value |\n");
@@ -71,22 +96,10 @@ public class DataGenerator {
             output.append("| ").append(o.getCode().getCodingFirstRep().getDisplay()).append(" | ")
                     .append(o.getValueQuantity().getValue()).append(" |\n");
         }
-        String baseFilename = "test-output/table";
-        String extension = ".txt";
-        File file = new File(baseFilename + extension);
-        int counter = 1;
-        while (file.exists()) {
-            file = new File(baseFilename + "-" + counter + extension);
-            counter++;
-        }
-        try (FileWriter writer = new FileWriter(file)) {
-            writer.write(output.toString());
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        write(file("table", number, ".txt"), output);
     }
 
-    public void generateTestHTMLTable() {
+    public void generateTestHTMLTable(long number) {
         StringBuilder output = new StringBuilder();
         output.append("<html><head><title>Blood Test Report</title></head><body>");
         output.append("<h1>Blood Test Report</h1>");
@@ -102,52 +115,20 @@ public class DataGenerator {
                     .append(o.getValueQuantity().getValue()).append("</td></tr>");
         }
         output.append("</table></body></html>");
-        String baseFilename = "test-output/table";
-        String extension = ".html";
-        File file = new File(baseFilename + extension);
-        int counter = 1;
-        while (file.exists()) {
-            file = new File(baseFilename + "-" + counter + extension);
-            counter++;
-        }
-        try (FileWriter writer = new FileWriter(file)) {
-            writer.write(output.toString());
-        } catch (IOException e) {
-            e.printStackTrace();
-
-        }
+        write(file("table", number, ".html"), output);
     }
 
-    public void convertHtmlToPdfInFolder() {
-        File folder = new File("test-output");
-        if (!folder.exists() || !folder.isDirectory()) {
-            System.out.println("The folder 'test-output' does not exist or is not a directory.");
-            return;
-        }
-
-        File[] files = folder.listFiles((dir, name) -> name.toLowerCase().endsWith(".html"));
-        if (files == null || files.length == 0) {
-            System.out.println("No HTML files found in the 'test-output' folder.");
-            return;
-        }
-
-        for (File htmlFile : files) {
-            String pdfFilename = htmlFile.getAbsolutePath().replace(".html", ".pdf");
-            File pdfFile = new File(pdfFilename);
-            try {
-                HtmlConverter.convertToPdf(htmlFile, pdfFile);
-                System.out.println("Converted " + htmlFile.getName() + " to " + pdfFile.getName());
-            } catch (IOException e) {
-                System.err.println("Failed to convert " + htmlFile.getName() + " to PDF.");
-                e.printStackTrace();
-            }
-        }
+    /*
+     * The next number of the shared counter
+     */
+    public void generateAll() {
+        generateAll(sequence.incrementAndGet());
     }
 
-    public void generateAll() {
-        generateTestBundle();
-        generateTestTable();
-        generateTestHTMLTable();
+    public void generateAll(long number) {
+        generateTestBundle(number);
+        generateTestTable(number);
+        generateTestHTMLTable(number);
     }
 
     public void reset() {
@@ -156,4 +137,20 @@ public class DataGenerator {
         report = bloodDetails.toReport(observations);
     }
 
+    public String getRunId() {
+        return runId;
+    }
+
+    private Path file(String kind, long number, String extension) {
+        return folder.resolve(kind + "-" + runId + "-" + number + extension);
+    }
+
+    private static void write(Path file, CharSequence content) {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.append(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
 }
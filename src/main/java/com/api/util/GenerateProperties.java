@@ -0,0 +1,51 @@
+package com.api.util;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("generate")
+public class GenerateProperties {
+
+    /**
+     * Folder the generated reports are written to
+     */
+    private String location = "test-output";
+
+    /**
+     * Upper bound for the number of reports of one request
+     */
+    private int maxCount = 1_000_000;
+
+    /**
+     * Upper bound for the threads of one request, 0 allows one per CPU core
+     */
+    private int maxParallelism = 0;
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    public void setMaxCount(int maxCount) {
+        this.maxCount = maxCount;
+    }
+
+    public int getMaxParallelism() {
+        return maxParallelism;
+    }
+
+    public void setMaxParallelism(int maxParallelism) {
+        this.maxParallelism = maxParallelism;
+    }
+
+    public int maxParallelism() {
+        return maxParallelism > 0 ? maxParallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+}
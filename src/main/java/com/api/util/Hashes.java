@@ -0,0 +1,34 @@
+package com.api.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/*
+ * SHA-256 as used for document hashes, cache keys and catalog versions
+ */
+public final class Hashes {
+
+    private Hashes() {
+    }
+
+    /*
+     * A new digest per call, MessageDigest is not thread safe
+     */
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+     * Lower case hex, 64 characters
+     */
+    public static String sha256Hex(byte[] content) {
+        return HexFormat.of().formatHex(sha256().digest(content));
+    }
+
+}
@@ -0,0 +1,199 @@
+package com.api.util;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.itextpdf.html2pdf.ConverterProperties;
+import com.itextpdf.html2pdf.HtmlConverter;
+import com.itextpdf.html2pdf.resolver.font.DefaultFontProvider;
+import com.itextpdf.layout.font.FontProvider;
+import com.itextpdf.layout.font.FontSet;
+
+/*
+ * Converts the HTML tables of the test data to PDF
+ * Only files without a PDF or with an older one are converted, so a folder
+ * that grows run by run only costs the new files
+ * The fonts are loaded once and shared, every thread gets its own
+ * FontProvider on top of them because a FontProvider caches font selections
+ * and is not thread safe
+ * A PDF is written next to its final name and moved there when complete, an
+ * aborted conversion never leaves a PDF that looks up to date
+ */
+@Component
+public class HtmlToPdfConverter {
+
+    private static final Logger logger = LoggerFactory.getLogger(HtmlToPdfConverter.class);
+
+    private static final long PROGRESS_INTERVAL_NANOS = 5_000_000_000L;
+
+    private volatile FontSet fontSet;
+    private volatile String defaultFontFamily;
+
+    /*
+     * All HTML files of the folder
+     */
+    public Map<String, Object> convertFolder(Path folder, int threads) throws IOException {
+        return convertFolder(folder, "*.{html,HTML}", threads);
+    }
+
+    /*
+     * The HTML files of the folder matching the glob, like "table-<run id>-*.html"
+     */
+    public Map<String, Object> convertFolder(Path folder, String glob, int threads) throws IOException {
+        long started = System.nanoTime();
+        List<Path> pending = new ArrayList<>();
+        int skipped = 0;
+        if (Files.isDirectory(folder)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, glob)) {
+                for (Path html : files) {
+                    if (isUpToDate(html, pdfOf(html))) {
+                        skipped++;
+                    } else {
+                        pending.add(html);
+                    }
+                }
+            }
+        }
+        AtomicInteger converted = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        if (!pending.isEmpty()) {
+            convert(pending, Math.max(1, Math.min(threads, pending.size())), converted, failed, started);
+        }
+        long millis = (System.nanoTime() - started) / 1_000_000;
+        logger.info("Converted {} HTML files in {} to PDF in {} ms, {} up to date, {} failed",
+                converted.get(), folder, millis, skipped, failed.get());
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("converted", converted.get());
+        result.put("skipped", skipped);
+        result.put("failed", failed.get());
+        result.put("millis", millis);
+        result.put("perSecond", millis == 0 ? converted.get() : converted.get() * 1000L / millis);
+        return result;
+    }
+
+    private void convert(List<Path> pending, int threads, AtomicInteger converted, AtomicInteger failed,
+            long started) throws IOException {
+        AtomicInteger next = new AtomicInteger();
+        AtomicLong lastReport = new AtomicLong(started);
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "html2pdf-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    ConverterProperties properties = newConverterProperties(pending.get(0).getParent());
+                    for (int index = next.getAndIncrement(); index < pending.size(); index = next.getAndIncrement()) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            return;
+                        }
+                        Path html = pending.get(index);
+                        if (convert(html, properties)) {
+                            converted.incrementAndGet();
+                        } else {
+                            failed.incrementAndGet();
+                        }
+                        reportProgress(converted.get() + failed.get(), pending.size(), started, lastReport);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while converting HTML to PDF", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Converting HTML to PDF failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /*
+     * A broken file is logged and counted, the others are still converted
+     */
+    private boolean convert(Path html, ConverterProperties properties) {
+        Path pdf = pdfOf(html);
+        Path temporary = pdf.resolveSibling(pdf.getFileName() + ".tmp");
+        try {
+            HtmlConverter.convertToPdf(html.toFile(), temporary.toFile(), properties);
+            AtomicFiles.move(temporary, pdf);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to convert {} to PDF", html.getFileName(), e);
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+                // the next run converts the file again anyway
+            }
+            return false;
+        }
+    }
+
+    /*
+     * At most one thread logs per interval
+     */
+    private static void reportProgress(int done, int total, long started, AtomicLong lastReport) {
+        long now = System.nanoTime();
+        long last = lastReport.get();
+        if (now - last < PROGRESS_INTERVAL_NANOS || !lastReport.compareAndSet(last, now)) {
+            return;
+        }
+        long millis = Math.max(1, (now - started) / 1_000_000);
+        logger.info("Converted {} of {} HTML files, {} per second", done, total, done * 1000L / millis);
+    }
+
+    private ConverterProperties newConverterProperties(Path folder) {
+        loadFonts();
+        return new ConverterProperties()
+                .setBaseUri(folder.toAbsolutePath().toUri().toString())
+                .setFontProvider(new FontProvider(fontSet, defaultFontFamily));
+    }
+
+    /*
+     * Scanning the fonts is the expensive part of a converter, done on first use only
+     */
+    private void loadFonts() {
+        if (fontSet != null) {
+            return;
+        }
+        synchronized (this) {
+            if (fontSet == null) {
+                DefaultFontProvider fonts = new DefaultFontProvider();
+                defaultFontFamily = fonts.getDefaultFontFamily();
+                fontSet = fonts.getFontSet();
+            }
+        }
+    }
+
+    private static boolean isUpToDate(Path html, Path pdf) throws IOException {
+        return Files.exists(pdf)
+                && Files.getLastModifiedTime(pdf).compareTo(Files.getLastModifiedTime(html)) >= 0;
+    }
+
+    private static Path pdfOf(Path html) {
+        String name = html.getFileName().toString();
+        return html.resolveSibling(name.substring(0, name.length() - ".html".length()) + ".pdf");
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.api.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/*
+ * Generates test reports on a pool that lives for one request
+ * Every thread has its own DataGenerator and takes the next report number
+ * from a counter shared by the run, so the threads never wait for each other
+ * and file names never have to be probed
+ */
+@Service
+public class TestDataService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TestDataService.class);
+
+    private final GenerateProperties properties;
+    private final FhirContext fhirContext;
+    private final HtmlToPdfConverter htmlToPdfConverter;
+
+    public TestDataService(GenerateProperties properties, FhirContext fhirContext,
+            HtmlToPdfConverter htmlToPdfConverter) {
+        this.properties = properties;
+        this.fhirContext = fhirContext;
+        this.htmlToPdfConverter = htmlToPdfConverter;
+    }
+
+    public int getMaxCount() {
+        return properties.getMaxCount();
+    }
+
+    public int getMaxParallelism() {
+        return properties.maxParallelism();
+    }
+
+    /*
+     * Writes count reports, each as Bundle, text and HTML table, and converts
+     * the HTML tables of this run to PDF on the same number of threads
+     */
+    public Map<String, Object> generate(int count, int parallelism) throws IOException {
+        Path folder = Files.createDirectories(Path.of(properties.getLocation()));
+        String runId = DataGenerator.newRunId();
+        int threads = Math.max(1, Math.min(parallelism, count));
+        AtomicLong next = new AtomicLong();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "generate-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long started = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    DataGenerator generator = new DataGenerator(fhirContext, folder, runId, next);
+                    for (long number = next.incrementAndGet(); number <= count; number = next.incrementAndGet()) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            return;
+                        }
+                        generator.generateAll(number);
+                        generator.reset();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while generating run " + runId, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException("Generating run " + runId + " failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        long millis = (System.nanoTime() - started) / 1_000_000;
+        logger.info("Generated {} reports of run {} on {} threads in {} ms", count, runId, threads, millis);
+        Map<String, Object> pdf = htmlToPdfConverter.convertFolder(folder, "table-" + runId + "-*.html", threads);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("runId", runId);
+        result.put("count", count);
+        result.put("parallelism", threads);
+        result.put("location", folder.toAbsolutePath().toString());
+        result.put("millis", millis);
+        result.put("pdf", pdf);
+        result.put("totalMillis", (System.nanoTime() - started) / 1_000_000);
+        return result;
+    }
+
+}
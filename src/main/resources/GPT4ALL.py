@@ -1,27 +1,83 @@
+import os
 import sys
 import asyncio
 from gpt4all import GPT4All
 
-# Initialize the GPT4All model
-try:
-    model = GPT4All("qwen2-1_5b-instruct-q4_0.gguf")  # Ensure the model file is in the same directory
-except Exception as e:
-    print("Failed to initialize GPT4All model:", e)
-    sys.exit(1)
+MODEL_NAME = "qwen2-1_5b-instruct-q4_0.gguf"
 
-async def run_provider():
+# In --serve mode prompts and responses are exchanged as frames: a header line
+# "@@FRAME <byte length>" followed by exactly that many UTF-8 encoded bytes.
+# A prompt the model failed on is answered with an "@@ERROR <byte length>"
+# frame carrying the message instead, so it cannot be taken for a completion.
+FRAME_MARKER = b"@@FRAME "
+ERROR_MARKER = b"@@ERROR "
+
+
+def load_model(name):
+    try:
+        return GPT4All(name)  # Ensure the model file is in the same directory
+    except Exception as e:
+        print("Failed to initialize GPT4All model:", e, file=sys.stderr)
+        sys.exit(1)
+
+
+def generate(model, prompt):
+    with model.chat_session():
+        return model.generate(prompt, max_tokens=1024)
+
+
+def write_frame(out, text, marker=FRAME_MARKER):
+    data = text.encode("utf-8")
+    out.write(marker + str(len(data)).encode("ascii") + b"\n")
+    out.write(data)
+    out.flush()
+
+
+def read_frame(inp):
+    header = inp.readline()
+    while header and not header.startswith(FRAME_MARKER):
+        header = inp.readline()
+    if not header:
+        return None
+    length = int(header[len(FRAME_MARKER):])
+    return inp.read(length).decode("utf-8")
+
+
+def serve(model_name):
+    # Keep the protocol on a private copy of stdout and send everything else
+    # (library logging, native prints) to stderr so it cannot corrupt frames.
+    out = os.fdopen(os.dup(1), "wb")
+    os.dup2(2, 1)
+    inp = sys.stdin.buffer
+
+    model = load_model(model_name)
+    write_frame(out, "READY")
+    while True:
+        prompt = read_frame(inp)
+        if prompt is None:
+            break
+        try:
+            response = generate(model, prompt)
+        except Exception as e:
+            write_frame(out, str(e) or type(e).__name__, ERROR_MARKER)
+            continue
+        write_frame(out, "GPT4All: " + response)
+
+
+async def run_provider(model, message):
     try:
-        with model.chat_session():
-            response = model.generate(sys.argv[1], max_tokens=1024)
-            print("GPT4All:", response)
+        print("GPT4All:", generate(model, message))
     except Exception as e:
         print("GPT4All:", e)
 
-async def main():
+async def main(message):
     try:
-        await run_provider()
+        await run_provider(load_model(MODEL_NAME), message)
     except Exception as e:
         print("Error:", e)
 
 if __name__ == "__main__":
-    asyncio.run(main())
\ No newline at end of file
+    if len(sys.argv) > 1 and sys.argv[1] == "--serve":
+        serve(sys.argv[2] if len(sys.argv) > 2 else MODEL_NAME)
+    else:
+        asyncio.run(main(sys.argv[1]))
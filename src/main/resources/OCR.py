@@ -1,7 +1,12 @@
 from ExtractTable import ExtractTable
 import ssl
+import sys
+# the document to read can be passed as first argument, content addressed storage keeps many of them
+filepath = sys.argv[1] if len(sys.argv) > 1 else "upload-dir/data.pdf"
+# pages without a text layer as "1,3-4", the others are read by PDFBox
+pages = sys.argv[2] if len(sys.argv) > 2 else "all"
 print(ssl.OPENSSL_VERSION)
 et_sess = ExtractTable(api_key="")        # Replace your VALID API Key here
 print(et_sess.check_usage())        # Checks the API Key validity as well as shows associated plan usage 
-table_data = et_sess.process_file(filepath="upload-dir/data.pdf", output_format="df", pages="all") # To process PDF, make use of pages ("1", "1,3-4", "all") params in the read_pdf function
+table_data = et_sess.process_file(filepath=filepath, output_format="df", pages=pages) # To process PDF, make use of pages ("1", "1,3-4", "all") params in the read_pdf function
 print(table_data)        # Prints the extracted table data in the form of a Pandas DataFrame
@@ -0,0 +1,93 @@
+package com.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.api.nlp.NlpClient;
+
+class BlockingExecutorTests {
+
+    BlockingProperties properties = new BlockingProperties();
+
+    BlockingExecutor executor;
+
+    BlockingExecutor executor(int threads, int queueCapacity) {
+        properties.setThreads(threads);
+        properties.setQueueCapacity(queueCapacity);
+        executor = new BlockingExecutor(properties);
+        return executor;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void rejectsCallsWhenTheQueueIsFull() throws Exception {
+        BlockingExecutor executor = executor(1, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        NlpClient model = prompt -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return prompt;
+        };
+        BloodController controller = new BloodController(null, model, null, null, null, null, null, null, executor,
+                null);
+
+        CompletableFuture<String> running = controller.getChat("running");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> queued = executor.submit(() -> "queued");
+
+        assertThrows(RejectedExecutionException.class, () -> executor.submit(() -> "rejected"));
+        ResponseStatusException rejected = assertThrows(ResponseStatusException.class,
+                () -> controller.getChat("rejected"));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, rejected.getStatusCode());
+
+        release.countDown();
+        assertEquals("running", running.get(10, TimeUnit.SECONDS));
+        assertEquals("queued", queued.get(10, TimeUnit.SECONDS));
+        // the queue has room again
+        assertEquals("next", executor.submit(() -> "next").get(10, TimeUnit.SECONDS));
+    }
+
+    /*
+     * Spring MVC resolves the exception a future fails with, a CompletionException
+     * around it would turn every failure into a 500
+     */
+    @Test
+    void failsTheFutureWithTheExceptionOfTheCall() throws Exception {
+        BlockingExecutor executor = executor(1, 1);
+        IOException failure = new IOException("model not loaded");
+
+        CompletableFuture<String> future = executor.submit(() -> {
+            throw failure;
+        });
+
+        ExecutionException thrown = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        assertSame(failure, thrown.getCause());
+        assertSame(failure, future.handle((value, e) -> e).get());
+    }
+
+}
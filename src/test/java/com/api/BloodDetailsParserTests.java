@@ -0,0 +1,110 @@
+package com.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hl7.fhir.r4.model.Observation;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class BloodDetailsParserTests {
+
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    Map<String, String> expected = new LinkedHashMap<>();
+
+    String llmOutput;
+
+    /*
+     * Rebuild the BloodDetails JSON behind expectedTestOutput.json and wrap it
+     * in prose the way GPT4All answers, with the OCR table echoed in front
+     */
+    @BeforeAll
+    void setUp() throws Exception {
+        JsonNode bundle = objectMapper.readTree(AppUtils.resolveResourcePath("expectedTestOutput.json").toFile());
+        JsonNode report = bundle.get("entry").get(0).get("resource");
+        expected.put("practitioner", report.get("performer").get(0).get("identifier").get("value").asText());
+        expected.put("patient", report.get("subject").get("identifier").get("value").asText());
+        expected.put("orderId", report.get("basedOn").get(0).get("identifier").get("value").asText());
+        for (JsonNode entry : bundle.get("entry")) {
+            JsonNode resource = entry.get("resource");
+            if ("Observation".equals(resource.get("resourceType").asText())) {
+                String identifier = resource.get("identifier").get(0).get("value").asText();
+                expected.put(identifier.substring(0, identifier.indexOf('-')),
+                        resource.get("valueQuantity").get("value").asText());
+            }
+        }
+        StringBuilder json = new StringBuilder("{\n  \"glucose\": null,\n");
+        expected.forEach((name, value) -> json.append("  \"").append(name).append("\": \"")
+                .append(value).append("\",\n"));
+        json.append("  \"materials\": [\"Serum\", \"EDTA\"],\n}");
+        llmOutput = "GPT4All: Here is the converted table "
+                + Files.readString(AppUtils.resolveResourcePath("testinput.txt"))
+                + "\n```json\n" + json + "\n```\nLet me know if you need anything else.";
+    }
+
+    @Test
+    void parsesFieldsOutOfProse() {
+        BloodDetails bloodDetails = BloodDetailsParser.parse(llmOutput);
+        assertEquals(expected.get("patient"), bloodDetails.getPatient());
+        assertEquals(expected.get("mcv"), bloodDetails.getMcv());
+        assertEquals(List.of("Serum", "EDTA"), bloodDetails.getMaterials());
+        assertNull(bloodDetails.getGlucose());
+    }
+
+    /*
+     * The path the controller took before, fixJson strips the blanks out of
+     * names, so only the observations are compared
+     */
+    @Test
+    void mapsTheSameObservationsAsFixJson() throws Exception {
+        BloodDetails fixed = objectMapper.readValue(AppUtils.fixJson(llmOutput), BloodDetails.class);
+
+        Map<String, String> values = values(BloodDetailsParser.parse(llmOutput));
+
+        assertEquals(expected.get("hemoglobin") + " g/dl", values.get("hemoglobin"));
+        assertEquals(values(fixed), values);
+    }
+
+    static Map<String, String> values(BloodDetails bloodDetails) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (Observation observation : bloodDetails.toObservations()) {
+            String identifier = observation.getIdentifierFirstRep().getValue();
+            values.put(identifier.substring(0, identifier.indexOf('-')), observation.hasValueQuantity()
+                    ? observation.getValueQuantity().getValue().toPlainString() + " "
+                            + observation.getValueQuantity().getUnit()
+                    : observation.getValue().primitiveValue());
+        }
+        return values;
+    }
+
+    @Test
+    void repairsCommas() {
+        BloodDetails bloodDetails = BloodDetailsParser.parse(
+                "{\"mcv\": 89,2,, \"hemoglobin\": \"14.6\" \"sodium\": , 'potassium': 4.4 }");
+        assertEquals("89.2", bloodDetails.getMcv());
+        assertEquals("14.6", bloodDetails.getHemoglobin());
+        assertNull(bloodDetails.getSodium());
+        assertEquals("4.4", bloodDetails.getPotassium());
+    }
+
+    @Test
+    void keepsFieldsOfTruncatedOutput() {
+        BloodDetails bloodDetails = BloodDetailsParser.parse(
+                "Sure: {\"patient\": \"MaxMustermann\", \"mcv\": \"89.2\", \"hemoglobin\": \"14.");
+        assertEquals("MaxMustermann", bloodDetails.getPatient());
+        assertEquals("89.2", bloodDetails.getMcv());
+        assertNull(bloodDetails.getHemoglobin());
+    }
+
+}
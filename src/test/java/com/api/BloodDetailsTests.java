@@ -0,0 +1,65 @@
+package com.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Date;
+import java.time.Instant;
+import java.util.List;
+
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.DiagnosticReport;
+import org.hl7.fhir.r4.model.Observation;
+import org.junit.jupiter.api.Test;
+
+import com.api.fhir.ConversionContext;
+import com.api.fhir.Ids;
+
+class BloodDetailsTests {
+
+    static final Instant NOW = Instant.parse("2024-03-01T10:15:30Z");
+
+    /*
+     * Dates the LLM copies from German reports are not ISO dates, they fall back to now
+     */
+    @Test
+    void mapsNonIsoDates() {
+        for (String date : List.of("09.11.2023", "", "gestern")) {
+            BloodDetails bloodDetails = withValues(date);
+            ConversionContext context = new ConversionContext(NOW, Ids::uuid7);
+            List<Observation> observations = bloodDetails.toObservations(context);
+            DiagnosticReport report = bloodDetails.toReport(observations, context);
+            String now = new DateTimeType(Date.from(NOW)).getValueAsString();
+            assertEquals(2, observations.size());
+            for (Observation observation : observations) {
+                assertEquals(now, observation.getEffectiveDateTimeType().getValueAsString());
+            }
+            assertEquals(now, report.getEffectiveDateTimeType().getValueAsString());
+        }
+    }
+
+    @Test
+    void keepsIsoDates() {
+        List<Observation> observations = withValues("2023-11-09").toObservations();
+        assertEquals(new DateTimeType(Date.valueOf("2023-11-09")).getValueAsString(),
+                observations.get(0).getEffectiveDateTimeType().getValueAsString());
+    }
+
+    @Test
+    void leavesObservationDateUnsetWithoutDate() {
+        List<Observation> observations = withValues(null).toObservations();
+        assertFalse(observations.isEmpty());
+        assertTrue(observations.stream().noneMatch(Observation::hasEffective));
+    }
+
+    static BloodDetails withValues(String date) {
+        BloodDetails bloodDetails = new BloodDetails();
+        bloodDetails.setPatient("Patient/1");
+        bloodDetails.setDate(date);
+        bloodDetails.setHemoglobin("14.2");
+        bloodDetails.setLeukocytes("6,1");
+        return bloodDetails;
+    }
+
+}
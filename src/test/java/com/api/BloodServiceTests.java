@@ -0,0 +1,116 @@
+package com.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.api.ocr.OcrProperties;
+import com.api.ocr.OcrRouter;
+import com.api.storage.FileSystemStorageService;
+import com.api.storage.StorageProperties;
+
+/*
+ * OCR in flat storage mode with the engines replaced by a router that
+ * answers with the content of the file, optionally after the test let it
+ */
+class BloodServiceTests {
+
+    static final String PDF = "%PDF-1.4 report";
+
+    @TempDir
+    Path folder;
+
+    OcrProperties ocrProperties = new OcrProperties();
+
+    CountDownLatch recognizing = new CountDownLatch(1);
+
+    CountDownLatch release = new CountDownLatch(0);
+
+    FileSystemStorageService storage;
+
+    BloodService bloodService() {
+        ocrProperties.setTextLayer(false);
+        storage = new FileSystemStorageService(new StorageProperties(folder.resolve("upload").toString()));
+        OcrRouter router = new OcrRouter(List.of(), ocrProperties) {
+            @Override
+            public List<String> recognize(Path document, List<Integer> pages, int pageCount) throws IOException {
+                String content = Files.readString(document);
+                recognizing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return List.of(content);
+            }
+        };
+        return new BloodService(storage, null, null, router, ocrProperties, null);
+    }
+
+    @Test
+    void readsAndClearsTheUploadFolder() throws IOException {
+        BloodService bloodService = bloodService();
+        storage.init();
+        storage.storeDocument("report.pdf", new ByteArrayInputStream(PDF.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(List.of(PDF), bloodService.ocr());
+
+        try (Stream<Path> files = Files.list(folder.resolve("upload"))) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    /*
+     * GET /blood must neither read the document of a running job nor delete it
+     * under the OCR stage
+     */
+    @Test
+    void waitsForTheOcrStageOfAJob() throws Exception {
+        BloodService bloodService = bloodService();
+        release = new CountDownLatch(1);
+        Path upload = Files.writeString(folder.resolve("job.pdf"), PDF);
+        CompletableFuture<List<String>> job = CompletableFuture.supplyAsync(() -> {
+            try {
+                return bloodService.ocr(upload);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        assertTrue(recognizing.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<List<String>> getBlood = CompletableFuture.supplyAsync(() -> {
+            try {
+                return bloodService.ocr();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertFalse(getBlood.isDone());
+
+        release.countDown();
+        assertEquals(List.of(PDF), job.get(10, TimeUnit.SECONDS));
+        // the job cleared the upload folder before GET /blood got its turn
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> getBlood.get(10, TimeUnit.SECONDS));
+        assertTrue(failure.getCause().getCause() instanceof NoSuchFileException, failure.getCause().toString());
+    }
+
+}
@@ -0,0 +1,284 @@
+package com.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.api.nlp.NlpProperties;
+import com.api.nlp.NlpWorkerPool;
+import com.api.ocr.FakeOcrEngine;
+import com.api.util.DataGenerator;
+import com.api.util.HtmlToPdfConverter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/*
+ * Uploads generated PDFs to POST /jobs at a fixed concurrency and waits for
+ * their Bundles, with a stand-in OCR engine answering testinput.txt and a
+ * stand-in language model answering the values of expectedTestOutput.json
+ * Reports latency percentiles, throughput and error rate and checks every
+ * Bundle against expectedTestOutput.json
+ * Only runs when asked for, e.g.
+ * mvn test -Dtest=LoadTests -Dloadtest=true -Dloadtest.requests=500 -Dloadtest.concurrency=16
+ * Latencies of the stand-ins are set with -Dloadtest.ocr-millis and -Dloadtest.llm-millis
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("loadtest")
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+class LoadTests {
+
+    static final int REQUESTS = Integer.getInteger("loadtest.requests", 200);
+    static final int CONCURRENCY = Integer.getInteger("loadtest.concurrency", 8);
+    static final int DOCUMENTS = Integer.getInteger("loadtest.documents", 50);
+    static final long OCR_MILLIS = Long.getLong("loadtest.ocr-millis", 200);
+    static final long LLM_MILLIS = Long.getLong("loadtest.llm-millis", 500);
+    static final double MAX_ERROR_RATE = Double.parseDouble(System.getProperty("loadtest.max-error-rate", "0"));
+
+    static final ObjectMapper objectMapper = new ObjectMapper();
+
+    /*
+     * Analyte to value of expectedTestOutput.json
+     */
+    static final Map<String, String> expected = new LinkedHashMap<>();
+
+    static String llmOutput;
+
+    @TestConfiguration
+    static class StandIns {
+
+        @Bean
+        FakeOcrEngine stubOcrEngine() throws IOException {
+            return new FakeOcrEngine("stub", Files.readAllLines(AppUtils.resolveResourcePath("testinput.txt")))
+                    .pageMillis(OCR_MILLIS)
+                    .concurrency(CONCURRENCY);
+        }
+
+        /*
+         * Replaces the pool of GPT4ALL.py processes, the completion cache still sits in front of it
+         */
+        @Bean
+        NlpWorkerPool nlpWorkerPool(NlpProperties properties) {
+            return new NlpWorkerPool(properties) {
+                @Override
+                public String complete(String prompt) {
+                    try {
+                        Thread.sleep(LLM_MILLIS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return llmOutput;
+                }
+            };
+        }
+
+    }
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    FhirContext fhirContext;
+
+    @TempDir
+    Path folder;
+
+    HttpClient client = HttpClient.newHttpClient();
+
+    List<byte[]> documents = new ArrayList<>();
+
+    /*
+     * The LLM answer is built before the context starts, the stand-in needs it
+     */
+    static {
+        try {
+            JsonNode bundle = objectMapper.readTree(AppUtils.resolveResourcePath("expectedTestOutput.json").toFile());
+            for (JsonNode entry : bundle.get("entry")) {
+                JsonNode resource = entry.get("resource");
+                if ("Observation".equals(resource.get("resourceType").asText())) {
+                    String identifier = resource.get("identifier").get(0).get("value").asText();
+                    expected.put(identifier.substring(0, identifier.indexOf('-')),
+                            resource.get("valueQuantity").get("value").asText());
+                }
+            }
+            JsonNode report = bundle.get("entry").get(0).get("resource");
+            Map<String, String> fields = new LinkedHashMap<>();
+            fields.put("practitioner", report.get("performer").get(0).get("identifier").get("value").asText());
+            fields.put("patient", report.get("subject").get("identifier").get("value").asText());
+            fields.putAll(expected);
+            llmOutput = "GPT4All: Here is the converted table\n```json\n"
+                    + objectMapper.writeValueAsString(fields) + "\n```";
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @BeforeAll
+    void generateDocuments() throws IOException {
+        DataGenerator generator = new DataGenerator(fhirContext, folder, DataGenerator.newRunId(), new AtomicLong());
+        for (int i = 0; i < Math.min(DOCUMENTS, REQUESTS); i++) {
+            generator.generateTestHTMLTable(i);
+            generator.reset();
+        }
+        new HtmlToPdfConverter().convertFolder(folder, Runtime.getRuntime().availableProcessors());
+        try (Stream<Path> pdfs = Files.list(folder).filter(file -> file.toString().endsWith(".pdf")).sorted()) {
+            for (Path pdf : pdfs.toList()) {
+                documents.add(Files.readAllBytes(pdf));
+            }
+        }
+        assertFalse(documents.isEmpty(), "No PDFs generated");
+    }
+
+    @Test
+    void uploadsAtConcurrency() throws Exception {
+        long[] latencies = new long[REQUESTS];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        AtomicInteger mismatches = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENCY);
+        long started = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>(CONCURRENCY);
+            for (int i = 0; i < CONCURRENCY; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int request = next.getAndIncrement(); request < REQUESTS; request = next.getAndIncrement()) {
+                        long begin = System.nanoTime();
+                        try {
+                            JsonNode bundle = convert(documents.get(request % documents.size()));
+                            if (!matchesExpected(bundle)) {
+                                mismatches.incrementAndGet();
+                            }
+                        } catch (IOException | RuntimeException e) {
+                            errors.incrementAndGet();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                        latencies[request] = System.nanoTime() - begin;
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        long millis = (System.nanoTime() - started) / 1_000_000;
+        Arrays.sort(latencies);
+        double errorRate = (double) errors.get() / REQUESTS;
+        System.out.printf("%d requests, concurrency %d, OCR %d ms, LLM %d ms%n",
+                REQUESTS, CONCURRENCY, OCR_MILLIS, LLM_MILLIS);
+        System.out.printf("p50 %d ms, p95 %d ms, p99 %d ms, max %d ms%n", percentile(latencies, 50),
+                percentile(latencies, 95), percentile(latencies, 99), latencies[latencies.length - 1] / 1_000_000);
+        System.out.printf("%.1f requests/s, error rate %.2f%%, %d Bundles differ from expectedTestOutput.json%n",
+                REQUESTS * 1000.0 / Math.max(1, millis), errorRate * 100, mismatches.get());
+        assertTrue(errorRate <= MAX_ERROR_RATE, "Error rate " + errorRate);
+        assertEquals(0, mismatches.get());
+    }
+
+    /*
+     * Upload, poll the job until it is done, fetch the Bundle
+     */
+    JsonNode convert(byte[] pdf) throws IOException, InterruptedException {
+        String boundary = UUID.randomUUID().toString();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(pdf.length + 256);
+        body.write(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"report.pdf\"\r\n"
+                + "Content-Type: application/pdf\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        body.write(pdf);
+        body.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        HttpResponse<String> submitted = client.send(HttpRequest.newBuilder(uri("/jobs"))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        if (submitted.statusCode() != 202) {
+            throw new IOException("Upload answered " + submitted.statusCode());
+        }
+        String id = objectMapper.readTree(submitted.body()).get("id").asText();
+        while (true) {
+            HttpResponse<String> status = client.send(HttpRequest.newBuilder(uri("/jobs/" + id)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            JsonNode job = objectMapper.readTree(status.body());
+            String state = job.get("status").asText();
+            if ("FAILED".equals(state)) {
+                throw new IOException("Job " + id + " failed: " + job.get("error").asText());
+            }
+            if ("COMPLETED".equals(state)) {
+                break;
+            }
+            Thread.sleep(10);
+        }
+        HttpResponse<String> result = client.send(HttpRequest.newBuilder(uri("/jobs/" + id + "/result")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readTree(result.body());
+    }
+
+    /*
+     * Every value of expectedTestOutput.json is in the Bundle, compared as numbers
+     */
+    static boolean matchesExpected(JsonNode bundle) {
+        Map<String, String> actual = new LinkedHashMap<>();
+        for (JsonNode entry : bundle.get("entry")) {
+            JsonNode resource = entry.get("resource");
+            if ("Observation".equals(resource.get("resourceType").asText()) && resource.has("valueQuantity")) {
+                String identifier = resource.get("identifier").get(0).get("value").asText();
+                actual.put(identifier.substring(0, identifier.indexOf('-')),
+                        resource.get("valueQuantity").get("value").asText());
+            }
+        }
+        for (Map.Entry<String, String> value : expected.entrySet()) {
+            String found = actual.get(value.getKey());
+            if (found == null || new BigDecimal(found).compareTo(new BigDecimal(value.getValue())) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    static long percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1_000_000;
+    }
+
+}
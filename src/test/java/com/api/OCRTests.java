@@ -0,0 +1,154 @@
+package com.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.api.ocr.DocumentLoader;
+import com.api.ocr.OcrProperties;
+import com.api.ocr.OcrWorker;
+import com.api.ocr.PageRenderer;
+
+/*
+ * Page parallel OCR with Tesseract replaced by workers that read the page
+ * number off the width of the rendered page
+ */
+class OCRTests {
+
+    static final int PAGES = 12;
+
+    @TempDir
+    Path folder;
+
+    OcrProperties properties = new OcrProperties();
+
+    Set<OcrWorker> created = ConcurrentHashMap.newKeySet();
+
+    AtomicBoolean shared = new AtomicBoolean();
+
+    OCR ocr;
+
+    OCR ocr() {
+        properties.setThreads(4);
+        properties.setDpi(72);
+        ocr = new OCR(properties, new DocumentLoader(properties), new PageRenderer(properties)) {
+            @Override
+            OcrWorker create() {
+                OcrWorker worker = new PageNumberWorker(shared);
+                created.add(worker);
+                return worker;
+            }
+        };
+        return ocr;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (ocr != null) {
+            ocr.shutdown();
+        }
+    }
+
+    @Test
+    void reassemblesPagesInOrder() throws IOException {
+        File document = document();
+
+        String text = ocr().doOCR(document);
+
+        StringBuilder expected = new StringBuilder();
+        for (int page = 0; page < PAGES; page++) {
+            expected.append("page ").append(page).append('\n');
+        }
+        assertEquals(expected.toString(), text);
+        assertTrue(created.size() <= 4, created.size() + " workers");
+        assertFalse(shared.get(), "a worker was used by two threads at once");
+    }
+
+    @Test
+    void recognizesOnlyTheSelectedPages() throws IOException {
+        File document = document();
+
+        String text = ocr().doOCR(document, List.of(9, 2, 5, PAGES + 3));
+
+        assertEquals("page 2\npage 5\npage 9\n", text);
+    }
+
+    @Test
+    void reusesWorkersForTheNextDocument() throws IOException {
+        File document = document();
+        OCR ocr = ocr();
+        ocr.doOCR(document);
+        int workers = created.size();
+
+        assertEquals(ocr.doOCR(document), ocr.doOCR(document));
+
+        assertEquals(workers, created.size());
+    }
+
+    /*
+     * Page n is 100 + n points wide, at 72 DPI that is its width in pixels
+     */
+    File document() throws IOException {
+        File file = folder.resolve("report.pdf").toFile();
+        try (PDDocument document = new PDDocument()) {
+            for (int page = 0; page < PAGES; page++) {
+                document.addPage(new PDPage(new PDRectangle(100 + page, 200)));
+            }
+            document.save(file);
+        }
+        return file;
+    }
+
+    /*
+     * Earlier pages take longer, so they finish after the later ones
+     */
+    static class PageNumberWorker implements OcrWorker {
+
+        final AtomicInteger busy = new AtomicInteger();
+        final AtomicBoolean shared;
+
+        PageNumberWorker(AtomicBoolean shared) {
+            this.shared = shared;
+        }
+
+        @Override
+        public String recognize(BufferedImage image, int dpi) {
+            if (busy.incrementAndGet() > 1) {
+                shared.set(true);
+            }
+            try {
+                int page = image.getWidth() - 100;
+                Thread.sleep(2L * (PAGES - page));
+                return "page " + page + "\n";
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "";
+            } finally {
+                busy.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+}
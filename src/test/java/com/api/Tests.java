@@ -14,8 +14,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultHandlers;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
@@ -52,7 +54,11 @@ class Tests {
                         AppUtils.resolveResourcePath("command.txt"))
                 + " formatted as valid json in the right order.";
         mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
-        json = mockMvc.perform(MockMvcRequestBuilders.get("/chat").content(command))
+        // /chat answers asynchronously, the result is dispatched once the LLM is done
+        MvcResult chat = mockMvc.perform(MockMvcRequestBuilders.get("/chat").content(command))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        json = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(chat))
                 .andDo(MockMvcResultHandlers.print())
                 .andReturn().getResponse().getContentAsString();
         json = AppUtils.fixJson(json);
@@ -0,0 +1,116 @@
+package com.api.batch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.api.export.ExportProperties;
+import com.api.export.ReportStore;
+import com.api.fhir.BundleWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ca.uhn.fhir.context.FhirContext;
+
+class BatchConverterTests {
+
+    @TempDir
+    Path folder;
+
+    BatchProperties properties = new BatchProperties();
+
+    ReportStore reportStore;
+
+    BatchConverter converter;
+
+    BatchConverter converter(int threads, int window) {
+        properties.setThreads(threads);
+        properties.setWindow(window);
+        ExportProperties exportProperties = new ExportProperties();
+        exportProperties.setStoreLocation(folder.toString());
+        reportStore = new ReportStore(exportProperties);
+        converter = new BatchConverter(properties, new BundleWriter(FhirContext.forR4()), reportStore,
+                new ObjectMapper());
+        return converter;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (converter != null) {
+            converter.shutdown();
+            reportStore.close();
+        }
+    }
+
+    /*
+     * More records than the window, converted on several threads, still come
+     * out in input order
+     */
+    @Test
+    void writesRecordsInInputOrder() throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            input.append(record(i)).append('\n');
+        }
+        StringWriter output = new StringWriter();
+
+        int records = converter(4, 3).convert(new StringReader(input.toString()), output);
+
+        assertEquals(50, records);
+        List<String> lines = output.toString().lines().toList();
+        assertEquals(50, lines.size());
+        for (int i = 0; i < 50; i++) {
+            assertTrue(lines.get(i).startsWith("{\"resourceType\":\"Bundle\""), lines.get(i));
+            assertTrue(lines.get(i).contains("\"value\":\"Patient/" + i + "\""), lines.get(i));
+        }
+    }
+
+    @Test
+    void answersABrokenRecordWithAnOutcomeOnItsLine() throws IOException {
+        String input = record(0) + "\n"
+                + "\n"
+                + "{\"patient\": \"Patient/1\", \"hemoglobin\": \n"
+                + "{\"patient\": \"Patient/2\"}\n"
+                + record(3) + "\n";
+        StringWriter output = new StringWriter();
+
+        int records = converter(2, 2).convert(new StringReader(input), output);
+
+        assertEquals(4, records);
+        List<String> lines = output.toString().lines().toList();
+        assertEquals(4, lines.size());
+        assertTrue(lines.get(0).contains("\"value\":\"Patient/0\""), lines.get(0));
+        // line numbers count the blank line that was skipped
+        assertTrue(lines.get(1).startsWith("{\"resourceType\":\"OperationOutcome\""), lines.get(1));
+        assertTrue(lines.get(1).contains("\"severity\":\"error\""), lines.get(1));
+        assertTrue(lines.get(1).contains("\"code\":\"invalid\""), lines.get(1));
+        assertTrue(lines.get(1).contains("Line 3: "), lines.get(1));
+        assertTrue(lines.get(2).contains("\"severity\":\"warning\""), lines.get(2));
+        assertTrue(lines.get(2).contains("Line 4: No observations"), lines.get(2));
+        assertTrue(lines.get(3).contains("\"value\":\"Patient/3\""), lines.get(3));
+        // only the Bundles are kept for the export, exactly as written
+        assertEquals(List.of(lines.get(0), lines.get(3)), stored());
+    }
+
+    List<String> stored() throws IOException {
+        List<String> bundles = new ArrayList<>();
+        reportStore.forEach(bundle -> bundles.add(new String(bundle, StandardCharsets.UTF_8)));
+        return bundles;
+    }
+
+    static String record(int i) {
+        return "{\"patient\": \"Patient/" + i + "\", \"date\": \"2024-03-01\", \"hemoglobin\": \"14." + (i % 10)
+                + "\", \"crp\": \"3.1\"}";
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.api.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.api.nlp.NlpException;
+import com.api.nlp.NlpProperties;
+import com.api.nlp.NlpWorkerPool;
+
+class CachingNlpClientTests {
+
+    @TempDir
+    Path folder;
+
+    AtomicInteger calls = new AtomicInteger();
+
+    volatile boolean failing;
+
+    NlpProperties nlpProperties = new NlpProperties();
+
+    NlpWorkerPool model = new NlpWorkerPool(nlpProperties) {
+        @Override
+        public String complete(String prompt) {
+            int call = calls.incrementAndGet();
+            if (failing) {
+                // what the pool throws for an error frame of the worker
+                throw new NlpException("NLP worker failed on the prompt: out of memory");
+            }
+            return "answer " + call;
+        }
+    };
+
+    CachingNlpClient client(Duration ttl) {
+        CacheProperties properties = new CacheProperties();
+        properties.getCompletions().setLocation(folder.toString());
+        properties.getCompletions().setTtl(ttl);
+        return new CachingNlpClient(model, properties, nlpProperties);
+    }
+
+    @Test
+    void asksTheModelOncePerNormalizedPrompt() {
+        CachingNlpClient client = client(Duration.ofDays(1));
+        assertEquals("answer 1", client.complete("Please convert\n  this"));
+        assertEquals("answer 1", client.complete(" Please convert this "));
+        assertEquals("answer 2", client.complete("Please convert that"));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void readsCompletionsOfEarlierRuns() {
+        client(Duration.ofDays(1)).complete("prompt");
+        assertEquals("answer 1", client(Duration.ofDays(1)).complete("prompt"));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void asksAgainAfterTheTtl() {
+        CachingNlpClient client = client(Duration.ZERO.minusMillis(1));
+        client.complete("prompt");
+        assertEquals("answer 2", client.complete("prompt"));
+    }
+
+    @Test
+    void doesNotStoreAFailedCompletion() throws IOException {
+        CachingNlpClient client = client(Duration.ofDays(1));
+        failing = true;
+
+        assertThrows(NlpException.class, () -> client.complete("prompt"));
+
+        try (Stream<Path> files = Files.walk(folder)) {
+            assertEquals(0, files.filter(Files::isRegularFile).count());
+        }
+        failing = false;
+        assertEquals("answer 2", client.complete("prompt"));
+        assertEquals("answer 2", client(Duration.ofDays(1)).complete("prompt"));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void keyDependsOnTheModel() {
+        String key = client(Duration.ofDays(1)).key("prompt");
+        nlpProperties.setModel("other.gguf");
+        assertNotEquals(key, client(Duration.ofDays(1)).key("prompt"));
+    }
+
+}
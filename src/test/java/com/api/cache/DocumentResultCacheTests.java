@@ -0,0 +1,105 @@
+package com.api.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.api.BloodDetails;
+import com.api.catalog.MappingPlan;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class DocumentResultCacheTests {
+
+    static final String HASH = "ab" + "0".repeat(62);
+
+    static final byte[] BUNDLE = "{\"resourceType\":\"Bundle\"}".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path folder;
+
+    CacheProperties properties = new CacheProperties();
+
+    BloodDetails bloodDetails = new BloodDetails();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        properties.setLocation(folder.resolve("cache").toString());
+        properties.setPromptTemplate(folder.resolve("command.txt").toString());
+        Files.writeString(folder.resolve("command.txt"), "Convert the table");
+        bloodDetails.setPatient("Patient/1");
+        bloodDetails.setHemoglobin("14.2");
+    }
+
+    DocumentResultCache cache() {
+        return new DocumentResultCache(properties, MappingPlan.getDefault(), new ObjectMapper());
+    }
+
+    @Test
+    void missesUnknownDocumentsAndHitsStoredOnes() {
+        DocumentResultCache cache = cache();
+        assertTrue(cache.get(HASH).isEmpty());
+
+        cache.put(HASH, bloodDetails, 1, BUNDLE);
+        CachedResult result = cache.get(HASH).orElseThrow();
+
+        assertEquals(1, result.getObservations());
+        assertEquals(new String(BUNDLE, StandardCharsets.UTF_8), result.getBundleAsString());
+        assertEquals(1L, cache.getStats().get("diskMisses"));
+        assertEquals(0L, cache.getStats().get("diskHits"));
+    }
+
+    @Test
+    void readsResultsOfEarlierRunsFromDisk() throws IOException {
+        cache().put(HASH, bloodDetails, 1, BUNDLE);
+
+        DocumentResultCache restarted = cache();
+        CachedResult result = restarted.get(HASH).orElseThrow();
+
+        assertEquals(1, result.getObservations());
+        assertEquals(new String(BUNDLE, StandardCharsets.UTF_8), result.getBundleAsString());
+        BloodDetails read = new ObjectMapper().readValue(result.getBloodDetails(), BloodDetails.class);
+        assertEquals("14.2", read.getHemoglobin());
+        assertEquals(1L, restarted.getStats().get("diskHits"));
+        // the second lookup is served from memory
+        restarted.get(HASH);
+        assertEquals(1L, restarted.getStats().get("diskHits"));
+    }
+
+    @Test
+    void dropsResultsWhenThePromptTemplateChanges() throws IOException {
+        DocumentResultCache cache = cache();
+        cache.put(HASH, bloodDetails, 1, BUNDLE);
+        String version = cache.getVersion();
+
+        Files.writeString(folder.resolve("command.txt"), "Convert the table, keep the units");
+
+        assertNotEquals(version, cache.getVersion());
+        assertTrue(cache.get(HASH).isEmpty());
+        assertTrue(cache().get(HASH).isEmpty());
+        assertFalse(Files.exists(folder.resolve("cache").resolve(version)));
+    }
+
+    @Test
+    void ignoresInvalidHashesAndADisabledCache() {
+        DocumentResultCache cache = cache();
+        cache.put("../" + HASH, bloodDetails, 1, BUNDLE);
+        assertTrue(cache.get("../" + HASH).isEmpty());
+
+        properties.setEnabled(false);
+        cache.put(HASH, bloodDetails, 1, BUNDLE);
+        assertTrue(cache.get(HASH).isEmpty());
+        properties.setEnabled(true);
+        assertTrue(cache.get(HASH).isEmpty());
+    }
+
+}
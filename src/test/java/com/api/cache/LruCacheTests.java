@@ -0,0 +1,35 @@
+package com.api.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class LruCacheTests {
+
+    LruCache<String, String> cache = new LruCache<>(10, String::length);
+
+    @Test
+    void evictsLeastRecentlyUsedBySize() {
+        cache.put("a", "aaaa");
+        cache.put("b", "bbbb");
+        cache.get("a");
+        cache.put("c", "cccc");
+        assertNull(cache.get("b"));
+        assertEquals("aaaa", cache.get("a"));
+        assertEquals("cccc", cache.get("c"));
+        assertEquals(8, cache.getWeight());
+    }
+
+    @Test
+    void replacesAndSkipsOversizedValues() {
+        cache.put("a", "aaaa");
+        cache.put("a", "aa");
+        assertEquals(2, cache.getWeight());
+        cache.put("b", "bbbbbbbbbbbb");
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.size());
+        assertEquals(0L, cache.getStats().get("evictions"));
+    }
+
+}
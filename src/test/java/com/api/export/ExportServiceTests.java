@@ -0,0 +1,197 @@
+package com.api.export;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.DiagnosticReport;
+import org.hl7.fhir.r4.model.Observation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.api.BloodDetails;
+import com.api.fhir.BundleWriter;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/*
+ * Exports what the report store holds, one stored Bundle per DiagnosticReport line
+ */
+class ExportServiceTests {
+
+    static final BundleWriter bundleWriter = new BundleWriter(FhirContext.forR4());
+
+    @TempDir
+    Path folder;
+
+    ExportProperties properties = new ExportProperties();
+
+    ReportStore reportStore;
+
+    ExportService exportService(Duration retention) {
+        properties.setLocation(folder.resolve("export").toString());
+        properties.setStoreLocation(folder.resolve("reports").toString());
+        properties.setRetention(retention);
+        reportStore = new ReportStore(properties);
+        return new ExportService(properties, bundleWriter, reportStore);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (reportStore != null) {
+            reportStore.close();
+        }
+    }
+
+    @Test
+    void exportsTheStoredBundles() throws Exception {
+        ExportService exportService = exportService(Duration.ofHours(1));
+        Set<String> reports = new TreeSet<>();
+        Set<String> observations = new TreeSet<>();
+        for (int i = 0; i < 3; i++) {
+            store(reports, observations);
+        }
+
+        ExportJob job = await(exportService, exportService.start("/$export", "/export/{id}"));
+
+        assertEquals(ExportJob.Status.COMPLETED, job.getStatus());
+        assertEquals(3, job.getReports());
+        assertEquals(observations.size(), job.getObservations());
+        assertEquals(reports, identifiers(exportService, job, "DiagnosticReport"));
+        assertEquals(observations, identifiers(exportService, job, "Observation"));
+        assertEquals("/export/" + job.getId() + "/DiagnosticReport-1.ndjson", job.getOutput().get(0).getUrl());
+    }
+
+    @Test
+    void rollsOverToANewPart() throws Exception {
+        ExportService exportService = exportService(Duration.ofHours(1));
+        properties.setMaxPartBytes(1);
+        store(new TreeSet<>(), new TreeSet<>());
+        store(new TreeSet<>(), new TreeSet<>());
+
+        ExportJob job = await(exportService, exportService.start("/$export", "/export/{id}"));
+
+        List<String> reportFiles = new ArrayList<>();
+        for (ExportFile file : job.getOutput()) {
+            assertEquals(1, file.getCount());
+            if (file.getType().equals("DiagnosticReport")) {
+                reportFiles.add(file.getName());
+            }
+        }
+        assertEquals(List.of("DiagnosticReport-1.ndjson", "DiagnosticReport-2.ndjson"), reportFiles);
+    }
+
+    /*
+     * Every segment is read, a Bundle whose append was cut short is not
+     */
+    @Test
+    void readsEverySegmentButNoCutOffBundle() throws Exception {
+        properties.setSegmentBytes(1);
+        ExportService exportService = exportService(Duration.ofHours(1));
+        Set<String> reports = new TreeSet<>();
+        store(reports, new TreeSet<>());
+        store(reports, new TreeSet<>());
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(folder.resolve("reports"))) {
+            segments = files.sorted().toList();
+        }
+        assertEquals(2, segments.size());
+        Files.writeString(segments.get(1), "{\"resourceType\":\"Bundle\",\"entry\":[", StandardOpenOption.APPEND);
+
+        ExportJob job = await(exportService, exportService.start("/$export", "/export/{id}"));
+
+        assertEquals(ExportJob.Status.COMPLETED, job.getStatus());
+        assertEquals(reports, identifiers(exportService, job, "DiagnosticReport"));
+    }
+
+    @Test
+    void removesFinishedExportsAfterTheRetention() throws Exception {
+        ExportService exportService = exportService(Duration.ZERO);
+        store(new TreeSet<>(), new TreeSet<>());
+
+        ExportJob job = exportService.start("/$export", "/export/{id}");
+        job.getFuture().get();
+        Thread.sleep(10);
+
+        assertTrue(exportService.find(job.getId()).isEmpty());
+        assertFalse(Files.exists(job.getDirectory()));
+    }
+
+    @Test
+    void deletesTheFilesOfACancelledExport() throws Exception {
+        ExportService exportService = exportService(Duration.ofHours(1));
+        store(new TreeSet<>(), new TreeSet<>());
+
+        ExportJob job = await(exportService, exportService.start("/$export", "/export/{id}"));
+
+        assertTrue(Files.exists(job.getDirectory()));
+        assertTrue(exportService.cancel(job.getId()));
+        assertFalse(Files.exists(job.getDirectory()));
+        assertTrue(exportService.find(job.getId()).isEmpty());
+    }
+
+    /*
+     * Stores a converted document the way the conversions do and collects its identifiers
+     */
+    void store(Set<String> reports, Set<String> observations) throws IOException {
+        BloodDetails bloodDetails = new BloodDetails();
+        bloodDetails.fillRandom();
+        Bundle bundle = bloodDetails.toBundle(bloodDetails.toObservations());
+        for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
+            (entry.getResource() instanceof DiagnosticReport ? reports : observations).add(identifier(entry));
+        }
+        StringWriter content = new StringWriter();
+        bundleWriter.encode(bundle, false, content);
+        reportStore.append(content.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    static ExportJob await(ExportService exportService, ExportJob job) throws Exception {
+        job.getFuture().get();
+        return exportService.find(job.getId()).orElseThrow();
+    }
+
+    /*
+     * Identifiers of the exported resources, each NDJSON line is wrapped into a
+     * Bundle entry to read it
+     */
+    static Set<String> identifiers(ExportService exportService, ExportJob job, String type) throws IOException {
+        Set<String> identifiers = new TreeSet<>();
+        for (ExportFile file : job.getOutput()) {
+            if (!file.getType().equals(type)) {
+                continue;
+            }
+            Path path = exportService.resolve(job, file.getName()).orElseThrow();
+            for (String line : Files.readAllLines(path)) {
+                assertTrue(line.startsWith("{\"resourceType\":\"" + type + "\""), line);
+                // the fullUrl of the stored Bundle must not turn into an id
+                assertFalse(line.contains("urn:uuid:"), line);
+                Bundle bundle = bundleWriter.parseJson(Bundle.class,
+                        "{\"resourceType\":\"Bundle\",\"entry\":[{\"resource\":" + line + "}]}");
+                identifiers.add(identifier(bundle.getEntryFirstRep()));
+            }
+        }
+        return identifiers;
+    }
+
+    static String identifier(Bundle.BundleEntryComponent entry) {
+        return entry.getResource() instanceof DiagnosticReport
+                ? ((DiagnosticReport) entry.getResource()).getIdentifierFirstRep().getValue()
+                : ((Observation) entry.getResource()).getIdentifierFirstRep().getValue();
+    }
+
+}
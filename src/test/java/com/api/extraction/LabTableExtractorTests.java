@@ -0,0 +1,78 @@
+package com.api.extraction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import com.api.BloodDetails;
+import com.api.catalog.MappingPlan;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class LabTableExtractorTests {
+
+    ExtractionResult result;
+
+    /*
+     * Run the extractor on the OCR output of the sample report
+     */
+    @BeforeAll
+    void setUp() throws Exception {
+        String table = Files.readString(Path.of("src/main/resources/testinput.txt"));
+        result = new LabTableExtractor(new ExtractionProperties(), MappingPlan.getDefault()).extract(table);
+    }
+
+    @Test
+    void readsHeader() {
+        BloodDetails bloodDetails = result.getBloodDetails();
+        assertEquals("Max Mustermann", bloodDetails.getPatient());
+        assertEquals("Dr. House", bloodDetails.getPractitioner());
+        assertEquals("4002512111", bloodDetails.getOrderId());
+        assertEquals("2023-11-09", bloodDetails.getDate());
+    }
+
+    /*
+     * Decimal commas, dropped decimal points and OCR typos in the analyte names
+     */
+    @Test
+    void repairsValuesAndNames() {
+        BloodDetails bloodDetails = result.getBloodDetails();
+        assertEquals("14.6", bloodDetails.getHemoglobin());
+        assertEquals("30.2", bloodDetails.getHbeMch());
+        assertEquals("89.2", bloodDetails.getMcv());
+        assertEquals("10.4", bloodDetails.getLeukocytes());
+        assertEquals("140", bloodDetails.getSodium());
+        assertEquals("109", bloodDetails.getIron());
+        assertNull(bloodDetails.getGlucose());
+    }
+
+    @Test
+    void skipsLlmForSampleReport() {
+        assertTrue(result.getConfidence().size() > 20);
+        assertTrue(result.isSufficient());
+    }
+
+    /*
+     * Rows rebuilt from the text layer of a digital PDF
+     */
+    @Test
+    void readsTextLayerRows() {
+        ExtractionResult textLayer = new LabTableExtractor(new ExtractionProperties(), MappingPlan.getDefault())
+                .extract(List.of("Patient: Erika Mustermann",
+                        "0 -> Hämoglobin | 14,6 | g/dl | 13,5 - 17,5",
+                        "1 -> Natrium | 140 H | mmol/l | 135-145",
+                        "2 -> GFR (MDRD, Levey 2005) | >60 | ml/min | "));
+        BloodDetails bloodDetails = textLayer.getBloodDetails();
+        assertEquals("Erika Mustermann", bloodDetails.getPatient());
+        assertEquals("14.6", bloodDetails.getHemoglobin());
+        assertEquals("140", bloodDetails.getSodium());
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.api.extraction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class LabValueParserTests {
+
+    LabValue value = new LabValue();
+
+    @Test
+    void parsesPlainNumbers() {
+        assertEquals(LabValue.OK, LabValueParser.parse("14.6", value));
+        assertEquals(14.6, value.getValue());
+        assertEquals(LabValue.OK, LabValueParser.parse(" 140 ", value));
+        assertEquals(140.0, value.getValue());
+        assertEquals(LabValue.OK, LabValueParser.parse(".5", value));
+        assertEquals("0.5", value.toPlainString());
+        assertNull(value.getComparator());
+    }
+
+    @Test
+    void parsesGermanNumbers() {
+        assertEquals(LabValue.LOCALIZED, LabValueParser.parse("14,6", value));
+        assertEquals("14.6", value.toPlainString());
+        assertEquals(LabValue.LOCALIZED, LabValueParser.parse("1.234,5", value));
+        assertEquals(1234.5, value.getValue());
+        // a single separator is always the decimal separator, lab values rarely need grouping
+        assertEquals(LabValue.OK, LabValueParser.parse("1.234", value));
+        assertEquals(1.234, value.getValue());
+        assertEquals(LabValue.LOCALIZED, LabValueParser.parse("1.250.000", value));
+        assertEquals(1250000.0, value.getValue());
+        assertEquals(LabValue.LOCALIZED, LabValueParser.parse("1 234", value));
+        assertEquals(1234.0, value.getValue());
+    }
+
+    @Test
+    void repairsSplitDigits() {
+        assertEquals(LabValue.REPAIRED, LabValueParser.parse("30 2", value));
+        assertEquals("30.2", value.toPlainString());
+        assertEquals(30.2, value.getValue());
+    }
+
+    @Test
+    void readsComparatorsAndFlags() {
+        assertEquals(LabValue.LOCALIZED, LabValueParser.parse("<0,5", value));
+        assertEquals(LabValue.Comparator.LESS_THAN, value.getComparator());
+        assertEquals("<0.5", value.toPlainString());
+        LabValueParser.parse(">= 60", value);
+        assertEquals(LabValue.Comparator.GREATER_OR_EQUAL, value.getComparator());
+        assertEquals(60.0, value.getValue());
+        LabValueParser.parse("≤ 5", value);
+        assertEquals(LabValue.Comparator.LESS_OR_EQUAL, value.getComparator());
+        assertEquals(LabValue.LOCALIZED, LabValueParser.parse("12,1 H", value));
+        assertEquals(12.1, value.getValue());
+        assertEquals(LabValue.OK, LabValueParser.parse("140 *", value));
+        assertEquals(LabValue.OK, LabValueParser.parse("4.4+", value));
+        assertEquals(4.4, value.getValue());
+    }
+
+    @Test
+    void rejectsWithoutThrowing() {
+        assertEquals(LabValue.EMPTY, LabValueParser.parse(null, value));
+        assertEquals(LabValue.EMPTY, LabValueParser.parse("  ", value));
+        assertEquals(LabValue.EMPTY, LabValueParser.parse("-", value));
+        assertEquals(LabValue.INVALID, LabValueParser.parse("n.a.", value));
+        assertEquals(LabValue.INVALID, LabValueParser.parse("negativ", value));
+        assertEquals(LabValue.INVALID, LabValueParser.parse("<", value));
+        assertEquals(LabValue.INVALID, LabValueParser.parse("1.23.4", value));
+        assertEquals(LabValue.INVALID, LabValueParser.parse("12 g/dl", value));
+        assertEquals(LabValue.INVALID, LabValueParser.parse("99999999999999999999", value));
+    }
+
+}
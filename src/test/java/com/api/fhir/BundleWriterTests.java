@@ -0,0 +1,92 @@
+package com.api.fhir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import ca.uhn.fhir.context.FhirContext;
+
+class BundleWriterTests {
+
+    static final BundleWriter bundleWriter = new BundleWriter(FhirContext.forR4());
+
+    @Test
+    void prefersJsonUnlessXmlIsAskedFor() {
+        assertFalse(BundleWriter.prefersXml((String) null));
+        assertFalse(BundleWriter.prefersXml(" "));
+        assertFalse(BundleWriter.prefersXml("*/*"));
+        assertFalse(BundleWriter.prefersXml("application/fhir+json"));
+        assertFalse(BundleWriter.prefersXml("text/html"));
+        assertFalse(BundleWriter.prefersXml("not a media type"));
+        assertTrue(BundleWriter.prefersXml("application/fhir+xml"));
+        assertTrue(BundleWriter.prefersXml("application/xml"));
+        assertTrue(BundleWriter.prefersXml("application/fhir+xml, */*;q=0.8"));
+    }
+
+    @Test
+    void comparesQualityValues() {
+        assertTrue(BundleWriter.prefersXml("application/fhir+json;q=0.5, application/fhir+xml;q=0.9"));
+        assertFalse(BundleWriter.prefersXml("application/fhir+xml;q=0.5, application/fhir+json"));
+        assertFalse(BundleWriter.prefersXml("application/fhir+xml;q=0.5, */*"));
+        // equal quality stays JSON
+        assertFalse(BundleWriter.prefersXml("application/fhir+xml, application/fhir+json"));
+    }
+
+    @Test
+    void acceptsGzipUnlessRefused() {
+        assertFalse(BundleWriter.acceptsGzip(null));
+        assertFalse(BundleWriter.acceptsGzip(""));
+        assertFalse(BundleWriter.acceptsGzip("deflate, br"));
+        assertTrue(BundleWriter.acceptsGzip("gzip"));
+        assertTrue(BundleWriter.acceptsGzip("GZIP"));
+        assertTrue(BundleWriter.acceptsGzip("deflate, gzip;q=0.5"));
+        assertFalse(BundleWriter.acceptsGzip("gzip;q=0"));
+        assertFalse(BundleWriter.acceptsGzip("br, gzip; q=0.000"));
+    }
+
+    @Test
+    void writesGzippedXml() throws IOException {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.set(HttpHeaders.ACCEPT, "application/fhir+xml");
+        requestHeaders.set(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+        OperationOutcome outcome = new OperationOutcome();
+        outcome.addIssue().setDiagnostics("test");
+
+        ResponseEntity<StreamingResponseBody> response = bundleWriter.write(outcome, requestHeaders);
+
+        assertEquals("application/fhir+xml;charset=UTF-8", response.getHeaders().getContentType().toString());
+        assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertTrue(response.getHeaders().getVary().contains(HttpHeaders.ACCEPT_ENCODING));
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        response.getBody().writeTo(body);
+        try (GZIPInputStream unzipped = new GZIPInputStream(new ByteArrayInputStream(body.toByteArray()))) {
+            String xml = new String(unzipped.readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(xml.startsWith("<OperationOutcome"), xml);
+        }
+    }
+
+    @Test
+    void writesPlainJsonByDefault() throws IOException {
+        ResponseEntity<StreamingResponseBody> response = bundleWriter.write(new OperationOutcome(), new HttpHeaders());
+
+        assertEquals("application/fhir+json;charset=UTF-8", response.getHeaders().getContentType().toString());
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        response.getBody().writeTo(body);
+        assertEquals("{\"resourceType\":\"OperationOutcome\"}", body.toString(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.api.fhir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hl7.fhir.r4.model.Observation;
+import org.junit.jupiter.api.Test;
+
+import com.api.BloodDetails;
+import com.api.catalog.MappingPlan;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/*
+ * Both paths run with the same clock reading and the same ids, so their
+ * output has to be equal byte for byte
+ */
+class DirectBundleSerializerTests {
+
+    static final BundleWriter bundleWriter = new BundleWriter(FhirContext.forR4());
+    static final DirectBundleSerializer serializer = new DirectBundleSerializer(new FhirProperties(),
+            MappingPlan.getDefault());
+
+    @Test
+    void writesWhatHapiWritesForRandomReports() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            BloodDetails bloodDetails = new BloodDetails();
+            bloodDetails.fillRandom();
+            assertEquals(hapi(bloodDetails), direct(bloodDetails));
+        }
+    }
+
+    @Test
+    void leavesOutMissingFieldsLikeHapi() throws IOException {
+        BloodDetails bloodDetails = new BloodDetails();
+        bloodDetails.setPractitioner(" ");
+        bloodDetails.setHemoglobin("14,2");
+        bloodDetails.setCrp("<0.5");
+        bloodDetails.setFerritin("n.a.");
+        bloodDetails.setPlatelets(">= 450");
+        assertEquals(hapi(bloodDetails), direct(bloodDetails));
+    }
+
+    @Test
+    void escapesValuesLikeHapi() throws IOException {
+        BloodDetails bloodDetails = new BloodDetails();
+        bloodDetails.fillRandom();
+        bloodDetails.setPatient("M\u00fcller, \"Max\"\n");
+        bloodDetails.setOrderId("Order\\1");
+        bloodDetails.setPractitioner("Dr. </script>");
+        assertEquals(hapi(bloodDetails), direct(bloodDetails));
+    }
+
+    /*
+     * Report and observations fall back to now, with and without observations
+     */
+    @Test
+    void fallsBackToNowForAnInvalidDate() throws IOException {
+        for (String date : List.of("not a date", "09.11.2023", "")) {
+            BloodDetails bloodDetails = new BloodDetails();
+            bloodDetails.setPatient("Patient/1");
+            bloodDetails.setDate(date);
+            assertEquals(hapi(bloodDetails), direct(bloodDetails));
+            bloodDetails.setHemoglobin("14.2");
+            bloodDetails.setCrp("<0.5");
+            String direct = direct(bloodDetails);
+            assertEquals(hapi(bloodDetails), direct);
+            assertTrue(direct.contains("\"effectiveDateTime\""));
+        }
+    }
+
+    @Test
+    void isEmptyWithoutObservations() {
+        BloodDetails bloodDetails = new BloodDetails();
+        bloodDetails.setPatient("Patient/1");
+        assertTrue(serializer.prepare(bloodDetails, fixed()).isEmpty());
+        assertTrue(bloodDetails.toObservations(fixed()).isEmpty());
+    }
+
+    static String hapi(BloodDetails bloodDetails) throws IOException {
+        ConversionContext context = fixed();
+        List<Observation> observations = bloodDetails.toObservations(context);
+        StringWriter writer = new StringWriter();
+        bundleWriter.encode(bloodDetails.toBundle(observations, context), false, writer);
+        return writer.toString();
+    }
+
+    static String direct(BloodDetails bloodDetails) throws IOException {
+        StringWriter writer = new StringWriter();
+        serializer.prepare(bloodDetails, fixed()).writeTo(writer);
+        return writer.toString();
+    }
+
+    /*
+     * Ids count up from 1, the same sequence for every context
+     */
+    static ConversionContext fixed() {
+        AtomicLong next = new AtomicLong();
+        return new ConversionContext(Instant.parse("2024-03-01T10:15:30.123Z"),
+                () -> new UUID(0x0190_0000_0000_7000L, next.incrementAndGet()));
+    }
+
+}
@@ -0,0 +1,57 @@
+package com.api.fhir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+
+class IdsTests {
+
+    @Test
+    void isVersion7WithTheTimestamp() {
+        UUID id = Ids.uuid7(1_700_000_000_123L);
+        assertEquals(7, id.version());
+        assertEquals(2, id.variant());
+        assertEquals(1_700_000_000_123L, id.getMostSignificantBits() >>> 16);
+    }
+
+    @Test
+    void sortsByMillisecond() {
+        String earlier = Ids.uuid7(1_700_000_000_000L).toString();
+        String later = Ids.uuid7(1_700_000_000_001L).toString();
+        assertTrue(earlier.compareTo(later) < 0);
+    }
+
+    @Test
+    void staysUniqueAcrossThreads() throws InterruptedException {
+        Set<UUID> ids = ConcurrentHashMap.newKeySet();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 50_000; j++) {
+                    ids.add(Ids.uuid7());
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(8 * 50_000, ids.size());
+    }
+
+    @Test
+    void urnIsAValidFullUrl() {
+        String urn = Ids.urn();
+        assertTrue(urn.startsWith("urn:uuid:"));
+        assertEquals(7, UUID.fromString(urn.substring("urn:uuid:".length())).version());
+    }
+
+}
@@ -0,0 +1,267 @@
+package com.api.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.api.BloodDetails;
+import com.api.BloodService;
+import com.api.cache.CacheProperties;
+import com.api.cache.DocumentResultCache;
+import com.api.catalog.MappingPlan;
+import com.api.export.ExportProperties;
+import com.api.export.ReportStore;
+import com.api.fhir.BundleWriter;
+import com.api.fhir.DirectBundleSerializer;
+import com.api.fhir.FhirProperties;
+import com.api.storage.DocumentHandle;
+import com.api.util.Hashes;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/*
+ * The pipeline with OCR and extraction stubbed out, BloodService is only
+ * asked for its results
+ */
+class JobPipelineTests {
+
+    static final byte[] PDF = "%PDF-1.4 report".getBytes(StandardCharsets.UTF_8);
+
+    static final Pattern ID = Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
+    @TempDir
+    Path folder;
+
+    JobProperties properties = new JobProperties();
+
+    StubBloodService bloodService = new StubBloodService();
+
+    ReportStore reportStore;
+
+    JobPipeline pipeline;
+
+    JobPipeline pipeline() {
+        properties.setLocation(folder.resolve("jobs").toString());
+        CacheProperties cacheProperties = new CacheProperties();
+        cacheProperties.setLocation(folder.resolve("cache").toString());
+        cacheProperties.setPromptTemplate(folder.resolve("command.txt").toString());
+        ExportProperties exportProperties = new ExportProperties();
+        exportProperties.setStoreLocation(folder.resolve("reports").toString());
+        reportStore = new ReportStore(exportProperties);
+        pipeline = new JobPipeline(properties, bloodService, new BundleWriter(FhirContext.forR4()),
+                new DirectBundleSerializer(new FhirProperties(), MappingPlan.getDefault()),
+                new DocumentResultCache(cacheProperties, MappingPlan.getDefault(), new ObjectMapper()), reportStore);
+        return pipeline;
+    }
+
+    @AfterEach
+    void tearDown() {
+        bloodService.storing.countDown();
+        if (pipeline != null) {
+            pipeline.shutdown();
+            reportStore.close();
+        }
+    }
+
+    @Test
+    void runsAnUploadThroughAllStages() throws Exception {
+        JobPipeline pipeline = pipeline();
+
+        Job job = await(pipeline.submit("report.pdf", PDF));
+
+        assertEquals(Job.Status.COMPLETED, job.getStatus());
+        assertEquals(JobStage.SERIALIZE, job.getStage());
+        assertEquals(EnumSet.allOf(JobStage.class), EnumSet.copyOf(job.getDurations().keySet()));
+        assertEquals(2, job.getObservations());
+        assertEquals(Hashes.sha256Hex(PDF), job.getDocumentHash());
+        assertEquals("/jobs/" + job.getId() + "/result", job.getResult());
+        String bundle = Files.readString(pipeline.getResult(job).orElseThrow());
+        assertTrue(bundle.contains("\"DiagnosticReport\""), bundle);
+        assertEquals(1, bloodService.ocrCalls.get());
+    }
+
+    @Test
+    void reusesTheResultOfAKnownDocument() throws Exception {
+        JobPipeline pipeline = pipeline();
+        Job first = await(pipeline.submit("report.pdf", PDF));
+
+        Job second = await(pipeline.submit("copy.pdf", PDF));
+
+        assertEquals(Job.Status.COMPLETED, second.getStatus());
+        assertTrue(second.isCached());
+        assertEquals(JobStage.STORE, second.getStage());
+        assertEquals(first.getObservations(), second.getObservations());
+        assertEquals(1, bloodService.ocrCalls.get());
+        // same values, but new identifiers and fullUrls
+        String bundle = Files.readString(pipeline.getResult(second).orElseThrow());
+        assertTrue(bundle.contains("14.2") && bundle.contains("5.1"), bundle);
+        Set<String> ids = ids(Files.readString(pipeline.getResult(first).orElseThrow()));
+        assertEquals(ids.size(), ids(bundle).size());
+        ids.retainAll(ids(bundle));
+        assertEquals(Set.of(), ids);
+        // both are kept for the export with the identifiers handed out
+        List<String> stored = new ArrayList<>();
+        reportStore.forEach(content -> stored.add(new String(content, StandardCharsets.UTF_8)));
+        assertEquals(List.of(Files.readString(pipeline.getResult(first).orElseThrow()), bundle), stored);
+    }
+
+    @Test
+    void reportsTheStageThatFailed() throws Exception {
+        JobPipeline pipeline = pipeline();
+        bloodService.extractFailure = new IOException("model not loaded");
+
+        Job job = await(pipeline.submit("report.pdf", PDF));
+
+        assertEquals(Job.Status.FAILED, job.getStatus());
+        assertEquals(JobStage.EXTRACT, job.getStage());
+        assertEquals("EXTRACT: model not loaded", job.getError());
+        assertTrue(pipeline.getResult(job).isEmpty());
+        assertNull(job.getResult());
+    }
+
+    @Test
+    void answers503WhenTheStoreQueueIsFull() throws Exception {
+        properties.getStage(JobStage.STORE).setQueueCapacity(1);
+        bloodService.concurrent = true;
+        JobPipeline pipeline = pipeline();
+        JobController controller = new JobController(pipeline);
+        bloodService.storing = new CountDownLatch(1);
+
+        Job running = pipeline.submit("1.pdf", PDF);
+        assertTrue(bloodService.stored.await(5, TimeUnit.SECONDS));
+        Job queued = pipeline.submit("2.pdf", "%PDF-1.4 other".getBytes(StandardCharsets.UTF_8));
+
+        ResponseStatusException rejected = assertThrows(ResponseStatusException.class,
+                () -> controller.submit(new MockMultipartFile("file", "3.pdf", "application/pdf", PDF)));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, rejected.getStatusCode());
+        assertEquals(1, pipeline.getQueueDepths().get(JobStage.STORE).get("queued"));
+
+        bloodService.storing.countDown();
+        assertEquals(Job.Status.COMPLETED, await(running).getStatus());
+        assertEquals(Job.Status.COMPLETED, await(queued).getStatus());
+    }
+
+    @Test
+    void removesTheOldestFinishedJobs() throws Exception {
+        properties.setMaxJobs(1);
+        JobPipeline pipeline = pipeline();
+        JobController controller = new JobController(pipeline);
+        Job first = await(pipeline.submit("1.pdf", PDF));
+        Path firstFolder = pipeline.getResult(first).orElseThrow().getParent();
+
+        Job second = await(pipeline.submit("2.pdf", "%PDF-1.4 other".getBytes(StandardCharsets.UTF_8)));
+        // jobs are retired right after they are marked done
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while ((pipeline.find(first.getId()).isPresent() || Files.exists(firstFolder))
+                && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+
+        assertEquals(HttpStatus.NOT_FOUND, controller.status(first.getId()).getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, controller.result(first.getId()).getStatusCode());
+        assertFalse(Files.exists(firstFolder));
+        assertEquals(second, controller.status(second.getId()).getBody());
+        assertEquals(HttpStatus.OK, controller.result(second.getId()).getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, controller.status("unknown").getStatusCode());
+    }
+
+    static Set<String> ids(String bundle) {
+        return ID.matcher(bundle).results().map(MatchResult::group).collect(Collectors.toSet());
+    }
+
+    Job await(Job job) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!job.isDone() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(job.isDone(), "job still " + job.getStatus() + " in " + job.getStage());
+        return job;
+    }
+
+    /*
+     * OCR answers with a fixed table, extraction with two values, storing waits
+     * for the test in content addressed mode
+     */
+    static class StubBloodService extends BloodService {
+
+        final AtomicInteger ocrCalls = new AtomicInteger();
+        final CountDownLatch stored = new CountDownLatch(1);
+        volatile CountDownLatch storing = new CountDownLatch(0);
+        volatile boolean concurrent;
+        volatile IOException extractFailure;
+
+        StubBloodService() {
+            super(null, null, null, null, null, null);
+        }
+
+        @Override
+        public boolean isConcurrent() {
+            return concurrent;
+        }
+
+        @Override
+        public DocumentHandle store(String filename, InputStream content) {
+            stored.countDown();
+            try {
+                storing.await();
+                byte[] bytes = content.readAllBytes();
+                return new DocumentHandle(Hashes.sha256Hex(bytes), Path.of(filename), bytes.length, false);
+            } catch (InterruptedException | IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public List<String> ocr(DocumentHandle document) {
+            ocrCalls.incrementAndGet();
+            return List.of("Haemoglobin 14.2 g/dl", "CRP 5.1 mg/l");
+        }
+
+        @Override
+        public List<String> ocr(Path file) {
+            ocrCalls.incrementAndGet();
+            return List.of("Haemoglobin 14.2 g/dl", "CRP 5.1 mg/l");
+        }
+
+        @Override
+        public BloodDetails extract(List<String> table) throws IOException {
+            if (extractFailure != null) {
+                throw extractFailure;
+            }
+            BloodDetails bloodDetails = new BloodDetails();
+            bloodDetails.setPatient("Patient/1");
+            bloodDetails.setDate("2024-03-01");
+            bloodDetails.setHemoglobin("14.2");
+            bloodDetails.setCrp("5.1");
+            return bloodDetails;
+        }
+
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.api.nlp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Drives the pool against stub_nlp_worker.py, which speaks the frames of
+ * GPT4ALL.py --serve without loading a model and answers "<pid>:<prompt>"
+ */
+class NlpWorkerPoolTests {
+
+    @BeforeAll
+    static void requirePython() throws InterruptedException {
+        boolean available;
+        try {
+            Process python = new ProcessBuilder("python3", "--version").redirectErrorStream(true).start();
+            available = python.waitFor(10, TimeUnit.SECONDS) && python.exitValue() == 0;
+        } catch (IOException e) {
+            available = false;
+        }
+        Assumptions.assumeTrue(available, "python3 is not installed");
+    }
+
+    @Test
+    void exchangesFramedPrompts() {
+        NlpWorkerPool pool = pool(0);
+        try {
+            assertEquals("hello", answer(pool.complete("hello")));
+            // the frame length counts bytes, not characters
+            assertEquals("H\u00e4moglobin \u2264 14,2\n\u00b5g/l", answer(pool.complete("H\u00e4moglobin \u2264 14,2\n\u00b5g/l")));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void replacesAWorkerThatSentABadFrame() {
+        NlpWorkerPool pool = pool(0);
+        try {
+            String first = worker(pool.complete("first"));
+            assertThrows(NlpException.class, () -> pool.complete("bad header"));
+            // the leftover "stale" frame must not be read as the next answer
+            String next = pool.complete("next");
+            assertEquals("next", answer(next));
+            assertNotEquals(first, worker(next));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void keepsAWorkerThatReportedAFailedPrompt() {
+        NlpWorkerPool pool = pool(0);
+        try {
+            String first = worker(pool.complete("first"));
+            NlpException failure = assertThrows(NlpException.class, () -> pool.complete("fail"));
+            assertEquals("NLP worker failed on the prompt: out of memory", failure.getMessage());
+            String next = pool.complete("next");
+            assertEquals("next", answer(next));
+            assertEquals(first, worker(next));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void recyclesAWorkerAfterMaxRequests() {
+        NlpWorkerPool pool = pool(2);
+        try {
+            String first = worker(pool.complete("1"));
+            assertEquals(first, worker(pool.complete("2")));
+            assertNotEquals(first, worker(pool.complete("3")));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static NlpWorkerPool pool(int maxRequestsPerWorker) {
+        NlpProperties properties = new NlpProperties();
+        properties.setPython("python3");
+        properties.setScript("src/test/resources/stub_nlp_worker.py");
+        properties.setModel("stub");
+        properties.setPoolSize(1);
+        properties.setMaxRequestsPerWorker(maxRequestsPerWorker);
+        properties.setAcquireTimeout(Duration.ofSeconds(30));
+        properties.setRestartDelay(Duration.ofMillis(100));
+        NlpWorkerPool pool = new NlpWorkerPool(properties);
+        pool.warmUp();
+        return pool;
+    }
+
+    static String worker(String response) {
+        return response.substring(0, response.indexOf(':'));
+    }
+
+    static String answer(String response) {
+        return response.substring(response.indexOf(':') + 1);
+    }
+
+}
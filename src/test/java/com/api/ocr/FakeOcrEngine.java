@@ -0,0 +1,75 @@
+package com.api.ocr;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Engine for tests, answers with fixed lines after a delay per page or fails
+ * Register it as a bean to run the application without OCR.py and Tesseract
+ */
+public class FakeOcrEngine implements OcrEngine {
+
+    private final String name;
+    private final List<String> lines;
+    private final AtomicInteger calls = new AtomicInteger();
+    private volatile long pageMillis;
+    private volatile int concurrency = 1;
+    private volatile boolean failing;
+
+    public FakeOcrEngine(String name, List<String> lines) {
+        this.name = name;
+        this.lines = lines;
+    }
+
+    public FakeOcrEngine pageMillis(long pageMillis) {
+        this.pageMillis = pageMillis;
+        return this;
+    }
+
+    public FakeOcrEngine concurrency(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    public FakeOcrEngine failing(boolean failing) {
+        this.failing = failing;
+        return this;
+    }
+
+    public int getCalls() {
+        return calls.get();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public List<String> recognize(Path document, List<Integer> pages) throws IOException {
+        calls.incrementAndGet();
+        try {
+            Thread.sleep(pageMillis * (pages == null ? 1 : pages.size()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+        if (failing) {
+            throw new IOException(name + " failed");
+        }
+        return lines;
+    }
+
+    @Override
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    @Override
+    public long getExpectedPageMillis() {
+        return 100;
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.api.ocr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class OcrRouterTests {
+
+    Path document = Path.of("report.pdf");
+    FakeOcrEngine slow = new FakeOcrEngine("slow", List.of("slow")).pageMillis(200);
+    FakeOcrEngine fast = new FakeOcrEngine("fast", List.of("fast")).pageMillis(10);
+
+    OcrRouter router(FakeOcrEngine... engines) {
+        OcrProperties properties = new OcrProperties();
+        properties.setEngines(List.of("slow", "fast"));
+        return new OcrRouter(List.of(engines), properties);
+    }
+
+    @Test
+    void prefersTheConfiguredOrderUntilMeasured() throws IOException {
+        OcrRouter router = router(fast, slow);
+        assertEquals(List.of(slow, fast), router.plan(1, Duration.ofMinutes(1)));
+        assertEquals(List.of("slow"), router.recognize(document, null, 1));
+        // the measured 200 ms per page are now more than the 100 ms expected of fast
+        assertEquals(List.of(fast, slow), router.plan(1, Duration.ofMinutes(1)));
+    }
+
+    @Test
+    void fallsBackWhenAnEngineFails() throws IOException {
+        slow.failing(true);
+        OcrRouter router = router(slow, fast);
+        assertEquals(List.of("fast"), router.recognize(document, List.of(0), 1));
+        assertEquals(1, slow.getCalls());
+        // a failed engine is tried last during the cooldown
+        assertEquals(List.of(fast, slow), router.plan(1, Duration.ofMinutes(1)));
+    }
+
+    @Test
+    void fallsBackWhenAnEngineRunsOutOfTime() throws IOException {
+        slow.pageMillis(5_000);
+        OcrRouter router = router(slow, fast);
+        assertEquals(List.of("fast"), router.recognize(document, null, 1, Duration.ofSeconds(2)));
+    }
+
+    @Test
+    void failsWhenNoEngineSucceeds() {
+        slow.failing(true);
+        fast.failing(true);
+        OcrRouter router = router(slow, fast);
+        assertThrows(IOException.class, () -> router.recognize(document, null, 1));
+    }
+
+}
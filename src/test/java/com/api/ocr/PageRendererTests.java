@@ -0,0 +1,109 @@
+package com.api.ocr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.junit.jupiter.api.Test;
+
+class PageRendererTests {
+
+    static final long BUDGET = 1536 * 1024;
+
+    OcrProperties properties = new OcrProperties();
+
+    PageRenderer renderer() {
+        properties.setDpi(72);
+        properties.setThreads(2);
+        properties.setMemoryBudgetBytes(BUDGET);
+        return new PageRenderer(properties);
+    }
+
+    /*
+     * Two pages of 1000 x 1000 points, 977 KB each as 8 bit gray at 72 DPI
+     */
+    static PDDocument document() {
+        PDDocument document = new PDDocument();
+        document.addPage(new PDPage(new PDRectangle(1000, 1000)));
+        document.addPage(new PDPage(new PDRectangle(1000, 1000)));
+        return document;
+    }
+
+    @Test
+    void reusesReleasedImagesOfTheSameSize() throws IOException {
+        PageRenderer renderer = renderer();
+        try (PDDocument document = document()) {
+            PDFRenderer pdfRenderer = new PDFRenderer(document);
+
+            BufferedImage first = renderer.render(pdfRenderer, document.getPage(0), 0);
+            assertEquals(BufferedImage.TYPE_BYTE_GRAY, first.getType());
+            assertEquals(1000, first.getWidth());
+            assertEquals(1000, first.getHeight());
+            assertEquals(BUDGET - 977 * 1024, renderer.getAvailableBytes());
+            renderer.release(first);
+            assertEquals(BUDGET, renderer.getAvailableBytes());
+
+            BufferedImage second = renderer.render(pdfRenderer, document.getPage(1), 1);
+            assertSame(first, second);
+            // white background, not the pixels of the page before
+            assertEquals(0xFFFFFFFF, second.getRGB(500, 500));
+            renderer.release(second);
+        }
+    }
+
+    @Test
+    void waitsUntilThePageFitsIntoTheBudget() throws Exception {
+        PageRenderer renderer = renderer();
+        try (PDDocument document = document()) {
+            PDFRenderer pdfRenderer = new PDFRenderer(document);
+            BufferedImage first = renderer.render(pdfRenderer, document.getPage(0), 0);
+
+            CompletableFuture<BufferedImage> second = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return renderer.render(new PDFRenderer(document), document.getPage(1), 1);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            Thread.sleep(200);
+            assertFalse(second.isDone());
+
+            renderer.release(first);
+            BufferedImage image = second.get(10, TimeUnit.SECONDS);
+            assertSame(first, image);
+            renderer.release(image);
+            assertEquals(BUDGET, renderer.getAvailableBytes());
+        }
+    }
+
+    @Test
+    void rendersBinaryImagesIntoAnEighthOfTheMemory() throws IOException {
+        properties.setImageType(OcrProperties.ImageType.BINARY);
+        PageRenderer renderer = renderer();
+        try (PDDocument document = document()) {
+            PDFRenderer pdfRenderer = new PDFRenderer(document);
+
+            // both pages fit at once
+            BufferedImage first = renderer.render(pdfRenderer, document.getPage(0), 0);
+            BufferedImage second = renderer.render(pdfRenderer, document.getPage(1), 1);
+
+            assertEquals(BufferedImage.TYPE_BYTE_BINARY, first.getType());
+            assertNotSame(first, second);
+            assertEquals(BUDGET - 2 * 123 * 1024, renderer.getAvailableBytes());
+            renderer.release(first);
+            renderer.release(second);
+            assertEquals(BUDGET, renderer.getAvailableBytes());
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.api.ocr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.Test;
+
+class TextLayerReaderTests {
+
+    OcrProperties properties = new OcrProperties();
+
+    TextLayerReader reader = new TextLayerReader(properties, new DocumentLoader(properties));
+
+    /*
+     * A blank page has no content stream, the stripper skips it without startPage
+     */
+    @Test
+    void keepsPageIndexesAcrossPagesWithoutContent() throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            page(document, "Haemoglobin 14.2 g/dl Referenzbereich 13.5 - 17.5");
+            document.addPage(new PDPage());
+            page(document, "Leukozyten 6.1 G/l Referenzbereich 4.0 - 10.0");
+
+            PdfText text = reader.read(document);
+
+            assertEquals(3, text.getPageCount());
+            assertEquals(List.of(1), text.getPagesWithoutText());
+            assertTrue(String.join(" ", text.getLines(0)).contains("Haemoglobin"), text.getLines(0).toString());
+            assertEquals(List.of(), text.getLines(1));
+            assertTrue(String.join(" ", text.getLines(2)).contains("Leukozyten"), text.getLines(2).toString());
+        }
+    }
+
+    static void page(PDDocument document, String line) throws IOException {
+        PDPage page = new PDPage();
+        document.addPage(page);
+        try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+            content.beginText();
+            content.setFont(PDType1Font.HELVETICA, 12);
+            content.newLineAtOffset(50, 700);
+            content.showText(line);
+            content.endText();
+        }
+    }
+
+}
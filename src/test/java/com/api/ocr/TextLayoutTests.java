@@ -0,0 +1,56 @@
+package com.api.ocr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class TextLayoutTests {
+
+    List<TextLayout.Word> words = new ArrayList<>();
+
+    /*
+     * Words of 5pt per character on a 12pt line, a space is 3pt wide
+     */
+    void line(float y, Object... cells) {
+        for (int i = 0; i < cells.length; i += 2) {
+            float x = (Float) cells[i];
+            for (String word : ((String) cells[i + 1]).split(" ")) {
+                words.add(new TextLayout.Word(word, x, x + 5 * word.length(), y, 10, 3));
+                x += 5 * word.length() + 3;
+            }
+        }
+    }
+
+    @Test
+    void rebuildsColumnsFromTheHeader() {
+        line(100, 50f, "Befund vom 09.11.2023");
+        line(120, 50f, "Analyse", 250f, "Ergebnis", 320f, "Einheit", 400f, "Referenzbereich");
+        // the values are right aligned
+        line(140, 50f, "Hämoglobin", 280f, "14,6", 320f, "g/dl", 400f, "13,5 - 17,5");
+        line(152, 50f, "Hb A1c", 270f, "5,4 H", 320f, "%", 400f, "4,0 - 6,0");
+        line(164, 50f, "Klinische Chemie");
+        line(176, 50f, "Leukozyten", 265f, "1 234", 320f, "/nl");
+        assertEquals(List.of(
+                "Befund vom 09.11.2023",
+                "Analyse  Ergebnis  Einheit  Referenzbereich",
+                "0 -> Hämoglobin | 14,6 | g/dl | 13,5 - 17,5",
+                "1 -> Hb A1c | 5,4 H | % | 4,0 - 6,0",
+                "Klinische Chemie",
+                "2 -> Leukozyten | 1 234 | /nl | "), TextLayout.layout(words));
+    }
+
+    @Test
+    void findsColumnsByContentWithoutHeader() {
+        line(140, 50f, "Natrium", 200f, "mmol/l", 280f, "135-145", 360f, "140");
+        line(152, 50f, "Kalium", 200f, "mmol/l", 280f, "3,5-5,1", 360f, "4,4");
+        line(164, 50f, "MCV", 200f, "fl", 280f, "80-96", 360f, "89,2");
+        assertEquals(List.of(
+                "0 -> Natrium | 140 | mmol/l | 135-145",
+                "1 -> Kalium | 4,4 | mmol/l | 3,5-5,1",
+                "2 -> MCV | 89,2 | fl | 80-96"), TextLayout.layout(words));
+    }
+
+}
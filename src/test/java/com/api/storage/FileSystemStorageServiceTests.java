@@ -0,0 +1,99 @@
+package com.api.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.api.util.Hashes;
+
+class FileSystemStorageServiceTests {
+
+	static final byte[] PDF = "%PDF-1.4 report".getBytes(StandardCharsets.UTF_8);
+
+	@TempDir
+	Path folder;
+
+	FileSystemStorageService storage(StorageProperties.Mode mode) {
+		StorageProperties properties = new StorageProperties(folder.toString());
+		properties.setMode(mode);
+		FileSystemStorageService storage = new FileSystemStorageService(properties);
+		storage.init();
+		return storage;
+	}
+
+	@Test
+	void storesDocumentsUnderTheirHash() throws IOException {
+		FileSystemStorageService storage = storage(StorageProperties.Mode.CONTENT_ADDRESSED);
+		String hash = Hashes.sha256Hex(PDF);
+
+		DocumentHandle document = storage.storeDocument("Report.PDF", new ByteArrayInputStream(PDF));
+
+		assertEquals(hash, document.getHash());
+		assertEquals(64, document.getHash().length());
+		assertEquals(PDF.length, document.getSize());
+		assertFalse(document.isDeduplicated());
+		Path expected = folder.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash + ".pdf");
+		assertEquals(expected.toAbsolutePath(), document.getPath());
+		assertArrayEquals(PDF, Files.readAllBytes(expected));
+		assertEquals(expected, storage.load(hash + ".pdf"));
+	}
+
+	@Test
+	void storesIdenticalUploadsOnce() throws IOException {
+		FileSystemStorageService storage = storage(StorageProperties.Mode.CONTENT_ADDRESSED);
+		DocumentHandle first = storage.storeDocument("a.pdf", new ByteArrayInputStream(PDF));
+
+		DocumentHandle second = storage.storeDocument("b.pdf", new ByteArrayInputStream(PDF));
+		DocumentHandle other = storage.storeDocument("c.pdf",
+				new ByteArrayInputStream("%PDF-1.4 other".getBytes(StandardCharsets.UTF_8)));
+
+		assertTrue(second.isDeduplicated());
+		assertEquals(first.getHash(), second.getHash());
+		assertEquals(first.getPath(), second.getPath());
+		assertFalse(other.isDeduplicated());
+		try (Stream<Path> files = storage.loadAll()) {
+			assertEquals(2, files.count());
+		}
+		// the temporary upload files are gone
+		try (Stream<Path> incoming = Files.list(folder.resolve("incoming"))) {
+			assertEquals(List.of(), incoming.toList());
+		}
+	}
+
+	@Test
+	void rejectsEmptyUploads() throws IOException {
+		FileSystemStorageService storage = storage(StorageProperties.Mode.CONTENT_ADDRESSED);
+
+		assertThrows(StorageException.class,
+				() -> storage.storeDocument("empty.pdf", new ByteArrayInputStream(new byte[0])));
+		try (Stream<Path> incoming = Files.list(folder.resolve("incoming"))) {
+			assertEquals(List.of(), incoming.toList());
+		}
+	}
+
+	@Test
+	void hashesFlatUploadsToo() throws IOException {
+		FileSystemStorageService storage = storage(StorageProperties.Mode.FLAT);
+
+		DocumentHandle document = storage.storeDocument("report.pdf", new ByteArrayInputStream(PDF));
+
+		assertEquals(Hashes.sha256Hex(PDF), document.getHash());
+		assertEquals(folder.resolve("data.pdf").toAbsolutePath(), document.getPath());
+		assertEquals(PDF.length, document.getSize());
+		assertFalse(document.isDeduplicated());
+	}
+
+}
@@ -0,0 +1,71 @@
+package com.api.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HtmlToPdfConverterTests {
+
+    static final String HTML = "<html><body><table><tr><td>Haemoglobin</td><td>14.2</td></tr></table></body></html>";
+
+    static final HtmlToPdfConverter converter = new HtmlToPdfConverter();
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void convertsOnlyFilesWithoutAnUpToDatePdf() throws IOException {
+        Path first = html("table-1.html");
+        html("table-2.html");
+
+        Map<String, Object> result = converter.convertFolder(folder, 2);
+
+        assertEquals(2, result.get("converted"));
+        assertEquals(0, result.get("skipped"));
+        assertEquals(0, result.get("failed"));
+        assertTrue(Files.readString(folder.resolve("table-1.pdf"), StandardCharsets.ISO_8859_1)
+                .startsWith("%PDF"));
+        FileTime converted = Files.getLastModifiedTime(folder.resolve("table-2.pdf"));
+
+        // the first HTML changed after its PDF was written
+        Files.setLastModifiedTime(first, FileTime.from(Instant.now().minusSeconds(60)));
+        Files.setLastModifiedTime(folder.resolve("table-1.pdf"), FileTime.from(Instant.now().minusSeconds(120)));
+        result = converter.convertFolder(folder, 2);
+
+        assertEquals(1, result.get("converted"));
+        assertEquals(1, result.get("skipped"));
+        assertEquals(converted, Files.getLastModifiedTime(folder.resolve("table-2.pdf")));
+        assertEquals(0, converter.convertFolder(folder, 2).get("converted"));
+        try (Stream<Path> files = Files.list(folder)) {
+            assertEquals(0, files.filter(file -> file.toString().endsWith(".tmp")).count());
+        }
+    }
+
+    @Test
+    void convertsOnlyFilesMatchingTheGlob() throws IOException {
+        html("table-run1-1.html");
+        html("table-run2-1.html");
+
+        Map<String, Object> result = converter.convertFolder(folder, "table-run2-*.html", 1);
+
+        assertEquals(1, result.get("converted"));
+        assertTrue(Files.exists(folder.resolve("table-run2-1.pdf")));
+        assertTrue(Files.notExists(folder.resolve("table-run1-1.pdf")));
+    }
+
+    Path html(String name) throws IOException {
+        return Files.writeString(folder.resolve(name), HTML);
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.api.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ca.uhn.fhir.context.FhirContext;
+
+class TestDataServiceTests {
+
+    static final FhirContext fhirContext = FhirContext.forR4();
+
+    @TempDir
+    Path folder;
+
+    GenerateProperties properties = new GenerateProperties();
+
+    /*
+     * Records the globs it was asked for instead of running iText
+     */
+    List<String> globs = new CopyOnWriteArrayList<>();
+
+    TestDataService service() {
+        properties.setLocation(folder.toString());
+        return new TestDataService(properties, fhirContext, new HtmlToPdfConverter() {
+            @Override
+            public Map<String, Object> convertFolder(Path folder, String glob, int threads) {
+                globs.add(glob);
+                return Map.of("converted", 0);
+            }
+        });
+    }
+
+    @Test
+    void numbersEveryReportOnceAcrossThreads() throws IOException {
+        Map<String, Object> result = service().generate(300, 4);
+
+        String runId = (String) result.get("runId");
+        assertEquals(300, result.get("count"));
+        assertEquals(4, result.get("parallelism"));
+        assertEquals(List.of("table-" + runId + "-*.html"), globs);
+        Set<Long> expected = LongStream.rangeClosed(1, 300).boxed().collect(Collectors.toCollection(TreeSet::new));
+        assertEquals(expected, numbers(runId, ".json"));
+        assertEquals(expected, numbers(runId, ".txt"));
+        assertEquals(expected, numbers(runId, ".html"));
+        try (Stream<Path> files = Files.list(folder)) {
+            assertEquals(900, files.count());
+        }
+    }
+
+    @Test
+    void keepsTheFilesOfEarlierRuns() throws IOException {
+        TestDataService service = service();
+        String first = (String) service.generate(2, 8).get("runId");
+
+        Map<String, Object> second = service.generate(3, 8);
+
+        assertNotEquals(first, second.get("runId"));
+        // never more threads than reports
+        assertEquals(3, second.get("parallelism"));
+        assertEquals(Set.of(1L, 2L), numbers(first, ".json"));
+        assertEquals(Set.of(1L, 2L, 3L), numbers((String) second.get("runId"), ".json"));
+    }
+
+    Set<Long> numbers(String runId, String extension) throws IOException {
+        String prefix = (extension.equals(".json") ? "report-" : "table-") + runId + "-";
+        try (Stream<Path> files = Files.list(folder)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(prefix) && name.endsWith(extension))
+                    .map(name -> Long.valueOf(name.substring(prefix.length(), name.length() - extension.length())))
+                    .collect(Collectors.toCollection(TreeSet::new));
+        }
+    }
+
+}
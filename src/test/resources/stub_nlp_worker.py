@@ -0,0 +1,48 @@
+import os
+import sys
+
+# Stand-in for GPT4ALL.py --serve in NlpWorkerPoolTests, speaks the same frames
+# without a model. Answers "<pid>:<prompt>" so tests can tell workers apart,
+# the prompt "bad header" breaks the framing on purpose and "fail" is answered
+# with an error frame like a failed generation.
+FRAME_MARKER = b"@@FRAME "
+ERROR_MARKER = b"@@ERROR "
+
+
+def write_frame(out, text, marker=FRAME_MARKER):
+    data = text.encode("utf-8")
+    out.write(marker + str(len(data)).encode("ascii") + b"\n")
+    out.write(data)
+    out.flush()
+
+
+def read_frame(inp):
+    header = inp.readline()
+    while header and not header.startswith(FRAME_MARKER):
+        header = inp.readline()
+    if not header:
+        return None
+    length = int(header[len(FRAME_MARKER):])
+    return inp.read(length).decode("utf-8")
+
+
+def serve():
+    out = sys.stdout.buffer
+    inp = sys.stdin.buffer
+    write_frame(out, "READY")
+    while True:
+        prompt = read_frame(inp)
+        if prompt is None:
+            break
+        if prompt == "bad header":
+            # an unreadable length followed by a frame nobody asked for
+            out.write(FRAME_MARKER + b"twelve\n")
+            write_frame(out, "stale")
+        elif prompt == "fail":
+            write_frame(out, "out of memory", ERROR_MARKER)
+        else:
+            write_frame(out, str(os.getpid()) + ":" + prompt)
+
+
+if __name__ == "__main__":
+    serve()